@@ -1,22 +1,53 @@
 package com.zh.interpreter;
 
 import com.zh.interpreter.ast.Program;
+import com.zh.interpreter.daemon.DaemonClient;
+import com.zh.interpreter.daemon.DaemonServer;
+import com.zh.interpreter.daemon.WorkerPool;
+import com.zh.interpreter.daemon.WorkerProcess;
+import com.zh.interpreter.engine.CompileException;
+import com.zh.interpreter.engine.CompiledScript;
+import com.zh.interpreter.engine.EvaluationException;
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.engine.Prelude;
+import com.zh.interpreter.evaluator.CancellationToken;
 import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.io.LineReader;
 import com.zh.interpreter.lexer.Lexer;
+import com.zh.interpreter.monitor.AllocationProfiler;
+import com.zh.interpreter.monitor.ClosureRetention;
+import com.zh.interpreter.monitor.MetricsServer;
+import com.zh.interpreter.monitor.Tracer;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
 import com.zh.interpreter.object.environment.BuiltInEnvironment;
 import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.ArrayObject;
+import com.zh.interpreter.object.struct.StringObject;
 import com.zh.interpreter.parser.Parser;
+import com.zh.interpreter.snapshot.HeapSnapshot;
+import com.zh.interpreter.snapshot.SnapshotWriter;
+import com.zh.interpreter.token.Token;
+import com.zh.interpreter.token.TokenType;
+import com.zh.interpreter.utils.FileUtils;
+import com.zh.interpreter.utils.ObjectUtils;
+import com.zh.interpreter.utils.SignalUtils;
+import com.zh.interpreter.utils.ThreadUtils;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class Main {
     public static void main(String[] args) {
+        // 收到SIGUSR1时转储执行轨迹
+        Tracer.installSignalHandler();
         if (args.length == 0) {
             withoutArguments();
         } else {
@@ -36,13 +67,24 @@ public class Main {
             case "-h":
                 printUsage();
                 break;
+            case "--snapshot":
+                if (args.length < 2) {
+                    System.out.println("Missing argument for --snapshot option.");
+                    printUsage();
+                } else {
+                    Environment environment = loadSnapshot(args[1]);
+                    if (environment != null) {
+                        withoutArguments(environment);
+                    }
+                }
+                break;
             case "-c":
                 if (args.length < 2) {
                     System.out.println("Missing argument for -c option.");
                     printUsage();
                 } else {
                     String filePath = args[1];
-                    executeCommandC(filePath, false);
+                    executeCommandC(filePath, false, false);
                 }
                 break;
             case "-cs":
@@ -51,7 +93,175 @@ public class Main {
                     printUsage();
                 } else {
                     String filePath = args[1];
-                    executeCommandC(filePath, true);
+                    executeCommandC(filePath, true, false);
+                }
+                break;
+            case "-profile":
+                if (args.length < 2) {
+                    System.out.println("Missing argument for -profile option.");
+                    printUsage();
+                } else {
+                    String filePath = args[1];
+                    executeCommandC(filePath, false, true);
+                }
+                break;
+            case "-metrics":
+                if (args.length < 2) {
+                    System.out.println("Missing argument for -metrics option.");
+                    printUsage();
+                } else {
+                    executeCommandMetrics(args[1]);
+                }
+                break;
+            case "-batch":
+                if (args.length < 2) {
+                    System.out.println("Missing argument for -batch option.");
+                    printUsage();
+                } else {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    int processes = 0;
+                    String prelude = null;
+                    List<String> jvmOptions = new ArrayList<>();
+                    for (int i = 2; i < args.length; i++) {
+                        if (Objects.equals(args[i], "--prelude") && i + 1 < args.length) {
+                            prelude = args[++i];
+                        } else if (Objects.equals(args[i], "--processes") && i + 1 < args.length) {
+                            try {
+                                processes = Integer.parseInt(args[++i]);
+                            } catch (NumberFormatException e) {
+                                System.out.println("Invalid number of processes: " + args[i]);
+                                return;
+                            }
+                        } else if (Objects.equals(args[i], "--heap") && i + 1 < args.length) {
+                            jvmOptions.add("-Xmx" + args[++i]);
+                        } else if (Objects.equals(args[i], "--threads") && i + 1 < args.length) {
+                            try {
+                                threads = Integer.parseInt(args[++i]);
+                            } catch (NumberFormatException e) {
+                                System.out.println("Invalid number of threads: " + args[i]);
+                                return;
+                            }
+                        } else if (Objects.equals(args[i], "--virtual")) {
+                            if (!ThreadUtils.setVirtualThreadEnabled(true)) {
+                                System.out.println("Virtual threads need java 21 or later,use platform threads instead.");
+                            }
+                        } else {
+                            System.out.println("Unknown option for -batch: " + args[i]);
+                            printUsage();
+                            return;
+                        }
+                    }
+                    if (processes > 0) {
+                        executeCommandWorkers(args[1], processes, jvmOptions, prelude);
+                    } else {
+                        MonkeyEngine engine = createEngine(prelude);
+                        if (engine != null) {
+                            executeCommandBatch(args[1], threads, engine);
+                        }
+                    }
+                }
+                break;
+            case "-worker": {
+                // 标准输入输出由协议独占,prelude的输出同样写到标准错误输出
+                System.setOut(System.err);
+                LineReader.detachStdin();
+                MonkeyEngine engine = createEngine(args.length > 2 && Objects.equals(args[1], "--prelude") ? args[2] : null);
+                if (engine != null) {
+                    WorkerProcess.run(engine);
+                }
+                break;
+            }
+            case "-daemon": {
+                String address = null;
+                String prelude = null;
+                String snapshot = null;
+                int threads = Runtime.getRuntime().availableProcessors();
+                for (int i = 1; i < args.length; i++) {
+                    if (Objects.equals(args[i], "--prelude") && i + 1 < args.length) {
+                        prelude = args[++i];
+                    } else if (Objects.equals(args[i], "--snapshot") && i + 1 < args.length) {
+                        snapshot = args[++i];
+                    } else if (Objects.equals(args[i], "--socket") && i + 1 < args.length) {
+                        address = args[++i];
+                    } else if (Objects.equals(args[i], "--threads") && i + 1 < args.length) {
+                        try {
+                            threads = Integer.parseInt(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.out.println("Invalid number of threads: " + args[i]);
+                            return;
+                        }
+                    } else {
+                        System.out.println("Unknown option for -daemon: " + args[i]);
+                        printUsage();
+                        return;
+                    }
+                }
+                if (address == null) {
+                    System.out.println("Missing --socket for -daemon option.");
+                    printUsage();
+                } else if (prelude != null && snapshot != null) {
+                    System.out.println("--prelude and --snapshot can't be used together.");
+                } else {
+                    // 守护进程的标准输入不属于任何请求,脚本不能读取,否则会阻塞或读到与请求无关的输入
+                    LineReader.detachStdin();
+                    MonkeyEngine engine = snapshot == null ? createEngine(prelude) : createEngineFromSnapshot(snapshot);
+                    if (engine != null) {
+                        executeCommandDaemon(address, threads, engine);
+                    }
+                }
+                break;
+            }
+            case "-n":
+            case "-p": {
+                String source = null;
+                String begin = null;
+                String end = null;
+                String separator = null;
+                String prelude = null;
+                List<String> inputs = new ArrayList<>();
+                try {
+                    for (int i = 1; i < args.length; i++) {
+                        if (source != null) {
+                            inputs.add(args[i]);
+                        } else if (Objects.equals(args[i], "-F") && i + 1 < args.length) {
+                            // 与awk相同,-F '\t'表示制表符
+                            separator = Objects.equals(args[++i], "\\t") ? "\t" : args[i];
+                        } else if (Objects.equals(args[i], "--begin") && i + 1 < args.length) {
+                            begin = args[++i];
+                        } else if (Objects.equals(args[i], "--end") && i + 1 < args.length) {
+                            end = args[++i];
+                        } else if (Objects.equals(args[i], "--prelude") && i + 1 < args.length) {
+                            prelude = args[++i];
+                        } else if (Objects.equals(args[i], "-f") && i + 1 < args.length) {
+                            source = FileUtils.readSource(new File(args[++i]));
+                        } else {
+                            source = args[i];
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("Can't read the script: " + e.getMessage());
+                    return;
+                }
+                if (source == null) {
+                    System.out.println("Missing the script for " + command + " option.");
+                    printUsage();
+                } else if (separator != null && separator.isEmpty()) {
+                    System.out.println("The field separator can't be empty.");
+                } else {
+                    MonkeyEngine engine = createEngine(prelude);
+                    if (engine != null && !executeCommandLines(engine, begin, source, end, separator, inputs,
+                            Objects.equals(command, "-p"))) {
+                        System.exit(1);
+                    }
+                }
+                break;
+            }
+            case "-client":
+                if (args.length < 3 || !Objects.equals(args[1], "--socket")) {
+                    System.out.println("Missing --socket for -client option.");
+                    printUsage();
+                } else {
+                    System.exit(DaemonClient.run(args[2], Arrays.copyOfRange(args, 3, args.length)));
                 }
                 break;
             default:
@@ -68,30 +278,30 @@ public class Main {
         System.out.println("Usage: java -jar Interpreter.jar <command> [<arguments>]");
         System.out.println("Available commands:");
         System.out.println("  -h           Show help");
+        System.out.println("  --snapshot   Specifies a heap snapshot file,and start the interactive interpreter with it");
         System.out.println("  -c           Specifies the source file path");
         System.out.println("  -cs          Specifies the source file path,and display the description of the program");
+        System.out.println("  -profile     Specifies the source file path,and report the allocation sites and live objects");
+        System.out.println("  -metrics     Specifies the port of the metrics endpoint,and start the interactive interpreter");
+        System.out.println("  -batch       Specifies a directory,and run every file in it on a thread pool (--threads N, --virtual)");
+        System.out.println("               or on child interpreter processes (--processes N, --heap <size>), after a shared --prelude <file>");
+        System.out.println("  -daemon      Keep a warmed-up interpreter running and execute scripts sent to it (--socket <path|port>, --threads N, --prelude <file> or --snapshot <file>)");
+        System.out.println("  -client      Send a script to a daemon (--socket <path|port> <file|-e source|-> [args...])");
+        System.out.println("  -n           Run a script for every input line with line and fields bound ([-F <separator>] [--begin <source>] [--end <source>] <source|-f file> [files...])");
+        System.out.println("  -p           Same as -n,and print the result of every line");
     }
 
     /**
      * 执行c命令,即获取文件并解释执行
      *
-     * @param path 文件路径
-     * @param show 是否显示解析的AST树
+     * @param path    文件路径
+     * @param show    是否显示解析的AST树
+     * @param profile 是否输出内存分配分析
      */
-    private static void executeCommandC(String path, boolean show) {
+    private static void executeCommandC(String path, boolean show, boolean profile) {
         try {
-            // 初始化文件及流
-            File file = new File(path);
-            FileReader reader = new FileReader(file);
-            BufferedReader bufferedReader = new BufferedReader(reader);
-            // 读取
-            String line;
-            StringBuilder builder = new StringBuilder();
-            while ((line = bufferedReader.readLine()) != null) {
-                builder.append(line);
-            }
             // 初始化词法分析器
-            Lexer lexer = new Lexer(builder.toString());
+            Lexer lexer = new Lexer(FileUtils.readSource(new File(path)));
             // 初始化语法分析器
             Parser parser = new Parser(lexer);
             // 解析程序
@@ -102,32 +312,418 @@ public class Main {
                 return;
             }
             // 解释执行
-            Object evaluate = Evaluator.evaluate(program);
+            AllocationProfiler.setEnabled(profile);
+            Environment environment = new Environment(BuiltInEnvironment.getInstance());
+            // 使用系统属性指定的执行配额,脚本中的相对导入相对于脚本所在的目录
+            ExecutionContext context = new ExecutionContext(null).setDirectory(new File(path).getAbsoluteFile().getParentFile());
+            ExecutionContext previous = ExecutionContext.enter(context);
+            Object evaluate;
+            try {
+                evaluate = Evaluator.evaluate(program, environment);
+            } finally {
+                ExecutionContext.exit(previous);
+            }
             if (evaluate != null && evaluate.getType() != ObjectType.NULL_OBJECT) {
                 System.out.println(evaluate);
             }
+            if (profile) {
+                AllocationProfiler.report(System.out, 20);
+                AllocationProfiler.heapHistogram(environment, System.out);
+                ClosureRetention.report(environment, System.out, ClosureRetention.DEFAULT_THRESHOLD);
+            }
             if (show) {
                 System.out.println("----------final--Program-start--------------");
                 System.out.println(program.getNodeDescription());
                 System.out.println("----------final--Program--end---------------");
             }
-            // 关闭流
-            reader.close();
-            bufferedReader.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * 创建脚本引擎,指定prelude文件时先执行prelude并生成快照
+     *
+     * @param prelude prelude文件路径,可以为null
+     * @return 脚本引擎,prelude无法读取或执行失败时返回null
+     */
+    private static MonkeyEngine createEngine(String prelude) {
+        if (prelude == null) {
+            return new MonkeyEngine();
+        }
+        try {
+            return new MonkeyEngine(MonkeyEngine.DEFAULT_CACHE_SIZE, Prelude.evaluate(FileUtils.readSource(new File(prelude))));
+        } catch (IOException e) {
+            System.out.println("Can't read the prelude " + prelude + ": " + e.getMessage());
+        } catch (CompileException e) {
+            e.getErrors().forEach(System.out::println);
+        } catch (EvaluationException e) {
+            System.out.println("Error:" + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 创建以堆快照为prelude的脚本引擎
+     *
+     * @param snapshot 快照文件路径
+     * @return 脚本引擎,快照无法读取时返回null
+     */
+    private static MonkeyEngine createEngineFromSnapshot(String snapshot) {
+        Environment environment = loadSnapshot(snapshot);
+        return environment == null ? null : new MonkeyEngine(MonkeyEngine.DEFAULT_CACHE_SIZE, Prelude.of(environment));
+    }
+
+    /**
+     * 执行batch命令,即在固定大小的线程池(开启虚拟线程时每个文件一个虚拟线程)中执行目录下的所有文件<br/>
+     * 每个文件在独立的全局环境中执行,输出先写入各自的缓冲区,再按文件名顺序打印
+     *
+     * @param directory 目录
+     * @param threads   线程数
+     * @param engine    脚本引擎
+     */
+    private static void executeCommandBatch(String directory, int threads, MonkeyEngine engine) {
+        File[] files = new File(directory).listFiles(File::isFile);
+        if (files == null) {
+            System.out.println("Not a directory: " + directory);
+            return;
+        }
+        Arrays.sort(files);
+        long startTime = System.nanoTime();
+        ExecutorService executor = ThreadUtils.newExecutor(threads);
+        List<Future<Boolean>> results = new ArrayList<>();
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        for (File file : files) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            outputs.add(output);
+            results.add(executor.submit(() -> executeBatchFile(engine, file, new PrintStream(output, true))));
+        }
+        int failed = 0;
+        for (int i = 0; i < files.length; i++) {
+            boolean success;
+            try {
+                success = results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace(new PrintStream(outputs.get(i), true));
+                success = false;
+            }
+            if (!success) {
+                failed++;
+            }
+            System.out.println("==> " + files[i].getName() + " <==");
+            System.out.print(outputs.get(i).toString());
+            // 打印后释放输出缓冲区
+            outputs.set(i, null);
+        }
+        executor.shutdown();
+        System.err.printf("batch: %d files, %d failed, %s, %.3fs%n", files.length, failed,
+                ThreadUtils.isVirtualThreadEnabled() ? "virtual threads" : Math.max(1, threads) + " threads",
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * 执行batch命令的多进程模式,即启动多个子进程执行目录下的所有文件<br/>
+     * 输出按文件名顺序打印,各子进程的统计及汇总写到标准错误输出
+     *
+     * @param directory  目录
+     * @param processes  子进程数
+     * @param jvmOptions 子进程的jvm参数
+     * @param prelude    各子进程执行的prelude文件路径,可以为null
+     */
+    private static void executeCommandWorkers(String directory, int processes, List<String> jvmOptions, String prelude) {
+        File[] files = new File(directory).listFiles(File::isFile);
+        if (files == null) {
+            System.out.println("Not a directory: " + directory);
+            return;
+        }
+        Arrays.sort(files);
+        long startTime = System.nanoTime();
+        WorkerPool pool = new WorkerPool(processes, jvmOptions, prelude);
+        WorkerPool.Result[] results;
+        try {
+            results = pool.run(files);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        int failed = 0;
+        for (WorkerPool.Result result : results) {
+            if (result.status != 0) {
+                failed++;
+            }
+            System.out.println("==> " + result.file.getName() + " <==");
+            System.out.print(result.output.toString());
+        }
+        WorkerPool.Statistics[] statistics = pool.getStatistics();
+        for (int i = 0; i < statistics.length; i++) {
+            System.err.printf("worker %d: %d files, %d failed, %d crashes, %.3fs in scripts, %d gc (%.3fs)%n", i + 1,
+                    statistics[i].files, statistics[i].failed, statistics[i].crashes, statistics[i].elapsed / 1e9,
+                    statistics[i].gcCount, statistics[i].gcMillis / 1e3);
+        }
+        System.err.printf("batch: %d files, %d failed, %d processes, %.3fs%n", files.length, failed, statistics.length,
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * 执行batch中的单个文件
+     *
+     * @param engine 脚本引擎
+     * @param file   源码文件
+     * @param out    输出流
+     * @return 是否执行成功
+     * @throws IOException 读取失败
+     */
+    private static boolean executeBatchFile(MonkeyEngine engine, File file, PrintStream out) throws IOException {
+        CompiledScript script;
+        try {
+            script = engine.compile(FileUtils.readSource(file));
+        } catch (CompileException e) {
+            e.getErrors().forEach(out::println);
+            return false;
+        }
+        Environment environment = script.createEnvironment();
+        ExecutionContext context = new ExecutionContext(out).setDirectory(file.getAbsoluteFile().getParentFile());
+        ExecutionContext previous = ExecutionContext.enter(context);
+        try {
+            Object evaluate = script.evaluate(environment);
+            if (evaluate != null && evaluate.getType() != ObjectType.NULL_OBJECT) {
+                out.println(evaluate);
+            }
+            return !ObjectUtils.isError(evaluate);
+        } finally {
+            ExecutionContext.exit(previous);
+        }
+    }
+
+    /**
+     * 执行-n及-p命令,即像awk一样对输入的每一行执行脚本<br/>
+     * 脚本只编译一次,所有行共用同一个全局环境,每行执行前重新绑定line(不含换行符的行)及fields(按分隔符切分的字段);
+     * 脚本中没有出现fields时不切分字段。没有输入文件或文件为"-"时读取标准输入,输出经缓冲后写入标准输出
+     *
+     * @param engine    脚本引擎
+     * @param begin     读取输入前执行一次的脚本,可以为null
+     * @param source    每行执行的脚本
+     * @param end       读完输入后执行一次的脚本,可以为null
+     * @param separator 字段分隔符,为null时按连续的空白切分并忽略首尾空白
+     * @param inputs    输入文件
+     * @param print     是否打印每行的执行结果(null除外)
+     * @return 是否全部执行成功
+     */
+    private static boolean executeCommandLines(MonkeyEngine engine, String begin, String source, String end,
+                                               String separator, List<String> inputs, boolean print) {
+        CompiledScript beginScript;
+        CompiledScript script;
+        CompiledScript endScript;
+        try {
+            beginScript = begin == null ? null : engine.compile(begin);
+            script = engine.compile(source);
+            endScript = end == null ? null : engine.compile(end);
+        } catch (CompileException e) {
+            e.getErrors().forEach(System.out::println);
+            return false;
+        }
+        boolean splitting = usesIdentifier(source, "fields");
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        Environment environment = script.createEnvironment();
+        ExecutionContext previous = ExecutionContext.enter(new ExecutionContext(out));
+        try {
+            if (beginScript != null && !printResult(beginScript.evaluate(environment), out, "--begin")) {
+                return false;
+            }
+            for (String input : inputs.isEmpty() ? Collections.singletonList("-") : inputs) {
+                LineReader reader;
+                try {
+                    reader = Objects.equals(input, "-") ? LineReader.stdin() : LineReader.open(Paths.get(input));
+                } catch (IOException e) {
+                    out.flush();
+                    System.err.println("Can't read " + input + ": " + e.getMessage());
+                    return false;
+                }
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        StringObject lineObject = new StringObject();
+                        lineObject.value = line;
+                        environment.setObject("line", lineObject);
+                        if (splitting) {
+                            environment.setObject("fields", splitFields(line, separator));
+                        }
+                        Object result = script.evaluate(environment);
+                        if (ObjectUtils.isError(result) || print) {
+                            if (!printResult(result, out, reader.getName() + ":" + reader.getLineNumber())) {
+                                return false;
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    out.flush();
+                    System.err.println("Can't read " + input + ": " + e.getMessage());
+                    return false;
+                } finally {
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) {
+                        // 只读的文件关闭失败不影响结果
+                    }
+                }
+            }
+            return endScript == null || printResult(endScript.evaluate(environment), out, "--end");
+        } finally {
+            ExecutionContext.exit(previous);
+            out.flush();
+        }
+    }
+
+    /**
+     * 打印-n及-p命令的执行结果,错误写到标准错误输出
+     *
+     * @param result   执行结果
+     * @param out      输出流
+     * @param location 出错时显示的位置
+     * @return 结果是否不是错误
+     */
+    private static boolean printResult(Object result, PrintStream out, String location) {
+        if (ObjectUtils.isError(result)) {
+            out.flush();
+            System.err.println(location + ": " + result);
+            return false;
+        }
+        if (result != null && result.getType() != ObjectType.NULL_OBJECT) {
+            out.println(result);
+        }
+        return true;
+    }
+
+    /**
+     * 切分字段,只扫描一遍行并直接创建字段的字符串对象,不使用正则表达式及中间数组
+     *
+     * @param line      行
+     * @param separator 分隔符,为null时按连续的空格及制表符切分并忽略首尾空白
+     * @return 字段数组
+     */
+    private static ArrayObject splitFields(String line, String separator) {
+        ArrayObject fields = new ArrayObject();
+        int length = line.length();
+        if (separator == null) {
+            int i = 0;
+            while (i < length) {
+                while (i < length && (line.charAt(i) == ' ' || line.charAt(i) == '\t')) {
+                    i++;
+                }
+                int start = i;
+                while (i < length && line.charAt(i) != ' ' && line.charAt(i) != '\t') {
+                    i++;
+                }
+                if (i > start) {
+                    fields.elements.add(field(line, start, i));
+                }
+            }
+        } else {
+            int start = 0;
+            int index;
+            while ((index = line.indexOf(separator, start)) >= 0) {
+                fields.elements.add(field(line, start, index));
+                start = index + separator.length();
+            }
+            fields.elements.add(field(line, start, length));
+        }
+        return fields;
+    }
+
+    private static StringObject field(String line, int start, int end) {
+        StringObject field = new StringObject();
+        field.value = line.substring(start, end);
+        return field;
+    }
+
+    /**
+     * 判断源码中是否出现了指定的标识符
+     *
+     * @param source     源码
+     * @param identifier 标识符
+     * @return 是否出现
+     */
+    private static boolean usesIdentifier(String source, String identifier) {
+        Lexer lexer = new Lexer(source);
+        for (Token token = lexer.nextToken(); token.type != TokenType.EOF; token = lexer.nextToken()) {
+            if (token.type == TokenType.IDENTIFIER && Objects.equals(token.literal, identifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 执行daemon命令,即常驻并执行客户端发来的脚本,直到进程被终止
+     *
+     * @param address 端口或unix domain socket路径
+     * @param threads 同时执行的脚本数
+     * @param engine  脚本引擎
+     */
+    private static void executeCommandDaemon(String address, int threads, MonkeyEngine engine) {
+        DaemonServer server;
+        try {
+            server = new DaemonServer(address, threads, engine);
+            System.out.println("monkey daemon listening on " + server.getAddress());
+        } catch (IOException e) {
+            System.out.println("Can't listen on " + address + ": " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.serve();
+    }
+
+    /**
+     * 执行metrics命令,即在本地端口提供Prometheus格式的指标后进入交互模式
+     *
+     * @param port 端口
+     */
+    private static void executeCommandMetrics(String port) {
+        MetricsServer server;
+        try {
+            server = MetricsServer.start(Integer.parseInt(port));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid port: " + port);
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.out.println("metrics available at http://127.0.0.1:" + server.getPort() + "/metrics");
+        withoutArguments();
+        // 交互结束后关闭指标服务,否则其分发线程会阻止jvm退出
+        server.stop();
+    }
+
     /**
      * 边执行边翻译
      */
     private static void withoutArguments() {
+        withoutArguments(new Environment(BuiltInEnvironment.getInstance()));
+    }
+
+    /**
+     * 在指定的全局环境中边执行边翻译
+     *
+     * @param environment 全局环境,如从快照中恢复的环境
+     */
+    private static void withoutArguments(Environment environment) {
         Scanner scanner = new Scanner(System.in);
-        Environment environment = new Environment(BuiltInEnvironment.getInstance());
+        // 正在执行的输入的取消令牌,Ctrl+C时取消执行,空闲时退出
+        AtomicReference<CancellationToken> running = new AtomicReference<>();
+        installInterruptHandler(running);
         System.out.print(">>> ");
         while (scanner.hasNextLine()) {
             String line = scanner.nextLine();
+            // 解释器命令
+            if (line.trim().startsWith(":")) {
+                environment = executeReplCommand(line.trim(), environment);
+                System.out.print(">>> ");
+                continue;
+            }
             Lexer lexer = new Lexer(line);
             Parser parser = new Parser(lexer);
             Program program = parser.parse();
@@ -136,11 +732,118 @@ public class Main {
                 System.out.println(">>> ");
                 continue;
             }
-            Object evaluate = Evaluator.evaluate(program, environment);
+            // 每行输入单独计算执行配额
+            ExecutionContext context = new ExecutionContext(null);
+            ExecutionContext previous = ExecutionContext.enter(context);
+            running.set(context.getCancellationToken());
+            Object evaluate;
+            try {
+                evaluate = Evaluator.evaluate(program, environment);
+            } finally {
+                running.set(null);
+                ExecutionContext.exit(previous);
+            }
             if (evaluate != null && evaluate.getType() != ObjectType.NULL_OBJECT) {
                 System.out.println(evaluate);
             }
             System.out.print(">>> ");
         }
     }
+
+    /**
+     * 注册SIGINT信号,有输入正在执行时取消该执行,否则退出
+     *
+     * @param running 正在执行的输入的取消令牌
+     */
+    private static void installInterruptHandler(AtomicReference<CancellationToken> running) {
+        // 不支持信号时保持默认行为
+        SignalUtils.handle("INT", () -> {
+            CancellationToken token = running.get();
+            if (token == null) {
+                System.exit(130);
+            }
+            token.cancel();
+        });
+    }
+
+    /**
+     * 执行交互模式下以:开头的解释器命令
+     *
+     * @param command     命令
+     * @param environment 交互模式的全局环境
+     */
+    private static Environment executeReplCommand(String command, Environment environment) {
+        if (command.startsWith(":save ")) {
+            saveSnapshot(environment, command.substring(":save ".length()).trim());
+            return environment;
+        }
+        if (command.startsWith(":load ")) {
+            Environment loaded = loadSnapshot(command.substring(":load ".length()).trim());
+            return loaded == null ? environment : loaded;
+        }
+        switch (command) {
+            case ":trace":
+                Tracer.dump(System.out, Integer.MAX_VALUE);
+                break;
+            case ":profile on":
+                AllocationProfiler.setEnabled(true);
+                break;
+            case ":profile off":
+                AllocationProfiler.setEnabled(false);
+                break;
+            case ":profile reset":
+                AllocationProfiler.reset();
+                break;
+            case ":profile":
+                AllocationProfiler.report(System.out, 20);
+                break;
+            case ":heap":
+                AllocationProfiler.heapHistogram(environment, System.out);
+                break;
+            case ":retained":
+                ClosureRetention.report(environment, System.out, ClosureRetention.DEFAULT_THRESHOLD);
+                break;
+            default:
+                System.out.println("Unknown command: " + command);
+                System.out.println("Available commands: :trace, :profile [on|off|reset], :heap, :retained, :save <file>, :load <file>");
+                break;
+        }
+        return environment;
+    }
+
+    /**
+     * 将全局环境保存为堆快照
+     *
+     * @param environment 全局环境
+     * @param path        快照文件
+     */
+    private static void saveSnapshot(Environment environment, String path) {
+        try {
+            SnapshotWriter writer = HeapSnapshot.save(environment, Paths.get(path));
+            System.out.printf("saved %d bindings (%d bytes) to %s%n", environment.getStores().size(), writer.size(), path);
+            if (writer.getSkippedCount() > 0) {
+                System.out.printf("%d values of type %s can't be saved and were saved as null%n",
+                        writer.getSkippedCount(), writer.getSkippedTypes());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Can't save the snapshot to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 从堆快照中恢复全局环境
+     *
+     * @param path 快照文件
+     * @return 全局环境,失败时返回null
+     */
+    private static Environment loadSnapshot(String path) {
+        try {
+            Environment environment = HeapSnapshot.load(Paths.get(path));
+            System.out.printf("loaded %d bindings from %s%n", environment.getStores().size(), path);
+            return environment;
+        } catch (IOException e) {
+            System.out.println("Can't load the snapshot " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.zh.interpreter.ast;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 函数体的作用域分析结果,用于闭包只捕获其引用到的变量
+ */
+public class FunctionScope {
+    /**
+     * 闭包创建的最小环境所使用的作用域,其中的绑定在创建后不会被修改
+     */
+    public static final FunctionScope CLOSURE = new FunctionScope(true, Collections.emptySet(),
+            Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+    /**
+     * 是否可以进行最小捕获,函数体内存在宏或quote时无法静态分析,需要捕获整个环境
+     */
+    public final boolean capturable;
+
+    /**
+     * 自由变量,即函数体(含内部函数)引用到的、非参数的标识符
+     */
+    public final Set<String> freeVariables;
+
+    /**
+     * 函数体内通过let声明的标识符
+     */
+    public final Set<String> declaredVariables;
+
+    /**
+     * 函数体内绑定可能被替换的标识符:赋值、复合赋值、重复let或循环内let
+     */
+    public final Set<String> mutatedVariables;
+
+    /**
+     * 作为中缀表达式左侧标识符出现的标识符,其值为布尔对象时绑定会被运算结果替换
+     */
+    public final Set<String> comparedVariables;
+
+    public FunctionScope(boolean capturable, Set<String> freeVariables, Set<String> declaredVariables,
+                         Set<String> mutatedVariables, Set<String> comparedVariables) {
+        this.capturable = capturable;
+        this.freeVariables = freeVariables;
+        this.declaredVariables = declaredVariables;
+        this.mutatedVariables = mutatedVariables;
+        this.comparedVariables = comparedVariables;
+    }
+}
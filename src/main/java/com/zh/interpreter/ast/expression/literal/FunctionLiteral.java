@@ -1,6 +1,7 @@
 package com.zh.interpreter.ast.expression.literal;
 
 import com.zh.interpreter.ast.Expression;
+import com.zh.interpreter.ast.FunctionScope;
 import com.zh.interpreter.ast.expression.Identifier;
 import com.zh.interpreter.ast.statement.BlockStatement;
 
@@ -22,6 +23,11 @@ public class FunctionLiteral extends Expression {
      */
     public BlockStatement statement;
 
+    /**
+     * 作用域分析结果,首次创建闭包时计算,克隆时不复制
+     */
+    public volatile FunctionScope scope;
+
     @Override
     public String getNodeDescription() {
         StringBuilder stringBuilder = new StringBuilder();
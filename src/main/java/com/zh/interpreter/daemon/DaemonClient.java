@@ -0,0 +1,96 @@
+package com.zh.interpreter.daemon;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 守护进程的客户端,将脚本及参数转发给守护进程,并把脚本的输出写到标准输出
+ */
+public abstract class DaemonClient {
+    private DaemonClient() {
+    }
+
+    /**
+     * 转发命令行参数并等待执行结束<br/>
+     * 参数形如 &lt;file&gt; [args...]、-e &lt;source&gt; [args...] 或 - [args...],其中-表示从标准输入读取源码
+     *
+     * @param address   守护进程地址
+     * @param arguments 命令行参数
+     * @return 脚本的退出码,无法连接时为2
+     */
+    public static int run(String address, String[] arguments) {
+        byte type;
+        String name;
+        String source = "";
+        int rest;
+        try {
+            if (arguments.length == 0) {
+                System.out.println("Missing script for -client option.");
+                return 2;
+            }
+            if (arguments[0].equals("-e") && arguments.length > 1) {
+                type = DaemonProtocol.REQUEST_SOURCE;
+                name = "<command line>";
+                source = arguments[1];
+                rest = 2;
+            } else if (arguments[0].equals("-")) {
+                type = DaemonProtocol.REQUEST_SOURCE;
+                name = "<stdin>";
+                source = readStdin();
+                rest = 1;
+            } else {
+                // 路径相对于客户端的工作目录
+                type = DaemonProtocol.REQUEST_PATH;
+                name = new File(arguments[0]).getAbsolutePath();
+                rest = 1;
+            }
+        } catch (IOException e) {
+            System.out.println("can't read the standard input: " + e.getMessage());
+            return 2;
+        }
+        List<String> scriptArguments = Arrays.asList(Arrays.copyOfRange(arguments, rest, arguments.length));
+        try (SocketChannel channel = DaemonProtocol.connect(address)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DaemonProtocol.writeRequest(output, type, name, source, scriptArguments);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                byte frame = input.readByte();
+                byte[] bytes = DaemonProtocol.readBytes(input);
+                if (frame == DaemonProtocol.FRAME_EXIT) {
+                    System.out.flush();
+                    return Integer.parseInt(new String(bytes, StandardCharsets.UTF_8));
+                }
+                if (frame == DaemonProtocol.FRAME_OUTPUT) {
+                    System.out.write(bytes);
+                    System.out.flush();
+                }
+            }
+        } catch (EOFException e) {
+            System.out.println("the daemon closed the connection");
+            return 2;
+        } catch (IOException e) {
+            System.out.println("can't connect to the daemon at " + address + ": " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /**
+     * 读取标准输入的全部内容,各行直接拼接,与读取源码文件的方式一致
+     *
+     * @return 源码
+     * @throws IOException 读取失败
+     */
+    private static String readStdin() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            builder.append(line);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,252 @@
+package com.zh.interpreter.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 守护进程与客户端之间的协议<br/>
+ * 请求:类型(1字节)、脚本路径或名称、源码、参数个数及各参数,每个连接一个请求;
+ * 响应:若干帧,每帧为类型(1字节)、长度(4字节)和内容,以EXIT帧结束<br/>
+ * 地址为纯数字时使用本地回环地址上的TCP端口,否则为unix domain socket的路径(需要jdk16及以上)
+ */
+public abstract class DaemonProtocol {
+    /**
+     * 请求执行守护进程所在主机上的脚本文件
+     */
+    public static final byte REQUEST_PATH = 'P';
+
+    /**
+     * 请求执行随请求发送的源码
+     */
+    public static final byte REQUEST_SOURCE = 'S';
+
+    /**
+     * 脚本的标准输出
+     */
+    public static final byte FRAME_OUTPUT = 'O';
+
+    /**
+     * 工作进程执行一个请求的统计,内容形如elapsed=1;gcCount=2;gcMillis=3,在EXIT帧之前发送
+     */
+    public static final byte FRAME_METRICS = 'M';
+
+    /**
+     * 执行结束,内容为十进制的退出码
+     */
+    public static final byte FRAME_EXIT = 'X';
+
+    /**
+     * 源码及每帧内容的最大字节数,读取时超出该长度的数据被拒绝,写入时较长的输出被拆分为多帧
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * 请求中参数的最大个数
+     */
+    public static final int MAX_ARGUMENTS = 4096;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * 监听指定地址
+     *
+     * @param address 端口或unix domain socket路径
+     * @return 服务端通道
+     * @throws IOException 绑定失败或jdk不支持unix domain socket
+     */
+    public static ServerSocketChannel listen(String address) throws IOException {
+        if (isPort(address)) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+            return channel;
+        }
+        ServerSocketChannel channel = (ServerSocketChannel) openUnix(ServerSocketChannel.class);
+        channel.bind(unixAddress(address));
+        return channel;
+    }
+
+    /**
+     * 连接指定地址
+     *
+     * @param address 端口或unix domain socket路径
+     * @return 客户端通道
+     * @throws IOException 连接失败或jdk不支持unix domain socket
+     */
+    public static SocketChannel connect(String address) throws IOException {
+        if (isPort(address)) {
+            return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+        }
+        SocketChannel channel = (SocketChannel) openUnix(SocketChannel.class);
+        channel.connect(unixAddress(address));
+        return channel;
+    }
+
+    /**
+     * 地址是否为端口
+     *
+     * @param address 地址
+     * @return 是否为端口
+     */
+    public static boolean isPort(String address) {
+        return address.matches("\\d{1,5}");
+    }
+
+    /**
+     * 通过反射打开unix domain socket通道,源码保持jdk8兼容
+     *
+     * @param channelClass ServerSocketChannel或SocketChannel
+     * @return 通道
+     * @throws IOException jdk不支持unix domain socket
+     */
+    private static Object openUnix(Class<?> channelClass) throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            return channelClass.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (IllegalArgumentException | ReflectiveOperationException e) {
+            throw new IOException("unix domain sockets need java 16 or later,use a port instead", e);
+        }
+    }
+
+    /**
+     * 通过反射创建unix domain socket地址
+     *
+     * @param path socket文件路径
+     * @return 地址
+     * @throws IOException jdk不支持unix domain socket
+     */
+    private static SocketAddress unixAddress(String path) throws IOException {
+        try {
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            return (SocketAddress) addressClass.getMethod("of", String.class).invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("unix domain sockets need java 16 or later,use a port instead", e);
+        }
+    }
+
+    /**
+     * 写入请求
+     *
+     * @param output    输出流
+     * @param type      REQUEST_PATH或REQUEST_SOURCE
+     * @param name      脚本路径或名称
+     * @param source    源码,类型为REQUEST_PATH时为空字符串
+     * @param arguments 传给脚本的参数
+     * @throws IOException 写入失败
+     */
+    public static void writeRequest(DataOutputStream output, byte type, String name, String source, List<String> arguments) throws IOException {
+        if (arguments.size() > MAX_ARGUMENTS) {
+            throw new IOException(String.format("too many arguments,at most %d are allowed", MAX_ARGUMENTS));
+        }
+        output.writeByte(type);
+        output.writeUTF(name);
+        writeBytes(output, source.getBytes(StandardCharsets.UTF_8));
+        output.writeInt(arguments.size());
+        for (String argument : arguments) {
+            output.writeUTF(argument);
+        }
+        output.flush();
+    }
+
+    /**
+     * 读取请求
+     *
+     * @param input 输入流
+     * @return 请求
+     * @throws IOException 读取失败或请求格式错误
+     */
+    public static Request readRequest(DataInputStream input) throws IOException {
+        Request request = new Request();
+        request.type = input.readByte();
+        if (request.type != REQUEST_PATH && request.type != REQUEST_SOURCE) {
+            throw new IOException("unknown request type " + request.type);
+        }
+        request.name = input.readUTF();
+        request.source = new String(readBytes(input), StandardCharsets.UTF_8);
+        int count = input.readInt();
+        if (count < 0 || count > MAX_ARGUMENTS) {
+            throw new IOException("invalid argument count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            request.arguments.add(input.readUTF());
+        }
+        return request;
+    }
+
+    /**
+     * 写入一帧,内容不能超过MAX_FRAME_LENGTH
+     *
+     * @param output 输出流
+     * @param type   帧类型
+     * @param bytes  内容
+     * @param offset 内容起始位置
+     * @param length 内容长度
+     * @throws IOException 写入失败
+     */
+    public static void writeFrame(DataOutputStream output, byte type, byte[] bytes, int offset, int length) throws IOException {
+        output.writeByte(type);
+        output.writeInt(length);
+        output.write(bytes, offset, length);
+        output.flush();
+    }
+
+    /**
+     * 写入长度及内容
+     */
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        if (bytes.length > MAX_FRAME_LENGTH) {
+            throw new IOException(String.format("%d bytes exceed the limit of %d bytes", bytes.length, MAX_FRAME_LENGTH));
+        }
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * 读取长度及内容,长度为负或超过MAX_FRAME_LENGTH时拒绝,不会按对端给出的长度分配过大的数组
+     */
+    public static byte[] readBytes(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * 执行脚本的请求
+     */
+    public static class Request {
+        /**
+         * REQUEST_PATH或REQUEST_SOURCE
+         */
+        public byte type;
+
+        /**
+         * 脚本路径或名称
+         */
+        public String name;
+
+        /**
+         * 源码
+         */
+        public String source;
+
+        /**
+         * 传给脚本的参数
+         */
+        public final List<String> arguments = new ArrayList<>();
+    }
+}
@@ -0,0 +1,148 @@
+package com.zh.interpreter.daemon;
+
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.evaluator.CancellationToken;
+import com.zh.interpreter.utils.ThreadUtils;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 常驻的解释器守护进程<br/>
+ * 在一个已经预热的jvm中反复执行客户端发来的脚本,编译结果由ScriptRunner中的MonkeyEngine缓存;
+ * 每个请求在独立的全局环境中执行,输出以帧的形式实时发回客户端,客户端断开时取消对应的执行
+ */
+public class DaemonServer {
+    private final ServerSocketChannel serverChannel;
+
+    private final String address;
+
+    private final ScriptRunner runner;
+
+    private final ExecutorService executor;
+
+    public DaemonServer(String address, int threads) throws IOException {
+        this(address, threads, new MonkeyEngine());
+    }
+
+    /**
+     * @param address 端口或unix domain socket路径
+     * @param threads 同时执行的请求数
+     * @param engine  编译及缓存脚本的引擎
+     * @throws IOException 监听失败
+     */
+    public DaemonServer(String address, int threads, MonkeyEngine engine) throws IOException {
+        if (!DaemonProtocol.isPort(address)) {
+            // 删除上次遗留的socket文件
+            Files.deleteIfExists(Paths.get(address));
+        }
+        this.address = address;
+        this.serverChannel = DaemonProtocol.listen(address);
+        this.executor = ThreadUtils.newExecutor(threads);
+        this.runner = new ScriptRunner(engine);
+    }
+
+    /**
+     * 获取实际监听的地址,端口为0时返回随机选择的端口
+     *
+     * @return 地址
+     * @throws IOException 获取失败
+     */
+    public String getAddress() throws IOException {
+        if (DaemonProtocol.isPort(address)) {
+            return String.valueOf(((java.net.InetSocketAddress) serverChannel.getLocalAddress()).getPort());
+        }
+        return address;
+    }
+
+    /**
+     * 接受连接直到服务关闭,每个连接交给线程池处理
+     */
+    public void serve() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                executor.submit(() -> handle(channel));
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * 关闭服务,unix domain socket的文件会被删除
+     */
+    public void stop() {
+        try {
+            serverChannel.close();
+            if (!DaemonProtocol.isPort(address)) {
+                Files.deleteIfExists(Paths.get(address));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 处理一个连接上的一次请求
+     *
+     * @param channel 客户端连接
+     */
+    private void handle(SocketChannel channel) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DaemonProtocol.Request request = DaemonProtocol.readRequest(input);
+            CancellationToken token = new CancellationToken();
+            watchDisconnect(channel, token);
+            FrameOutputStream frames = new FrameOutputStream(output, token);
+            PrintStream out = new PrintStream(frames, true, "UTF-8");
+            int status = runner.execute(request, out, token);
+            out.flush();
+            frames.exit(status);
+        } catch (IOException e) {
+            // 客户端已断开
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略关闭时的错误
+            }
+        }
+    }
+
+    /**
+     * 客户端发送请求后不再写入数据,在单独的线程中读取连接,读到EOF或连接出错说明客户端已断开,取消对应的执行;
+     * 执行结束后连接被关闭,读取随之失败,线程结束
+     *
+     * @param channel 客户端连接
+     * @param token   执行的取消令牌
+     */
+    private static void watchDisconnect(SocketChannel channel, CancellationToken token) {
+        Thread watcher = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            try {
+                while (channel.read(buffer) >= 0) {
+                    // 丢弃客户端多余的数据
+                    ((Buffer) buffer).clear();
+                }
+            } catch (IOException e) {
+                // 连接被重置或已被关闭
+            }
+            token.cancel();
+        }, "monkey-daemon-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
@@ -0,0 +1,81 @@
+package com.zh.interpreter.daemon;
+
+import com.zh.interpreter.evaluator.CancellationToken;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 将写入的数据以输出帧发给对端,脚本中的并发任务可能同时输出,因此写入时加锁;
+ * 对端断开后取消执行并丢弃之后的输出
+ */
+class FrameOutputStream extends OutputStream {
+    private final DataOutputStream output;
+
+    private final CancellationToken token;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private boolean broken;
+
+    FrameOutputStream(DataOutputStream output, CancellationToken token) {
+        this.output = output;
+        this.token = token;
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            // 较长的输出拆分为多帧,对端拒绝超过MAX_FRAME_LENGTH的帧
+            for (int written = 0; !broken && written < length; ) {
+                int size = Math.min(length - written, DaemonProtocol.MAX_FRAME_LENGTH);
+                DaemonProtocol.writeFrame(output, DaemonProtocol.FRAME_OUTPUT, bytes, offset + written, size);
+                written += size;
+            }
+        } catch (IOException e) {
+            broken = true;
+            token.cancel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 发送文本内容的帧
+     *
+     * @param type 帧类型
+     * @param text 内容
+     * @throws IOException 写入失败
+     */
+    void writeFrame(byte type, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            DaemonProtocol.writeFrame(output, type, bytes, 0, bytes.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 发送退出码,结束本次响应
+     *
+     * @param status 退出码
+     * @throws IOException 写入失败
+     */
+    void exit(int status) throws IOException {
+        writeFrame(DaemonProtocol.FRAME_EXIT, String.valueOf(status));
+    }
+}
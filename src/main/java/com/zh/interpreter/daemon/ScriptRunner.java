@@ -0,0 +1,86 @@
+package com.zh.interpreter.daemon;
+
+import com.zh.interpreter.engine.CompileException;
+import com.zh.interpreter.engine.CompiledScript;
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.evaluator.CancellationToken;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.evaluator.ExecutionLimits;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.ArrayObject;
+import com.zh.interpreter.object.struct.StringObject;
+import com.zh.interpreter.utils.FileUtils;
+import com.zh.interpreter.utils.ObjectUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * 执行守护进程及工作进程收到的请求,编译结果由MonkeyEngine缓存,每个请求在独立的全局环境中执行
+ */
+public class ScriptRunner {
+    private final MonkeyEngine engine;
+
+    /**
+     * @param engine 编译及缓存脚本的引擎,其prelude由所有请求共享
+     */
+    public ScriptRunner(MonkeyEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * 执行请求中的脚本
+     *
+     * @param request 请求
+     * @param out     输出流
+     * @param token   取消令牌
+     * @return 退出码,执行成功为0
+     */
+    public int execute(DaemonProtocol.Request request, PrintStream out, CancellationToken token) {
+        String source = request.source;
+        File directory = null;
+        if (request.type == DaemonProtocol.REQUEST_PATH) {
+            // 脚本中的相对导入相对于脚本所在的目录
+            directory = new File(request.name).getAbsoluteFile().getParentFile();
+            try {
+                source = FileUtils.readSource(new File(request.name));
+            } catch (IOException e) {
+                out.println("can't read " + request.name + ": " + e.getMessage());
+                return 2;
+            }
+        }
+        CompiledScript script;
+        try {
+            script = engine.compile(source);
+        } catch (CompileException e) {
+            e.getErrors().forEach(out::println);
+            return 1;
+        }
+        // 脚本参数以字符串数组args的形式提供
+        Environment environment = script.createEnvironment();
+        ArrayObject arguments = new ArrayObject();
+        for (String argument : request.arguments) {
+            StringObject stringObject = new StringObject();
+            stringObject.value = argument;
+            arguments.elements.add(stringObject);
+        }
+        environment.setObject("args", arguments);
+        ExecutionContext context = new ExecutionContext(out, ExecutionLimits.DEFAULT, token).setDirectory(directory);
+        ExecutionContext previous = ExecutionContext.enter(context);
+        try {
+            Object result = script.evaluate(environment);
+            if (result != null && result.getType() != ObjectType.NULL_OBJECT) {
+                out.println(result);
+            }
+            return ObjectUtils.isError(result) ? 1 : 0;
+        } catch (RuntimeException e) {
+            e.printStackTrace(out);
+            return 1;
+        } finally {
+            ExecutionContext.exit(previous);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.zh.interpreter.daemon;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在本机启动多个解释器子进程并分发脚本文件的协调器<br/>
+ * 文件先按轮转分给各进程的双端队列,进程从自己队列的头部取文件,空闲时从剩余最多的队列尾部窃取;
+ * 子进程崩溃时会被重启,正在执行的文件在新进程中重试一次。每个子进程拥有独立的堆,
+ * 一个进程的长时间GC停顿或崩溃不会影响其它进程
+ */
+public class WorkerPool {
+    /**
+     * 子进程崩溃后同一文件的最多重试次数
+     */
+    private static final int MAX_RETRIES = 1;
+
+    /**
+     * 子进程崩溃时的退出码
+     */
+    public static final int STATUS_CRASHED = 3;
+
+    private final List<String> command;
+
+    private final int processes;
+
+    /**
+     * 最近一次run中各子进程的统计
+     */
+    private volatile Statistics[] statistics = new Statistics[0];
+
+    /**
+     * @param processes  子进程数
+     * @param jvmOptions 子进程的jvm参数,如-Xmx512m
+     */
+    public WorkerPool(int processes, List<String> jvmOptions) {
+        this(processes, jvmOptions, null);
+    }
+
+    /**
+     * @param processes  子进程数
+     * @param jvmOptions 子进程的jvm参数,如-Xmx512m
+     * @param prelude    每个子进程启动时执行一次的prelude文件路径,可以为null
+     */
+    public WorkerPool(int processes, List<String> jvmOptions, String prelude) {
+        this.processes = Math.max(1, processes);
+        this.command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        // 传递解释器相关的系统属性
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("monkey.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.zh.interpreter.Main");
+        command.add("-worker");
+        if (prelude != null) {
+            command.add("--prelude");
+            command.add(new File(prelude).getAbsolutePath());
+        }
+    }
+
+    /**
+     * 执行所有文件,返回按文件顺序排列的结果
+     *
+     * @param files 脚本文件
+     * @return 执行结果
+     * @throws InterruptedException 等待时被中断
+     */
+    public Result[] run(File[] files) throws InterruptedException {
+        Result[] results = new Result[files.length];
+        Worker[] workers = new Worker[Math.min(processes, Math.max(1, files.length))];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i + 1, workers, results);
+        }
+        for (int i = 0; i < files.length; i++) {
+            results[i] = new Result(files[i]);
+            workers[i % workers.length].queue.addLast(i);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+        Statistics[] statistics = new Statistics[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].join();
+            statistics[i] = workers[i].statistics;
+        }
+        this.statistics = statistics;
+        return results;
+    }
+
+    /**
+     * 获取最近一次run中各子进程的统计
+     *
+     * @return 按子进程编号排列的统计
+     */
+    public Statistics[] getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 单个文件的执行结果
+     */
+    public static class Result {
+        public final File file;
+
+        /**
+         * 脚本的输出
+         */
+        public final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        /**
+         * 退出码,0为成功
+         */
+        public int status = -1;
+
+        /**
+         * 执行该文件的子进程编号
+         */
+        public int worker;
+
+        /**
+         * 执行耗时,纳秒
+         */
+        public long elapsed;
+
+        private Result(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * 子进程的统计,同一编号的子进程重启后继续累计
+     */
+    public static class Statistics {
+        /**
+         * 执行的文件数
+         */
+        public int files;
+
+        /**
+         * 失败的文件数
+         */
+        public int failed;
+
+        /**
+         * 崩溃次数,每次崩溃后都会重启
+         */
+        public int crashes;
+
+        /**
+         * 执行脚本的总耗时,纳秒
+         */
+        public long elapsed;
+
+        /**
+         * 执行期间的GC次数
+         */
+        public long gcCount;
+
+        /**
+         * 执行期间的GC耗时,毫秒
+         */
+        public long gcMillis;
+    }
+
+    /**
+     * 管理一个子进程的协调线程
+     */
+    private class Worker extends Thread {
+        private final int id;
+
+        private final Worker[] workers;
+
+        private final Result[] results;
+
+        /**
+         * 分配给该进程的文件下标
+         */
+        private final ConcurrentLinkedDeque<Integer> queue = new ConcurrentLinkedDeque<>();
+
+        private final Statistics statistics = new Statistics();
+
+        private Process process;
+
+        private DataInputStream input;
+
+        private DataOutputStream output;
+
+        private Worker(int id, Worker[] workers, Result[] results) {
+            super("monkey-worker-" + id);
+            this.id = id;
+            this.workers = workers;
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            Integer index;
+            while ((index = next()) != null) {
+                execute(results[index]);
+            }
+            stopProcess();
+        }
+
+        /**
+         * 取出下一个文件,自己的队列为空时从剩余最多的队列尾部窃取
+         *
+         * @return 文件下标,没有剩余文件时返回null
+         */
+        private Integer next() {
+            Integer index = queue.pollFirst();
+            while (index == null) {
+                Worker victim = null;
+                for (Worker worker : workers) {
+                    if (worker != this && (victim == null || worker.queue.size() > victim.queue.size())) {
+                        victim = worker;
+                    }
+                }
+                if (victim == null || victim.queue.isEmpty()) {
+                    return null;
+                }
+                index = victim.queue.pollLast();
+            }
+            return index;
+        }
+
+        /**
+         * 在子进程中执行文件,子进程崩溃时重启并重试
+         *
+         * @param result 执行结果
+         */
+        private void execute(Result result) {
+            result.worker = id;
+            statistics.files++;
+            for (int attempt = 0; ; attempt++) {
+                result.output.reset();
+                try {
+                    if (process == null || !process.isAlive()) {
+                        startProcess();
+                    }
+                    DaemonProtocol.writeRequest(output, DaemonProtocol.REQUEST_PATH, result.file.getAbsolutePath(), "",
+                            Collections.<String>emptyList());
+                    readResponse(result);
+                    break;
+                } catch (IOException e) {
+                    // 子进程崩溃或无法启动
+                    String reason = process != null && !process.isAlive() ? "exit code " + process.exitValue() : String.valueOf(e);
+                    stopProcess();
+                    statistics.crashes++;
+                    if (attempt >= MAX_RETRIES) {
+                        PrintStream out = new PrintStream(result.output, true);
+                        out.println("worker " + id + " crashed: " + reason);
+                        result.status = STATUS_CRASHED;
+                        break;
+                    }
+                }
+            }
+            if (result.status != 0) {
+                statistics.failed++;
+            }
+        }
+
+        /**
+         * 读取一个请求的响应帧
+         *
+         * @param result 执行结果
+         * @throws IOException 子进程已退出
+         */
+        private void readResponse(Result result) throws IOException {
+            while (true) {
+                byte frame = input.readByte();
+                if (frame != DaemonProtocol.FRAME_OUTPUT && frame != DaemonProtocol.FRAME_METRICS
+                        && frame != DaemonProtocol.FRAME_EXIT) {
+                    // 子进程的输出已经错乱,按崩溃处理
+                    throw new IOException("unknown frame " + frame);
+                }
+                byte[] bytes = DaemonProtocol.readBytes(input);
+                switch (frame) {
+                    case DaemonProtocol.FRAME_OUTPUT:
+                        result.output.write(bytes);
+                        break;
+                    case DaemonProtocol.FRAME_METRICS:
+                        for (String item : new String(bytes, StandardCharsets.UTF_8).split(";")) {
+                            String[] pair = item.split("=");
+                            long value = Long.parseLong(pair[1]);
+                            switch (pair[0]) {
+                                case "elapsed":
+                                    result.elapsed = value;
+                                    statistics.elapsed += value;
+                                    break;
+                                case "gcCount":
+                                    statistics.gcCount += value;
+                                    break;
+                                case "gcMillis":
+                                    statistics.gcMillis += value;
+                                    break;
+                            }
+                        }
+                        break;
+                    default:
+                        result.status = Integer.parseInt(new String(bytes, StandardCharsets.UTF_8));
+                        return;
+                }
+            }
+        }
+
+        private void startProcess() throws IOException {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = builder.start();
+            input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        }
+
+        /**
+         * 关闭子进程的标准输入使其退出,崩溃的子进程直接销毁
+         */
+        private void stopProcess() {
+            if (process == null) {
+                return;
+            }
+            try {
+                output.close();
+            } catch (IOException e) {
+                // 子进程已退出
+            }
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+            process = null;
+        }
+    }
+}
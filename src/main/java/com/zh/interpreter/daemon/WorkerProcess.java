@@ -0,0 +1,78 @@
+package com.zh.interpreter.daemon;
+
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.evaluator.CancellationToken;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 由WorkerPool启动的工作进程<br/>
+ * 从标准输入逐个读取请求并执行,输出帧写到标准输出;标准输入关闭时退出。
+ * 协议独占标准输出,调用前System.out应已重定向到标准错误输出,直接写System.out的内容不会破坏协议
+ */
+public abstract class WorkerProcess {
+    private WorkerProcess() {
+    }
+
+    /**
+     * 处理请求直到标准输入关闭
+     *
+     * @param engine 编译及缓存脚本的引擎
+     */
+    public static void run(MonkeyEngine engine) {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        ScriptRunner runner = new ScriptRunner(engine);
+        while (true) {
+            DaemonProtocol.Request request;
+            try {
+                request = DaemonProtocol.readRequest(input);
+            } catch (EOFException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            CancellationToken token = new CancellationToken();
+            FrameOutputStream frames = new FrameOutputStream(output, token);
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            long startTime = System.nanoTime();
+            try {
+                PrintStream out = new PrintStream(frames, true, "UTF-8");
+                int status = runner.execute(request, out, token);
+                out.flush();
+                frames.writeFrame(DaemonProtocol.FRAME_METRICS, String.format("elapsed=%d;gcCount=%d;gcMillis=%d",
+                        System.nanoTime() - startTime, gcCount() - gcCount, gcMillis() - gcMillis));
+                frames.exit(status);
+            } catch (IOException e) {
+                // 协调进程已退出
+                return;
+            }
+        }
+    }
+
+    /**
+     * 所有垃圾收集器的累计收集次数
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * 所有垃圾收集器的累计收集时间,毫秒
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,25 @@
+package com.zh.interpreter.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 脚本编译失败时抛出的异常,包含语法分析产生的全部错误
+ */
+public class CompileException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 语法分析错误
+     */
+    private final List<String> errors;
+
+    public CompileException(List<String> errors) {
+        super(String.join("\n", errors));
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,169 @@
+package com.zh.interpreter.engine;
+
+import com.zh.interpreter.ast.Program;
+import com.zh.interpreter.evaluator.CancellationToken;
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.evaluator.ExecutionLimits;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.tools.ReturnObject;
+import com.zh.interpreter.utils.ObjectUtils;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 编译完成的脚本,已完成词法分析、语法分析及宏展开<br/>
+ * 执行过程不会修改其AST,每次执行都使用独立的全局环境,因此可以被多个线程同时执行
+ */
+public final class CompiledScript {
+    /**
+     * 宏展开后的程序
+     */
+    private final Program program;
+
+    /**
+     * 源码的SHA-256摘要
+     */
+    private final String hash;
+
+    /**
+     * 编译时使用的prelude,为null时没有prelude
+     */
+    private final Prelude prelude;
+
+    CompiledScript(Program program, String hash, Prelude prelude) {
+        this.program = program;
+        this.hash = hash;
+        this.prelude = prelude;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * 使用空的绑定执行脚本
+     *
+     * @return 转换为java对象的执行结果
+     */
+    public java.lang.Object run() {
+        return run(Collections.emptyMap());
+    }
+
+    /**
+     * 在新的全局环境中执行脚本
+     *
+     * @param bindings 预先放入全局环境的变量,值会转换为解释器对象
+     * @return 转换为java对象的执行结果
+     * @throws EvaluationException 执行结果为错误对象
+     */
+    public java.lang.Object run(Map<String, ?> bindings) {
+        return run(bindings, null);
+    }
+
+    /**
+     * 在新的全局环境中执行脚本,脚本的输出写入指定的输出流
+     *
+     * @param bindings 预先放入全局环境的变量,值会转换为解释器对象
+     * @param out      puts等内置函数使用的输出流,为null时使用System.out
+     * @return 转换为java对象的执行结果
+     * @throws EvaluationException 执行结果为错误对象
+     */
+    public java.lang.Object run(Map<String, ?> bindings, PrintStream out) {
+        return run(bindings, out, ExecutionLimits.DEFAULT);
+    }
+
+    /**
+     * 在新的全局环境中按指定的资源配额执行脚本,超出配额时执行被中止
+     *
+     * @param bindings 预先放入全局环境的变量,值会转换为解释器对象
+     * @param out      puts等内置函数使用的输出流,为null时使用System.out
+     * @param limits   资源配额
+     * @return 转换为java对象的执行结果
+     * @throws EvaluationException 执行结果为错误对象,包括超出配额
+     */
+    public java.lang.Object run(Map<String, ?> bindings, PrintStream out, ExecutionLimits limits) {
+        return run(bindings, out, limits, null);
+    }
+
+    /**
+     * 在新的全局环境中按指定的资源配额执行脚本,其它线程可以通过取消令牌中止执行
+     *
+     * @param bindings 预先放入全局环境的变量,值会转换为解释器对象
+     * @param out      puts等内置函数使用的输出流,为null时使用System.out
+     * @param limits   资源配额
+     * @param token    取消令牌,为null时不可取消
+     * @return 转换为java对象的执行结果
+     * @throws EvaluationException 执行结果为错误对象,包括超出配额及被取消
+     */
+    public java.lang.Object run(Map<String, ?> bindings, PrintStream out, ExecutionLimits limits, CancellationToken token) {
+        return run(bindings, out, limits, token, null);
+    }
+
+    /**
+     * 在新的全局环境中按指定的资源配额执行从文件读取的脚本,脚本中以相对路径导入的模块相对于指定目录
+     *
+     * @param bindings  预先放入全局环境的变量,值会转换为解释器对象
+     * @param out       puts等内置函数使用的输出流,为null时使用System.out
+     * @param limits    资源配额
+     * @param token     取消令牌,为null时不可取消
+     * @param directory 脚本所在的目录,为null时相对于当前工作目录
+     * @return 转换为java对象的执行结果
+     * @throws EvaluationException 执行结果为错误对象,包括超出配额及被取消
+     */
+    public java.lang.Object run(Map<String, ?> bindings, PrintStream out, ExecutionLimits limits, CancellationToken token, File directory) {
+        Environment environment = createEnvironment();
+        for (Map.Entry<String, ?> entry : bindings.entrySet()) {
+            environment.setObject(entry.getKey(), ObjectUtils.convertFromJava(entry.getValue()));
+        }
+        ExecutionContext previous = ExecutionContext.enter(new ExecutionContext(out, limits, token).setDirectory(directory));
+        Object result;
+        try {
+            result = evaluate(environment);
+        } finally {
+            ExecutionContext.exit(previous);
+        }
+        if (ObjectUtils.isError(result)) {
+            throw new EvaluationException((String) ObjectUtils.convertToJava(result));
+        }
+        return ObjectUtils.convertToJava(result);
+    }
+
+    /**
+     * 在指定环境中执行脚本
+     *
+     * @param environment 全局环境
+     * @return 执行结果,return语句的返回值会被解包
+     */
+    public Object evaluate(Environment environment) {
+        Object result = Evaluator.evaluateExpanded(program, environment);
+        if (result != null && result.getType() == ObjectType.RETURN_OBJECT) {
+            result = ((ReturnObject) result).value;
+        }
+        return result;
+    }
+
+    /**
+     * 创建一个执行本脚本使用的新全局环境
+     *
+     * @return 以prelude为外层的全局环境,没有prelude时以内置函数环境为外层
+     */
+    public Environment createEnvironment() {
+        return prelude == null ? newEnvironment() : prelude.newEnvironment();
+    }
+
+    /**
+     * 创建一个新的全局环境
+     *
+     * @return 以冻结的内置函数环境为外层的全局环境
+     */
+    public static Environment newEnvironment() {
+        return new Environment(BuiltInEnvironment.getInstance());
+    }
+}
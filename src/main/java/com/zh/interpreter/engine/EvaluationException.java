@@ -0,0 +1,12 @@
+package com.zh.interpreter.engine;
+
+/**
+ * 脚本执行结果为错误对象时抛出的异常
+ */
+public class EvaluationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public EvaluationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,133 @@
+package com.zh.interpreter.engine;
+
+import com.zh.interpreter.ast.Program;
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.lexer.Lexer;
+import com.zh.interpreter.monitor.InterpreterMetrics;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.parser.Parser;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * 可嵌入的脚本引擎<br/>
+ * 编译结果按源码的SHA-256摘要缓存,同一段脚本只需解析和宏展开一次;引擎本身是线程安全的。
+ * 指定prelude时,脚本可以使用prelude中定义的宏,并在以prelude为外层的全局环境中执行
+ */
+public class MonkeyEngine {
+    /**
+     * 默认的缓存容量
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * 编译脚本缓存
+     */
+    private final ScriptCache cache;
+
+    /**
+     * 所有脚本共享的prelude,为null时脚本直接以内置函数环境为外层
+     */
+    private final Prelude prelude;
+
+    public MonkeyEngine() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize 最多缓存的编译脚本数,为0时不缓存
+     */
+    public MonkeyEngine(int cacheSize) {
+        this(cacheSize, null);
+    }
+
+    /**
+     * @param cacheSize 最多缓存的编译脚本数,为0时不缓存
+     * @param prelude   所有脚本共享的prelude,可以为null
+     */
+    public MonkeyEngine(int cacheSize, Prelude prelude) {
+        this.cache = new ScriptCache(cacheSize);
+        this.prelude = prelude;
+    }
+
+    public Prelude getPrelude() {
+        return prelude;
+    }
+
+    /**
+     * 编译脚本,命中缓存时直接返回之前的编译结果
+     *
+     * @param source 脚本源码
+     * @return 编译完成的脚本
+     * @throws CompileException 存在语法错误
+     */
+    public CompiledScript compile(String source) {
+        String hash = hash(source);
+        CompiledScript script = cache.get(hash);
+        InterpreterMetrics.recordCacheLookup(script != null);
+        if (script != null) {
+            return script;
+        }
+        Parser parser = new Parser(new Lexer(source));
+        Program program = parser.parse();
+        if (!parser.getErrors().isEmpty()) {
+            throw new CompileException(new ArrayList<>(parser.getErrors()));
+        }
+        // 宏在编译时展开,宏定义只存在于编译使用的环境中
+        Environment environment = prelude == null ? CompiledScript.newEnvironment() : prelude.newEnvironment();
+        program = Evaluator.expandMacros(program, environment);
+        script = new CompiledScript(program, hash, prelude);
+        cache.put(hash, script);
+        return script;
+    }
+
+    /**
+     * 编译并执行脚本
+     *
+     * @param source   脚本源码
+     * @param bindings 预先放入全局环境的变量
+     * @return 转换为java对象的执行结果
+     */
+    public java.lang.Object eval(String source, Map<String, ?> bindings) {
+        return compile(source).run(bindings);
+    }
+
+    /**
+     * 获取当前缓存的编译脚本数
+     *
+     * @return 缓存数量
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * 清空编译脚本缓存
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * 计算源码的SHA-256摘要,也用于判断模块文件的内容是否变化
+     *
+     * @param source 源码
+     * @return 十六进制摘要
+     */
+    public static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.zh.interpreter.engine;
+
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.evaluator.ExecutionLimits;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.utils.ObjectUtils;
+
+import javax.script.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSR-223脚本引擎<br/>
+ * 每次执行都在新的全局环境中进行:执行前将上下文中GLOBAL_SCOPE及ENGINE_SCOPE的绑定放入全局环境,
+ * 执行后将全局环境中的变量以解释器对象原样写回ENGINE_SCOPE,之后的执行看到同一份状态,脚本中定义的函数也可以通过Invocable直接调用;
+ * 只有执行及调用的结果在返回给java时转换<br/>
+ * 脚本的输出写入上下文的Writer,并按ExecutionLimits.DEFAULT限制资源
+ */
+public class MonkeyScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final MonkeyScriptEngineFactory factory;
+
+    private final MonkeyEngine engine;
+
+    MonkeyScriptEngine(MonkeyScriptEngineFactory factory, MonkeyEngine engine) {
+        this.factory = factory;
+        this.engine = engine;
+    }
+
+    @Override
+    public java.lang.Object eval(String script, ScriptContext context) throws ScriptException {
+        return execute(compileScript(script), context);
+    }
+
+    @Override
+    public java.lang.Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(readAll(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(String script) throws ScriptException {
+        CompiledScript compiledScript = compileScript(script);
+        return new javax.script.CompiledScript() {
+            @Override
+            public java.lang.Object eval(ScriptContext context) throws ScriptException {
+                return execute(compiledScript, context);
+            }
+
+            @Override
+            public ScriptEngine getEngine() {
+                return MonkeyScriptEngine.this;
+            }
+        };
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(Reader script) throws ScriptException {
+        return compile(readAll(script));
+    }
+
+    /**
+     * 调用之前执行的脚本在ENGINE_SCOPE中定义的函数
+     */
+    @Override
+    public java.lang.Object invokeFunction(String name, java.lang.Object... args) throws ScriptException, NoSuchMethodException {
+        return invoke(name, null, args);
+    }
+
+    /**
+     * 按monkey的点调用语义调用函数,thiz作为函数的第一个参数
+     */
+    @Override
+    public java.lang.Object invokeMethod(java.lang.Object thiz, String name, java.lang.Object... args) throws ScriptException, NoSuchMethodException {
+        if (thiz == null) {
+            throw new IllegalArgumentException("thiz can not be null");
+        }
+        return invoke(name, thiz, args);
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> clazz) {
+        return getInterface(null, clazz);
+    }
+
+    @Override
+    public <T> T getInterface(java.lang.Object thiz, Class<T> clazz) {
+        if (clazz == null || !clazz.isInterface()) {
+            throw new IllegalArgumentException("interface class expected");
+        }
+        // 接口的每个方法都需要有同名的函数
+        for (java.lang.reflect.Method method : clazz.getMethods()) {
+            Object function = lookup(method.getName());
+            if (function == null || !ObjectUtils.isFunction(function)) {
+                return null;
+            }
+        }
+        return clazz.cast(Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == java.lang.Object.class) {
+                        return method.invoke(this, args);
+                    }
+                    java.lang.Object[] arguments = args == null ? new java.lang.Object[0] : args;
+                    return invoke(method.getName(), thiz, arguments);
+                }));
+    }
+
+    /**
+     * 编译脚本,将语法错误转换为ScriptException
+     */
+    private CompiledScript compileScript(String script) throws ScriptException {
+        try {
+            return engine.compile(script);
+        } catch (CompileException e) {
+            throw new ScriptException(e.getMessage());
+        }
+    }
+
+    /**
+     * 在新的全局环境中执行编译完成的脚本
+     */
+    private java.lang.Object execute(CompiledScript script, ScriptContext context) throws ScriptException {
+        Environment environment = script.createEnvironment();
+        Bindings globalBindings = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+        if (globalBindings != null) {
+            bind(environment, globalBindings);
+        }
+        Bindings engineBindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        bind(environment, engineBindings);
+        PrintStream out = new PrintStream(new WriterOutputStream(context.getWriter()), true);
+        ExecutionContext previous = ExecutionContext.enter(createExecutionContext(context, out));
+        Object result;
+        try {
+            result = script.evaluate(environment);
+        } finally {
+            ExecutionContext.exit(previous);
+            out.flush();
+        }
+        // 将脚本定义的变量原样写回引擎绑定,之后的执行及Invocable调用使用同一个解释器对象
+        for (Map.Entry<String, Object> entry : environment.getStores().entrySet()) {
+            engineBindings.put(entry.getKey(), entry.getValue());
+        }
+        if (ObjectUtils.isError(result)) {
+            throw new ScriptException((String) ObjectUtils.convertToJava(result));
+        }
+        return ObjectUtils.convertToJava(result);
+    }
+
+    /**
+     * 创建执行上下文,puts等内置函数输出到上下文的Writer;指定了脚本文件名时,脚本中的相对导入相对于该文件所在的目录
+     */
+    private static ExecutionContext createExecutionContext(ScriptContext context, PrintStream out) {
+        ExecutionContext executionContext = new ExecutionContext(out, ExecutionLimits.DEFAULT);
+        java.lang.Object fileName = context.getAttribute(ScriptEngine.FILENAME);
+        if (fileName instanceof String) {
+            executionContext.setDirectory(new File((String) fileName).getAbsoluteFile().getParentFile());
+        }
+        return executionContext;
+    }
+
+    private static void bind(Environment environment, Bindings bindings) {
+        for (Map.Entry<String, java.lang.Object> entry : bindings.entrySet()) {
+            environment.setObject(entry.getKey(), ObjectUtils.convertFromJava(entry.getValue()));
+        }
+    }
+
+    /**
+     * 在引擎绑定中查找函数
+     */
+    private Object lookup(String name) {
+        java.lang.Object value = context.getAttribute(name);
+        return value instanceof Object ? (Object) value : null;
+    }
+
+    private java.lang.Object invoke(String name, java.lang.Object thiz, java.lang.Object[] args) throws ScriptException, NoSuchMethodException {
+        Object function = lookup(name);
+        if (function == null || !ObjectUtils.isFunction(function)) {
+            throw new NoSuchMethodException(name);
+        }
+        List<Object> arguments = new ArrayList<>(args.length + 1);
+        if (thiz != null) {
+            arguments.add(ObjectUtils.convertFromJava(thiz));
+        }
+        for (java.lang.Object arg : args) {
+            arguments.add(ObjectUtils.convertFromJava(arg));
+        }
+        PrintStream out = new PrintStream(new WriterOutputStream(context.getWriter()), true);
+        ExecutionContext previous = ExecutionContext.enter(createExecutionContext(context, out));
+        Object result;
+        try {
+            result = Evaluator.applyFunction(function, name, arguments);
+        } finally {
+            ExecutionContext.exit(previous);
+            out.flush();
+        }
+        if (ObjectUtils.isError(result)) {
+            throw new ScriptException((String) ObjectUtils.convertToJava(result));
+        }
+        return ObjectUtils.convertToJava(result);
+    }
+
+    private static String readAll(Reader reader) throws ScriptException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[4096];
+        try {
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.zh.interpreter.engine;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * JSR-223脚本引擎工厂,通过META-INF/services注册
+ */
+public class MonkeyScriptEngineFactory implements ScriptEngineFactory {
+    private static final List<String> names = Collections.unmodifiableList(Arrays.asList("monkey", "Monkey"));
+
+    private static final List<String> extensions = Collections.unmodifiableList(Arrays.asList("mk", "monkey"));
+
+    private static final List<String> mimeTypes = Collections.singletonList("application/x-monkey");
+
+    /**
+     * 所有引擎实例共享的编译器及编译脚本缓存
+     */
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    @Override
+    public String getEngineName() {
+        return "Monkey Interpreter";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return mimeTypes;
+    }
+
+    @Override
+    public List<String> getNames() {
+        return names;
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "monkey";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public java.lang.Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return getEngineName();
+            case ScriptEngine.ENGINE_VERSION:
+                return getEngineVersion();
+            case ScriptEngine.NAME:
+                return names.get(0);
+            case ScriptEngine.LANGUAGE:
+                return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION:
+                return getLanguageVersion();
+            case "THREADING":
+                // 每次执行使用独立的全局环境,但引擎绑定在执行之间共享
+                return "MULTITHREADED";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * monkey的点调用obj.m(args)等价于m(obj,args)
+     */
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        StringJoiner joiner = new StringJoiner(",", obj + "." + m + "(", ")");
+        for (String arg : args) {
+            joiner.add(arg);
+        }
+        return joiner.toString();
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "puts(\"" + toDisplay.replace("\\", "\\\\").replace("\"", "\\\"") + "\")";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder builder = new StringBuilder();
+        for (String statement : statements) {
+            builder.append(statement).append(";\n");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new MonkeyScriptEngine(this, engine);
+    }
+}
@@ -0,0 +1,120 @@
+package com.zh.interpreter.engine;
+
+import com.zh.interpreter.ast.Program;
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.evaluator.ExecutionLimits;
+import com.zh.interpreter.lexer.Lexer;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.parser.Parser;
+import com.zh.interpreter.utils.ObjectUtils;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * 预先执行的公共程序(prelude)的快照<br/>
+ * prelude只执行一次,执行后的全局环境(包括let绑定和宏定义)连同其中的值被冻结为只读的一层,
+ * 位于内置函数环境与每次执行的全局环境之间;新的执行只需创建一个以它为外层的空环境,不必重新执行prelude
+ */
+public final class Prelude {
+    /**
+     * 冻结的prelude环境,外层为内置函数环境
+     */
+    private final Environment environment;
+
+    /**
+     * 源码的SHA-256摘要
+     */
+    private final String hash;
+
+    private Prelude(Environment environment, String hash) {
+        this.environment = environment;
+        this.hash = hash;
+    }
+
+    /**
+     * 执行prelude并生成快照,执行的输出写入System.out
+     *
+     * @param source prelude源码
+     * @return prelude快照
+     * @throws CompileException    存在语法错误
+     * @throws EvaluationException 执行结果为错误对象
+     */
+    public static Prelude evaluate(String source) {
+        return evaluate(source, null);
+    }
+
+    /**
+     * 执行prelude并生成快照
+     *
+     * @param source prelude源码
+     * @param out    prelude执行时的输出流,为null时使用System.out
+     * @return prelude快照
+     * @throws CompileException    存在语法错误
+     * @throws EvaluationException 执行结果为错误对象
+     */
+    public static Prelude evaluate(String source, PrintStream out) {
+        Parser parser = new Parser(new Lexer(source));
+        Program program = parser.parse();
+        if (!parser.getErrors().isEmpty()) {
+            throw new CompileException(new ArrayList<>(parser.getErrors()));
+        }
+        // 宏定义与let绑定保存在同一个环境中,之后编译的脚本可以使用prelude中的宏
+        Environment environment = new Environment(BuiltInEnvironment.getInstance());
+        program = Evaluator.expandMacros(program, environment);
+        ExecutionContext previous = ExecutionContext.enter(new ExecutionContext(out, ExecutionLimits.DEFAULT, null));
+        Object result;
+        try {
+            result = Evaluator.evaluateExpanded(program, environment);
+        } finally {
+            ExecutionContext.exit(previous);
+        }
+        if (ObjectUtils.isError(result)) {
+            throw new EvaluationException((String) ObjectUtils.convertToJava(result));
+        }
+        // 快照由所有执行共享,其中的值同样需要只读
+        environment.freezeDeeply();
+        return new Prelude(environment, MonkeyEngine.hash(source));
+    }
+
+    /**
+     * 将已有的全局环境(如从堆快照中恢复的环境)冻结为prelude
+     *
+     * @param environment 以内置函数环境为外层的全局环境,之后不能再修改
+     * @return prelude快照,其摘要为null
+     */
+    public static Prelude of(Environment environment) {
+        environment.freezeDeeply();
+        return new Prelude(environment, null);
+    }
+
+    /**
+     * 获取冻结的prelude环境
+     *
+     * @return 只读的环境
+     */
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * 获取prelude源码的SHA-256摘要
+     *
+     * @return 摘要,由已有环境创建时为null
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * 创建一个以prelude为外层的新全局环境
+     *
+     * @return 全局环境
+     */
+    public Environment newEnvironment() {
+        return new Environment(environment);
+    }
+}
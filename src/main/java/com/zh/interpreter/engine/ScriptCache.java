@@ -0,0 +1,72 @@
+package com.zh.interpreter.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界的LRU编译脚本缓存<br/>
+ * 使用ReentrantLock而非synchronized,在虚拟线程中持有锁时不会占住载体线程
+ */
+class ScriptCache {
+    /**
+     * 最大缓存数量
+     */
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 按访问顺序排列的缓存
+     */
+    private final LinkedHashMap<String, CompiledScript> scripts;
+
+    ScriptCache(int capacity) {
+        this.capacity = capacity;
+        this.scripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                return size() > ScriptCache.this.capacity;
+            }
+        };
+    }
+
+    CompiledScript get(String key) {
+        lock.lock();
+        try {
+            return scripts.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(String key, CompiledScript script) {
+        if (capacity <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            scripts.put(key, script);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return scripts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            scripts.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
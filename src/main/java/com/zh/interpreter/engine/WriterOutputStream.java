@@ -0,0 +1,81 @@
+package com.zh.interpreter.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 将写入的UTF-8字节解码后写入Writer,用于把ScriptContext的输出交给puts等内置函数使用的PrintStream<br/>
+ * 字节在flush时解码,不完整的多字节字符留到下一次flush;脚本中的并发任务可能同时输出,因此写入时加锁
+ */
+class WriterOutputStream extends OutputStream {
+    private final Writer writer;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * 尚未解码的字节
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    WriterOutputStream(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(int b) {
+        lock.lock();
+        try {
+            pending.write(b);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        lock.lock();
+        try {
+            pending.write(bytes, offset, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            ByteBuffer input = ByteBuffer.wrap(pending.toByteArray());
+            CharBuffer output = CharBuffer.allocate(input.remaining());
+            decoder.decode(input, output, false);
+            ((Buffer) output).flip();
+            writer.write(output.array(), 0, output.limit());
+            pending.reset();
+            pending.write(input.array(), input.position(), input.remaining());
+            writer.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 只写出剩余的输出,Writer属于ScriptContext,不在这里关闭
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
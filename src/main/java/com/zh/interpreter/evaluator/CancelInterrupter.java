@@ -0,0 +1,73 @@
+package com.zh.interpreter.evaluator;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 阻塞等待期间的取消中断<br/>
+ * 用于无法通过条件变量唤醒的等待(如Future.get、获取锁、sleep),当前执行被取消时中断等待的线程;
+ * 等待结束后调用disarm,之后不会再中断该线程,由取消产生的中断标记也会被清除
+ */
+public final class CancelInterrupter implements Runnable {
+    /**
+     * 等待的线程
+     */
+    private final Thread thread = Thread.currentThread();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 是否仍在等待,只在持有锁时访问
+     */
+    private boolean armed = true;
+
+    /**
+     * 是否已因取消中断了等待的线程,只在持有锁时访问
+     */
+    private boolean fired;
+
+    private CancelInterrupter() {
+    }
+
+    /**
+     * 开始等待前调用,向当前执行的取消令牌注册中断;已经取消时立即中断当前线程
+     *
+     * @return 等待结束后需要disarm的中断器
+     */
+    public static CancelInterrupter arm() {
+        CancelInterrupter interrupter = new CancelInterrupter();
+        ExecutionContext.onCancel(interrupter);
+        return interrupter;
+    }
+
+    /**
+     * 由取消令牌在取消线程中调用
+     */
+    @Override
+    public void run() {
+        lock.lock();
+        try {
+            if (armed) {
+                fired = true;
+                thread.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待结束后在等待的线程中调用,注销中断并清除由取消产生的中断标记
+     */
+    public void disarm() {
+        ExecutionContext.removeOnCancel(this);
+        lock.lock();
+        try {
+            armed = false;
+            if (fired) {
+                Thread.interrupted();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.zh.interpreter.evaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 执行的取消令牌<br/>
+ * 宿主可以在任意线程调用cancel,求值器在循环迭代、函数调用以及阻塞的内置函数中轮询令牌,发现取消后中止执行;
+ * 注册的清理钩子在cancel的调用线程中按注册顺序执行一次
+ */
+public class CancellationToken {
+    /**
+     * 是否已取消
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * 取消时执行的清理钩子
+     */
+    private final List<Runnable> hooks = new ArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 取消执行,重复调用无效
+     */
+    public void cancel() {
+        List<Runnable> pending;
+        lock.lock();
+        try {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            pending = new ArrayList<>(hooks);
+            hooks.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable hook : pending) {
+            runHook(hook);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 注册取消时执行的清理钩子,已经取消时立即在当前线程执行
+     *
+     * @param hook 清理钩子
+     */
+    public void onCancel(Runnable hook) {
+        lock.lock();
+        try {
+            if (!cancelled) {
+                hooks.add(hook);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        runHook(hook);
+    }
+
+    /**
+     * 注销尚未执行的清理钩子,用于阻塞结束后移除唤醒等待线程的钩子
+     *
+     * @param hook 注册时传入的清理钩子
+     */
+    public void removeOnCancel(Runnable hook) {
+        lock.lock();
+        try {
+            hooks.remove(hook);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 执行清理钩子,钩子的异常不影响其它钩子
+     *
+     * @param hook 清理钩子
+     */
+    private static void runHook(Runnable hook) {
+        try {
+            hook.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
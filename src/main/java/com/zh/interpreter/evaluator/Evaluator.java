@@ -2,6 +2,7 @@ package com.zh.interpreter.evaluator;
 
 import com.zh.interpreter.ast.ASTNode;
 import com.zh.interpreter.ast.Expression;
+import com.zh.interpreter.ast.FunctionScope;
 import com.zh.interpreter.ast.Program;
 import com.zh.interpreter.ast.Statement;
 import com.zh.interpreter.ast.expression.*;
@@ -11,6 +12,11 @@ import com.zh.interpreter.ast.statement.ExpressionStatement;
 import com.zh.interpreter.ast.statement.LetStatement;
 import com.zh.interpreter.ast.statement.ReturnStatement;
 import com.zh.interpreter.modify.Modify;
+import com.zh.interpreter.monitor.AllocationProfiler;
+import com.zh.interpreter.monitor.Events;
+import com.zh.interpreter.monitor.InterpreterMetrics;
+import com.zh.interpreter.monitor.Tracer;
+import com.zh.interpreter.object.Cloneable;
 import com.zh.interpreter.object.Hashable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
@@ -43,33 +49,46 @@ public class Evaluator {
      */
     private static final Map<Class<? extends ASTNode>, Method> methodMap;
 
+    /**
+     * 当前线程的monkey函数调用深度
+     */
+    private static final ThreadLocal<int[]> callDepth = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * 闭包是否捕获定义处的整个环境,默认只捕获函数体引用到的变量
+     */
+    private static final boolean fullCapture = Boolean.getBoolean("monkey.closure.fullCapture");
+
     static {
-        methodMap = new HashMap<>();
-        infixMethodMap = new HashMap<>();
+        Map<Class<? extends ASTNode>, Method> methods = new HashMap<>();
+        Map<Class<? extends Object>, Method> infixMethods = new HashMap<>();
         try {
             // 初始化求值器
             List<Class<?>> expressionClazz = ReflectUtils.getPacketClass("com.zh.interpreter.ast.expression");
             for (Class<?> clazz : expressionClazz) {
-                methodMap.put((Class<? extends ASTNode>) clazz, Evaluator.class.getDeclaredMethod("evaluate", clazz, Environment.class));
+                methods.put((Class<? extends ASTNode>) clazz, Evaluator.class.getDeclaredMethod("evaluate", clazz, Environment.class));
             }
             List<Class<?>> literalClazz = ReflectUtils.getPacketClass("com.zh.interpreter.ast.expression.literal");
             for (Class<?> clazz : literalClazz) {
-                methodMap.put((Class<? extends ASTNode>) clazz, Evaluator.class.getDeclaredMethod("evaluate", clazz, Environment.class));
+                methods.put((Class<? extends ASTNode>) clazz, Evaluator.class.getDeclaredMethod("evaluate", clazz, Environment.class));
             }
             for (Class<?> clazz : ReflectUtils.getPacketClass("com.zh.interpreter.ast.statement")) {
-                methodMap.put((Class<? extends ASTNode>) clazz, Evaluator.class.getDeclaredMethod("evaluate", clazz, Environment.class));
+                methods.put((Class<? extends ASTNode>) clazz, Evaluator.class.getDeclaredMethod("evaluate", clazz, Environment.class));
             }
-            methodMap.put(Program.class, Evaluator.class.getDeclaredMethod("evaluate", Program.class, Environment.class));
+            methods.put(Program.class, Evaluator.class.getDeclaredMethod("evaluate", Program.class, Environment.class));
             // 初始化中缀表达式的操作方法
-            infixMethodMap.put(IntegerObject.class, Evaluator.class.getDeclaredMethod("evaluate", IntegerObject.class, IntegerObject.class, String.class));
-            infixMethodMap.put(BooleanObject.class, Evaluator.class.getDeclaredMethod("evaluate", BooleanObject.class, BooleanObject.class, String.class));
-            infixMethodMap.put(DoubleObject.class, Evaluator.class.getDeclaredMethod("evaluate", DoubleObject.class, DoubleObject.class, String.class));
-            infixMethodMap.put(StringObject.class, Evaluator.class.getDeclaredMethod("evaluate", StringObject.class, StringObject.class, String.class));
-            infixMethodMap.put(ArrayObject.class, Evaluator.class.getDeclaredMethod("evaluate", ArrayObject.class, ArrayObject.class, String.class));
-            infixMethodMap.put(HashObject.class, Evaluator.class.getDeclaredMethod("evaluate", HashObject.class, HashObject.class, String.class));
+            infixMethods.put(IntegerObject.class, Evaluator.class.getDeclaredMethod("evaluate", IntegerObject.class, IntegerObject.class, String.class));
+            infixMethods.put(BooleanObject.class, Evaluator.class.getDeclaredMethod("evaluate", BooleanObject.class, BooleanObject.class, String.class));
+            infixMethods.put(DoubleObject.class, Evaluator.class.getDeclaredMethod("evaluate", DoubleObject.class, DoubleObject.class, String.class));
+            infixMethods.put(StringObject.class, Evaluator.class.getDeclaredMethod("evaluate", StringObject.class, StringObject.class, String.class));
+            infixMethods.put(ArrayObject.class, Evaluator.class.getDeclaredMethod("evaluate", ArrayObject.class, ArrayObject.class, String.class));
+            infixMethods.put(HashObject.class, Evaluator.class.getDeclaredMethod("evaluate", HashObject.class, HashObject.class, String.class));
         } catch (NoSuchMethodException e) {
             e.printStackTrace();
         }
+        // 初始化完成后只读,供所有执行线程共享
+        methodMap = Collections.unmodifiableMap(methods);
+        infixMethodMap = Collections.unmodifiableMap(infixMethods);
     }
 
     /**
@@ -90,16 +109,103 @@ public class Evaluator {
      * @return 最终返回值
      */
     private static Object evaluate(Program program, Environment environment) {
+        return evaluateProgram(program, environment, true);
+    }
+
+    /**
+     * 执行已经完成宏展开的程序,执行过程不会修改程序的AST,因此同一个程序可以被多个线程同时执行
+     *
+     * @param program     完成宏展开的程序
+     * @param environment 程序使用的环境
+     * @return 最终返回值
+     */
+    public static Object evaluateExpanded(Program program, Environment environment) {
+        return evaluateProgram(program, environment, false);
+    }
+
+    /**
+     * 执行程序并记录执行指标
+     *
+     * @param program     程序
+     * @param environment 程序使用的环境
+     * @param expand      是否需要先进行宏展开
+     * @return 最终返回值
+     */
+    private static Object evaluateProgram(Program program, Environment environment, boolean expand) {
+        long startTime = InterpreterMetrics.executionStarted();
+        Object result = NullObject.getInstance();
+        try {
+            if (expand) {
+                program = expandMacros(program, environment);
+            }
+            result = evaluateStatements(program, environment);
+            // 块语句不会因错误提前结束,中止执行后仍以中止的错误作为结果
+            ErrorObject aborted = ExecutionContext.aborted();
+            if (aborted != null) {
+                result = aborted;
+            }
+            return result;
+        } finally {
+            boolean error = ObjectUtils.isError(result);
+            InterpreterMetrics.executionFinished(startTime, error);
+            if (error && Tracer.isDumpOnError()) {
+                Tracer.dump(System.err, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * 对程序进行宏展开,宏定义会从程序中移除并保存到环境中
+     *
+     * @param program     程序
+     * @param environment 宏定义使用的环境
+     * @return 展开后的程序
+     */
+    public static Program expandMacros(Program program, Environment environment) {
+        Events.MacroExpansionHandle event = Events.macroExpansion();
         // 对宏进行预处理
-        preconditionMacro(program, environment);
+        int definitionCount = preconditionMacro(program, environment);
         // 预处理完毕进行宏展开
-        program = (Program) expandMacro(program, environment);
+        int[] expansionCount = new int[1];
+        program = (Program) expandMacro(program, environment, expansionCount);
+        if (event.shouldCommit()) {
+            event.record(definitionCount, expansionCount[0]);
+        }
+        return program;
+    }
+
+    /**
+     * 执行已经完成宏展开的模块,与evaluateExpanded不同,模块的执行属于导入者的执行,不单独记录执行指标
+     *
+     * @param program     完成宏展开的模块
+     * @param environment 模块的全局环境
+     * @return 最终返回值
+     */
+    static Object evaluateModule(Program program, Environment environment) {
+        Object result = evaluateStatements(program, environment);
+        ErrorObject aborted = ExecutionContext.aborted();
+        return aborted != null ? aborted : result;
+    }
+
+    /**
+     * 逐条执行程序的语句
+     *
+     * @param program     程序
+     * @param environment 程序使用的环境
+     * @return 最终返回值
+     */
+    private static Object evaluateStatements(Program program, Environment environment) {
         Object result = NullObject.getInstance();
         for (Statement statement : program.statements) {
             result = evaluate(statement, environment);
             if (result.getType() == ObjectType.RETURN_OBJECT || result.getType() == ObjectType.ERROR_OBJECT) {
                 break;
             }
+            // 执行被中止或取消后不再执行之后的语句
+            ErrorObject aborted = ExecutionContext.aborted();
+            if (aborted != null) {
+                return aborted;
+            }
         }
         return result;
     }
@@ -128,6 +234,11 @@ public class Evaluator {
                 // 如果为ReturnObject则提前结束
                 break;
             }
+            // 块语句不会因普通的错误提前结束,但执行被中止或取消后不再执行之后的语句
+            ErrorObject aborted = ExecutionContext.aborted();
+            if (aborted != null) {
+                return aborted;
+            }
         }
         return result;
     }
@@ -139,13 +250,25 @@ public class Evaluator {
      * @return 返回值
      */
     private static Object evaluate(LetStatement statement, Environment environment) {
-        // 解析let语句的右侧表达式
-        Object expression = evaluate(statement.expression, environment);
+        String name = statement.identifier.value;
+        // 解析let语句的右侧表达式,函数字面量需要知道自身的名称以支持递归
+        Object expression = statement.expression instanceof FunctionLiteral ?
+                createFunction((FunctionLiteral) statement.expression, environment, name) :
+                evaluate(statement.expression, environment);
         if (ObjectUtils.isError(expression)) {
             return expression;
         }
         // 将数据存放到环境中
-        environment.setObject(statement.identifier.value, expression);
+        environment.setObject(name, expression);
+        // 只捕获了部分变量的递归函数,需要在自身的闭包环境中补充绑定
+        if (expression.getType() == ObjectType.FUNCTION_OBJECT) {
+            FunctionObject functionObject = (FunctionObject) expression;
+            if (functionObject.environment.scope == FunctionScope.CLOSURE
+                    && functionObject.scope.freeVariables.contains(name)
+                    && functionObject.environment.getLocalObject(name) == null) {
+                functionObject.environment.setObject(name, functionObject);
+            }
+        }
         return NullObject.getInstance();
     }
 
@@ -186,7 +309,8 @@ public class Evaluator {
                 if (returnObject == NullObject.getInstance()) {
                     returnObject = new ErrorObject(String.format("can't convert %s to integer", type));
                 } else if (expression.operator.equals("-")) {
-                    ((IntegerObject) returnObject).value = -((IntegerObject) returnObject).value;
+                    // convert在类型相同时返回原对象,取负需要创建新对象,不能修改操作数
+                    returnObject = new IntegerObject(-((IntegerObject) returnObject).value);
                 }
                 break;
             }
@@ -262,6 +386,9 @@ public class Evaluator {
                         if (index.getType() != ObjectType.INTEGER_OBJECT) {
                             return new ErrorObject("expression [%s] not a number");
                         }
+                        if (ObjectUtils.isFrozen(element)) {
+                            return ObjectUtils.frozenError(element);
+                        }
                         int indexNumber = ((IntegerObject) index).value.intValue();
                         if (indexNumber >= ((ArrayObject) element).elements.size()) {
                             return new ErrorObject(String.format("the array's length is %d,but the index is %d,out of index",
@@ -275,8 +402,13 @@ public class Evaluator {
                         if (!(index instanceof Hashable)) {
                             return new ErrorObject(String.format("%s not support hash", index.getType()));
                         }
+                        if (ObjectUtils.isFrozen(element)) {
+                            return ObjectUtils.frozenError(element);
+                        }
                         // 设置数据
-                        ((HashObject) element).hashMap.put(index, rightObject);
+                        if (((HashObject) element).hashMap.put(index, rightObject) == null) {
+                            AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, 1);
+                        }
                         return NullObject.getInstance();
                     }
                     default:
@@ -291,6 +423,15 @@ public class Evaluator {
         if (ObjectUtils.isError(leftObject)) {
             return leftObject;
         }
+        // 复合赋值会原地修改左侧对象,已冻结的数字和字符串先复制一份再绑定到标识符上,已冻结的容器则不允许修改
+        if (ObjectUtils.isFrozen(leftObject) && EqualUtils.equalsIn(expression.operator, "+=", "-=", "*=", "/=", "%=")) {
+            if (expression.leftExpression.token.type != TokenType.IDENTIFIER
+                    || !EqualUtils.equalsIn(leftObject.getType(), ObjectType.INTEGER_OBJECT, ObjectType.DOUBLE_OBJECT, ObjectType.STRING_OBJECT)) {
+                return ObjectUtils.frozenError(leftObject);
+            }
+            leftObject = ((Cloneable) leftObject).cloneObject();
+            environment.setObject(expression.leftExpression.tokenLiteral(), leftObject);
+        }
         // 判断操作符是否为比较操作符
         if (EqualUtils.equalsIn(expression.operator, "&&", "||")) {
             // 将其转换为BooleanObject
@@ -334,6 +475,10 @@ public class Evaluator {
             }
             return quote(callExpression.arguments.get(0), environment);
         }
+        // 判断是否为import
+        if (Objects.equals(callExpression.function.tokenLiteral(), "import")) {
+            return importModule(callExpression.arguments, environment);
+        }
         // 获取function函数
         Object functionObject = evaluate(callExpression.function, environment);
         // 判断是否为异常
@@ -354,7 +499,7 @@ public class Evaluator {
             }
             arguments.add(evaluate);
         }
-        return callFunction(functionObject, environment, arguments);
+        return callFunction(functionObject, callExpression.function.tokenLiteral(), environment, arguments);
     }
 
     /**
@@ -397,7 +542,7 @@ public class Evaluator {
             }
             arguments.add(evaluate);
         }
-        return callFunction(function, environment, arguments);
+        return callFunction(function, dotExpression.function.value, environment, arguments);
     }
 
     /**
@@ -463,8 +608,16 @@ public class Evaluator {
         while (!(Objects.equals(condition, BooleanObject.getInstance(false)) ||
                 Objects.equals(condition, NullObject.getInstance()))) {
             result = evaluate(expression.blockStatement, environment);
+            // 每次迭代检查执行配额,超出时中止循环
+            ErrorObject error = ExecutionContext.checkpoint();
+            if (error != null) {
+                return error;
+            }
             // 重算条件
             condition = evaluate(expression.condition, environment);
+            if (ObjectUtils.isError(condition)) {
+                return condition;
+            }
         }
         return result;
     }
@@ -650,6 +803,7 @@ public class Evaluator {
             // 否则则加入对象中
             arrayObject.elements.add(elementObject);
         }
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, arrayObject.elements.size());
         return arrayObject;
     }
 
@@ -679,6 +833,7 @@ public class Evaluator {
             // 存储到hashObject对象中
             hashObject.hashMap.put(key, value);
         }
+        AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, hashObject.hashMap.size());
         return hashObject;
     }
 
@@ -703,13 +858,77 @@ public class Evaluator {
      * @return 函数对象
      */
     private static Object evaluate(FunctionLiteral functionLiteral, Environment environment) {
+        return createFunction(functionLiteral, environment, null);
+    }
+
+    /**
+     * 创建函数对象
+     *
+     * @param functionLiteral 函数字面量
+     * @param environment     定义处的环境
+     * @param selfName        let绑定的函数名称,由调用者在绑定后补充到闭包环境中
+     * @return 函数对象
+     */
+    private static FunctionObject createFunction(FunctionLiteral functionLiteral, Environment environment, String selfName) {
         FunctionObject functionObject = new FunctionObject();
         functionObject.statement = functionLiteral.statement;
         functionObject.parameters = functionLiteral.parameters;
-        functionObject.environment = environment;
+        functionObject.scope = ScopeAnalyzer.analyze(functionLiteral);
+        functionObject.environment = fullCapture ? environment :
+                captureEnvironment(functionObject.scope, environment, selfName);
         return functionObject;
     }
 
+    /**
+     * 计算闭包的环境:函数调用产生的局部环境中只复制函数体引用到的变量,全局环境直接作为外层环境;
+     * 无法确定被捕获的绑定之后不会被替换时,捕获整个环境
+     *
+     * @param scope       函数体的作用域分析结果
+     * @param environment 定义处的环境
+     * @param selfName    let绑定的函数名称,可为null
+     * @return 闭包环境
+     */
+    private static Environment captureEnvironment(FunctionScope scope, Environment environment, String selfName) {
+        // 找到最近的非局部环境
+        Environment link = environment;
+        while (link.scope != null) {
+            link = link.outerEnvironment;
+        }
+        if (link == environment || !scope.capturable) {
+            return environment;
+        }
+        Environment closure = new Environment(link);
+        closure.scope = FunctionScope.CLOSURE;
+        for (String name : scope.freeVariables) {
+            if (Objects.equals(name, selfName)) {
+                if (environment.scope.mutatedVariables.contains(name)) {
+                    return environment;
+                }
+                continue;
+            }
+            Object value = null;
+            for (Environment frame = environment; frame != link; frame = frame.outerEnvironment) {
+                value = frame.getLocalObject(name);
+                if (value != null) {
+                    // 绑定可能被重新赋值,或者布尔值参与运算后被替换
+                    if (frame.scope.mutatedVariables.contains(name) || (value.getType() == ObjectType.BOOLEAN_OBJECT
+                            && frame.scope.comparedVariables.contains(name))) {
+                        return environment;
+                    }
+                    break;
+                }
+                // 变量在闭包创建之后才声明
+                if (frame.scope.declaredVariables.contains(name) || frame.scope.mutatedVariables.contains(name)) {
+                    return environment;
+                }
+            }
+            if (value != null) {
+                closure.setObject(name, value);
+            }
+        }
+        return closure;
+    }
+
     /**
      * 解析宏函数字面量
      *
@@ -734,43 +953,125 @@ public class Evaluator {
     public static Object evaluate(ASTNode node, Environment environment) {
         Class<? extends ASTNode> clazz = node.getClass();
         Method method = methodMap.get(clazz);
-        if (method != null) {
+        if (method == null) {
+            return NullObject.getInstance();
+        }
+        if (!AllocationProfiler.isEnabled()) {
             return (Object) ReflectUtils.invokeMethod(Evaluator.class, method, node, environment);
         }
-        return NullObject.getInstance();
+        // 开启内存分析时,记录当前正在求值的节点作为分配点
+        ASTNode previous = AllocationProfiler.enterNode(node);
+        try {
+            return (Object) ReflectUtils.invokeMethod(Evaluator.class, method, node, environment);
+        } finally {
+            AllocationProfiler.exitNode(previous);
+        }
+    }
+
+    /**
+     * 在求值器外部调用函数对象,供嵌入方直接调用脚本中定义的函数
+     *
+     * @param function  函数对象或内置函数对象
+     * @param name      函数名,用于轨迹及事件记录
+     * @param arguments 函数参数
+     * @return 返回值
+     */
+    public static Object applyFunction(Object function, String name, List<Object> arguments) {
+        if (function == null || !ObjectUtils.isFunction(function)) {
+            return new ErrorObject(String.format("%s is not a function,it's real type is %s",
+                    name, function == null ? null : function.getType()));
+        }
+        if (function.getType() == ObjectType.FUNCTION_OBJECT
+                && arguments.size() < ((FunctionObject) function).parameters.size()) {
+            return new ErrorObject(String.format("the function {%s} get wrong number of arguments,want %d argument but real get %d",
+                    name, ((FunctionObject) function).parameters.size(), arguments.size()));
+        }
+        return callFunction(function, name, null, arguments);
+    }
+
+    /**
+     * 获取当前线程的monkey函数调用深度
+     *
+     * @return 调用深度
+     */
+    public static int getCallDepth() {
+        return callDepth.get()[0];
+    }
+
+    /**
+     * 设置当前线程的monkey函数调用深度,在其它线程中代替调用方执行函数时使用,使调用深度的限制跨线程生效
+     *
+     * @param depth 调用深度
+     * @return 设置前的调用深度,执行完毕后需要恢复
+     */
+    public static int setCallDepth(int depth) {
+        int[] current = callDepth.get();
+        int previous = current[0];
+        current[0] = depth;
+        return previous;
     }
 
     /**
      * 函数调用
      *
      * @param functionObject 函数对象
+     * @param name           调用处的函数名
      * @param environment    环境
      * @param arguments      函数参数
      * @return 返回值
      */
-    private static Object callFunction(Object functionObject, Environment environment, List<Object> arguments) {
+    private static Object callFunction(Object functionObject, String name, Environment environment, List<Object> arguments) {
         switch (functionObject.getType()) {
             case FUNCTION_OBJECT: {
-                // 扩展环境,将函数标识符和对应的数据进行环境设置
-                Environment extendEnvironment = new Environment(((FunctionObject) functionObject).environment);
-                List<Identifier> parameters = ((FunctionObject) functionObject).parameters;
-                for (int i = 0; i < parameters.size(); i++) {
-                    extendEnvironment.setObject(parameters.get(i).value, arguments.get(i));
-                }
-                // 调用函数
-                Object result = evaluate(((FunctionObject) functionObject).statement, extendEnvironment);
-                if (result.getType() == ObjectType.RETURN_OBJECT) {
-                    result = ((ReturnObject) result).value;
+                int[] depth = callDepth.get();
+                Events.FunctionCallHandle event = Events.functionCall();
+                depth[0]++;
+                Tracer.enter(name, depth[0]);
+                try {
+                    // 检查执行配额及调用深度
+                    ErrorObject error = ExecutionContext.checkCall(depth[0]);
+                    if (error != null) {
+                        return error;
+                    }
+                    // 扩展环境,将函数标识符和对应的数据进行环境设置
+                    Environment extendEnvironment = new Environment(((FunctionObject) functionObject).environment);
+                    extendEnvironment.scope = ((FunctionObject) functionObject).scope;
+                    List<Identifier> parameters = ((FunctionObject) functionObject).parameters;
+                    for (int i = 0; i < parameters.size(); i++) {
+                        extendEnvironment.setObject(parameters.get(i).value, arguments.get(i));
+                    }
+                    // 调用函数
+                    Object result = evaluate(((FunctionObject) functionObject).statement, extendEnvironment);
+                    if (result.getType() == ObjectType.RETURN_OBJECT) {
+                        result = ((ReturnObject) result).value;
+                    }
+                    return result;
+                } finally {
+                    // 记录超过阈值的慢调用
+                    if (event.shouldCommit()) {
+                        event.record(name, depth[0]);
+                    }
+                    Tracer.exit(name, depth[0]);
+                    depth[0]--;
                 }
-                return result;
             }
             case BUILT_IN_FUNCTION_OBJECT: {
+                // 执行被中止或取消后不再调用有副作用的内置函数
+                ErrorObject aborted = ExecutionContext.aborted();
+                if (aborted != null) {
+                    return aborted;
+                }
+                Method method = ((BuiltInFunctionObject) functionObject).method;
+                Events.BuiltInCallHandle event = Events.builtInCall();
                 // 直接调用内置函数
                 // 反射时需要将java.lang.Object[]数组转换为com.zh.interpreter.object.Object数组
                 // 然后将com.zh.interpreter.object.Object数组强转为java.lang.Object以确保编译器找到对应方法
-                return (Object) ReflectUtils.invokeMethod(BuiltInEnvironment.class,
-                        ((BuiltInFunctionObject) functionObject).method,
+                Object result = (Object) ReflectUtils.invokeMethod(BuiltInEnvironment.class, method,
                         (java.lang.Object) arguments.toArray(new Object[0]));
+                if (event.shouldCommit()) {
+                    event.record(method.getName(), arguments.size());
+                }
+                return result;
             }
         }
         return new ErrorObject("call function error");
@@ -794,6 +1095,10 @@ public class Evaluator {
                 ((IntegerObject) result).value = leftObject.value + rightObject.value;
                 break;
             case "+=":
+                if (leftObject.isFrozen()) {
+                    result = ObjectUtils.frozenError(leftObject);
+                    break;
+                }
                 leftObject.value += rightObject.value;
                 result = leftObject;
                 break;
@@ -802,6 +1107,10 @@ public class Evaluator {
                 ((IntegerObject) result).value = leftObject.value - rightObject.value;
                 break;
             case "-=":
+                if (leftObject.isFrozen()) {
+                    result = ObjectUtils.frozenError(leftObject);
+                    break;
+                }
                 leftObject.value -= rightObject.value;
                 result = leftObject;
                 break;
@@ -971,6 +1280,10 @@ public class Evaluator {
                 ((DoubleObject) result).value = leftObject.value + rightObject.value;
                 break;
             case "+=":
+                if (leftObject.isFrozen()) {
+                    result = ObjectUtils.frozenError(leftObject);
+                    break;
+                }
                 result = leftObject;
                 leftObject.value += rightObject.value;
                 break;
@@ -979,6 +1292,10 @@ public class Evaluator {
                 ((DoubleObject) result).value = leftObject.value - rightObject.value;
                 break;
             case "-=":
+                if (leftObject.isFrozen()) {
+                    result = ObjectUtils.frozenError(leftObject);
+                    break;
+                }
                 result = leftObject;
                 leftObject.value -= rightObject.value;
                 break;
@@ -1061,16 +1378,26 @@ public class Evaluator {
             case "+":
                 result = new StringObject();
                 ((StringObject) result).value = leftObject.value + rightObject.value;
+                ExecutionContext.recordAllocation(2L * ((StringObject) result).value.length());
                 break;
             case "-":
                 result = new StringObject();
                 ((StringObject) result).value = leftObject.value.replace(rightObject.value, "");
                 break;
             case "+=":
+                if (leftObject.isFrozen()) {
+                    result = ObjectUtils.frozenError(leftObject);
+                    break;
+                }
                 result = leftObject;
                 leftObject.value += rightObject.value;
+                ExecutionContext.recordAllocation(2L * leftObject.value.length());
                 break;
             case "-=":
+                if (leftObject.isFrozen()) {
+                    result = ObjectUtils.frozenError(leftObject);
+                    break;
+                }
                 result = leftObject;
                 leftObject.value = leftObject.value.replace(rightObject.value, "");
                 break;
@@ -1101,26 +1428,26 @@ public class Evaluator {
         Object result;
         switch (operator) {
             case "+":
-                result = new ArrayObject();
+                result = leftObject.newEmpty();
                 ((ArrayObject) result).elements.addAll(leftObject.elements);
                 ((ArrayObject) result).elements.addAll(rightObject.elements);
+                AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, ((ArrayObject) result).elements.size());
                 break;
             case "-":
-                result = new ArrayObject();
+                result = leftObject.newEmpty();
                 ((ArrayObject) result).elements.addAll(leftObject.elements.stream()
                         .filter(element -> !rightObject.elements.contains(element))
                         .collect(Collectors.toList()));
+                AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, ((ArrayObject) result).elements.size());
                 break;
             case "+=":
                 result = leftObject;
                 leftObject.elements.addAll(rightObject.elements);
+                AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, rightObject.elements.size());
                 break;
             case "-=":
-                List<Object> elements = leftObject.elements.stream()
-                        .filter(element -> !rightObject.elements.contains(element))
-                        .collect(Collectors.toList());
-                leftObject.elements.clear();
-                leftObject.elements.addAll(elements);
+                // removeIf对并发数组是原子操作
+                leftObject.elements.removeIf(element -> rightObject.elements.contains(element));
                 result = leftObject;
                 break;
             case ">":
@@ -1159,29 +1486,31 @@ public class Evaluator {
         Object result;
         switch (operator) {
             case "+":
-                result = new HashObject();
+                result = leftObject.newEmpty();
                 ((HashObject) result).hashMap.putAll(leftObject.hashMap);
                 ((HashObject) result).hashMap.putAll(rightObject.hashMap);
+                AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, ((HashObject) result).hashMap.size());
                 break;
             case "-":
-                result = new HashObject();
+                result = leftObject.newEmpty();
                 leftObject.hashMap.forEach((k, v) -> {
                     if (!rightObject.hashMap.containsKey(k) || !Objects.equals(rightObject.hashMap.get(k), v)) {
                         ((HashObject) result).hashMap.put(k, v);
                     }
                 });
+                AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, ((HashObject) result).hashMap.size());
                 break;
-            case "+=":
+            case "+=": {
                 result = leftObject;
+                int size = leftObject.hashMap.size();
                 ((HashObject) result).hashMap.putAll(rightObject.hashMap);
+                AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, leftObject.hashMap.size() - size);
                 break;
+            }
             case "-=":
                 result = leftObject;
-                rightObject.hashMap.forEach((k, v) -> {
-                    if (leftObject.hashMap.containsKey(k) && Objects.equals(v, leftObject.hashMap.get(k))) {
-                        leftObject.hashMap.remove(k);
-                    }
-                });
+                // 只移除键值都相同的数据,remove(key,value)对并发哈希是原子操作
+                rightObject.hashMap.forEach(leftObject.hashMap::remove);
                 break;
             case ">":
                 result = BooleanObject.getInstance(leftObject.hashMap.size() > rightObject.hashMap.size());
@@ -1212,8 +1541,9 @@ public class Evaluator {
      *
      * @param program     要处理的程序节点
      * @param environment 程序所处环境
+     * @return 宏定义的个数
      */
-    private static void preconditionMacro(Program program, Environment environment) {
+    private static int preconditionMacro(Program program, Environment environment) {
         List<Integer> positionList = new ArrayList<>();
         for (int i = 0; i < program.statements.size(); i++) {
             // 判断当前语句是否为宏定义语句,是则添加到环境中并将对应语句位置进行记录
@@ -1226,6 +1556,7 @@ public class Evaluator {
         for (int i = positionList.size() - 1; i >= 0; i--) {
             program.statements.remove((int) positionList.get(i));
         }
+        return positionList.size();
     }
 
     /**
@@ -1284,10 +1615,11 @@ public class Evaluator {
     /**
      * 展开宏,这意味着将对node重新求值
      *
-     * @param node        节点
-     * @param environment 环境
+     * @param node           节点
+     * @param environment    环境
+     * @param expansionCount 宏展开次数的计数器
      */
-    private static ASTNode expandMacro(ASTNode node, Environment environment) {
+    private static ASTNode expandMacro(ASTNode node, Environment environment, int[] expansionCount) {
         return Modify.modify(node, astNode -> {
             // 判断是否为CallExpression
             if (astNode instanceof CallExpression) {
@@ -1308,6 +1640,7 @@ public class Evaluator {
                 if (quote.getType() != ObjectType.QUOTE_OBJECT) {
                     throw new RuntimeException("we only support returning AST-nodes from macros");
                 }
+                expansionCount[0]++;
                 return ((QuoteObject) quote).node;
             }
             // 判断是否为DotExpression
@@ -1329,6 +1662,7 @@ public class Evaluator {
                 if (quote.getType() != ObjectType.QUOTE_OBJECT) {
                     throw new RuntimeException("we only support returning AST-nodes from macros");
                 }
+                expansionCount[0]++;
                 return ((QuoteObject) quote).node;
             }
             return astNode;
@@ -1386,6 +1720,34 @@ public class Evaluator {
         return environment;
     }
 
+    /**
+     * import函数,加载模块并将其导出的绑定定义到当前环境中
+     *
+     * @param arguments   参数,只有模块路径一个
+     * @param environment 当前环境
+     * @return 冻结的导出哈希
+     */
+    private static Object importModule(List<Expression> arguments, Environment environment) {
+        if (arguments.size() != 1) {
+            return new ErrorObject(String.format("the function [import] need 1 argument,but get %d", arguments.size()));
+        }
+        Object path = evaluate(arguments.get(0), environment);
+        if (ObjectUtils.isError(path)) {
+            return path;
+        }
+        if (path.getType() != ObjectType.STRING_OBJECT) {
+            return new ErrorObject(String.format("the module path must be a string,but get %s", path.getType()));
+        }
+        Object exports = ModuleLoader.load(((StringObject) path).value);
+        if (ObjectUtils.isError(exports)) {
+            return exports;
+        }
+        for (Map.Entry<Object, Object> entry : ((HashObject) exports).hashMap.entrySet()) {
+            environment.setObject(((StringObject) entry.getKey()).value, entry.getValue());
+        }
+        return exports;
+    }
+
     /**
      * quote宏函数,不对AST节点进行求值,而是将其封装为QuoteObject并返回
      *
@@ -1394,7 +1756,8 @@ public class Evaluator {
      * @return QuoteObject
      */
     private static Object quote(ASTNode node, Environment environment) {
-        return new QuoteObject(evaluateUnquote(node, environment));
+        // unquote的替换作用在副本上,避免修改程序本身的AST
+        return new QuoteObject(evaluateUnquote(node.clone(), environment));
     }
 
     /**
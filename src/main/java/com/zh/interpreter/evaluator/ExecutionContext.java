@@ -0,0 +1,407 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.object.tools.ErrorObject;
+import com.zh.interpreter.utils.SizeUtils;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单次程序执行的上下文,保存执行期间内置函数使用的输出流、资源配额的使用情况以及取消令牌<br/>
+ * 上下文绑定在执行线程上,同一jvm中并发执行的程序互不影响;线程未设置上下文时使用System.out且不做限制<br/>
+ * 超出配额或被取消后执行被中止,之后每次检查都返回同一个错误,直到程序结束
+ */
+public class ExecutionContext {
+    private static final ThreadLocal<ExecutionContext> current = new ThreadLocal<>();
+
+    /**
+     * 每隔多少步检查一次是否超时
+     */
+    private static final long DEADLINE_CHECK_MASK = 0xFF;
+
+    /**
+     * 时间片长度,通过系统属性monkey.timeSlice(毫秒)指定,为0时不主动让出线程
+     */
+    private static final long timeSliceNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("monkey.timeSlice", 0));
+
+    /**
+     * 当前线程时间片的开始时刻
+     */
+    private static final ThreadLocal<long[]> sliceStart = ThreadLocal.withInitial(() -> new long[]{System.nanoTime()});
+
+    /**
+     * 是否存在限制分配字节数的上下文,没有时分配对象无需查询当前上下文
+     */
+    private static volatile boolean allocationLimited;
+
+    /**
+     * 输出流,为null时使用System.out
+     */
+    private final PrintStream out;
+
+    /**
+     * 资源配额
+     */
+    private final ExecutionLimits limits;
+
+    /**
+     * 取消令牌
+     */
+    private final CancellationToken token;
+
+    /**
+     * 是否需要计步,没有配额且不分时间片时只检查中止及取消
+     */
+    private final boolean counting;
+
+    /**
+     * 已执行的步数,并行任务共享同一上下文,因此使用原子变量
+     */
+    private final AtomicLong steps = new AtomicLong();
+
+    /**
+     * 已分配的字节数
+     */
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /**
+     * 截止时刻,System.nanoTime()的值
+     */
+    private final long deadline;
+
+    /**
+     * 是否正在中止,避免创建错误对象时的分配再次触发中止
+     */
+    private final AtomicBoolean aborting = new AtomicBoolean();
+
+    /**
+     * 中止执行的错误
+     */
+    private volatile ErrorObject aborted;
+
+    /**
+     * 脚本所在的目录,脚本中以相对路径导入的模块相对于该目录;为null时相对于当前工作目录
+     */
+    private volatile File directory;
+
+    public ExecutionContext(PrintStream out) {
+        this(out, ExecutionLimits.DEFAULT);
+    }
+
+    /**
+     * @param out    输出流,为null时使用System.out
+     * @param limits 资源配额,从创建时开始计时
+     */
+    public ExecutionContext(PrintStream out, ExecutionLimits limits) {
+        this(out, limits, null);
+    }
+
+    /**
+     * @param out    输出流,为null时使用System.out
+     * @param limits 资源配额,从创建时开始计时
+     * @param token  取消令牌,为null时创建新的令牌
+     */
+    public ExecutionContext(PrintStream out, ExecutionLimits limits, CancellationToken token) {
+        this.out = out;
+        this.limits = limits == null ? ExecutionLimits.UNLIMITED : limits;
+        this.token = token == null ? new CancellationToken() : token;
+        this.counting = !this.limits.isUnlimited() || timeSliceNanos > 0;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.limits.getTimeoutMillis());
+        if (this.limits.getMaxBytes() > 0 && !allocationLimited) {
+            allocationLimited = true;
+            Object.updateAllocationHooks();
+        }
+    }
+
+    public ExecutionLimits getLimits() {
+        return limits;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return token;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 设置脚本所在的目录,执行从文件读取的脚本时在执行前设置
+     *
+     * @param directory 目录,为null时相对于当前工作目录
+     * @return 本上下文
+     */
+    public ExecutionContext setDirectory(File directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /**
+     * 获取中止执行的错误
+     *
+     * @return 错误对象,未中止时返回null
+     */
+    public ErrorObject getAborted() {
+        return aborted;
+    }
+
+    /**
+     * 计1步并检查取消、步数及执行时间,时间片用完时让出线程
+     *
+     * @return 被取消或超出配额时返回错误,否则返回null
+     */
+    private ErrorObject step() {
+        ErrorObject error = poll(false);
+        if (error != null || !counting) {
+            return error;
+        }
+        long count = steps.incrementAndGet();
+        if (limits.getMaxSteps() > 0 && count > limits.getMaxSteps()) {
+            return abort(String.format("execution aborted: step limit of %d exceeded", limits.getMaxSteps()));
+        }
+        if ((count & DEADLINE_CHECK_MASK) == 0) {
+            if (limits.getTimeoutMillis() > 0 && System.nanoTime() - deadline > 0) {
+                return timeout();
+            }
+            if (timeSliceNanos > 0) {
+                yieldIfSliceUsed();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 检查是否已中止或被取消
+     *
+     * @param checkDeadline 是否同时检查执行时间
+     * @return 中止执行的错误,未中止时返回null
+     */
+    private ErrorObject poll(boolean checkDeadline) {
+        if (aborted != null) {
+            return aborted;
+        }
+        if (token.isCancelled()) {
+            return abort("execution aborted: cancelled");
+        }
+        if (checkDeadline && limits.getTimeoutMillis() > 0 && System.nanoTime() - deadline > 0) {
+            return timeout();
+        }
+        return null;
+    }
+
+    private ErrorObject timeout() {
+        return abort(String.format("execution aborted: timeout of %dms exceeded", limits.getTimeoutMillis()));
+    }
+
+    /**
+     * 当前线程的时间片用完时让出线程,使共享少量线程的多个执行都能得到运行的机会;
+     * 在虚拟线程中会让出载体线程
+     */
+    private static void yieldIfSliceUsed() {
+        long[] start = sliceStart.get();
+        long now = System.nanoTime();
+        if (now - start[0] >= timeSliceNanos) {
+            Thread.yield();
+            start[0] = System.nanoTime();
+        }
+    }
+
+    /**
+     * 中止执行,只有第一次中止的原因会被记录
+     *
+     * @param message 错误信息
+     * @return 中止执行的错误,其它线程正在中止时可能为null
+     */
+    private ErrorObject abort(String message) {
+        if (aborting.compareAndSet(false, true)) {
+            aborted = new ErrorObject(message);
+        }
+        return aborted;
+    }
+
+    public PrintStream getOut() {
+        return out == null ? System.out : out;
+    }
+
+    /**
+     * 获取当前线程的执行上下文
+     *
+     * @return 执行上下文,未设置时返回null
+     */
+    public static ExecutionContext current() {
+        return current.get();
+    }
+
+    /**
+     * 获取当前执行使用的输出流
+     *
+     * @return 输出流
+     */
+    public static PrintStream out() {
+        ExecutionContext context = current.get();
+        return context == null ? System.out : context.getOut();
+    }
+
+    /**
+     * 将执行上下文绑定到当前线程
+     *
+     * @param context 执行上下文
+     * @return 之前的执行上下文,执行结束后需要交给exit恢复
+     */
+    public static ExecutionContext enter(ExecutionContext context) {
+        ExecutionContext previous = current.get();
+        current.set(context);
+        return previous;
+    }
+
+    /**
+     * 恢复之前的执行上下文
+     *
+     * @param previous enter返回的执行上下文
+     */
+    public static void exit(ExecutionContext previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * 循环的每次迭代时调用,计1步并检查配额
+     *
+     * @return 超出配额时返回错误,否则返回null
+     */
+    public static ErrorObject checkpoint() {
+        ExecutionContext context = current.get();
+        return context == null ? null : context.step();
+    }
+
+    /**
+     * 阻塞的内置函数在等待前后调用,检查是否已取消或超时,不计步数
+     *
+     * @return 被取消或超出配额时返回错误,否则返回null
+     */
+    public static ErrorObject poll() {
+        ExecutionContext context = current.get();
+        return context == null ? null : context.poll(true);
+    }
+
+    /**
+     * 阻塞的内置函数开始等待前调用,当前执行被取消时在取消线程中执行唤醒动作,使等待立即结束;
+     * 已经取消时立即在当前线程执行
+     *
+     * @param wakeup 唤醒等待线程的动作,如signalAll或unpark
+     */
+    public static void onCancel(Runnable wakeup) {
+        ExecutionContext context = current.get();
+        if (context != null) {
+            context.token.onCancel(wakeup);
+        }
+    }
+
+    /**
+     * 等待结束后注销onCancel注册的唤醒动作
+     *
+     * @param wakeup 注册时传入的唤醒动作
+     */
+    public static void removeOnCancel(Runnable wakeup) {
+        ExecutionContext context = current.get();
+        if (context != null) {
+            context.token.removeOnCancel(wakeup);
+        }
+    }
+
+    /**
+     * 获取当前执行到超时截止时刻的剩余时间,阻塞的内置函数最多等待这么久
+     *
+     * @return 剩余纳秒数,没有超时限制时为Long.MAX_VALUE
+     */
+    public static long remainingNanos() {
+        ExecutionContext context = current.get();
+        if (context == null || context.limits.getTimeoutMillis() == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, context.deadline - System.nanoTime());
+    }
+
+    /**
+     * 获取当前执行的脚本所在的目录
+     *
+     * @return 目录,没有上下文或未指定时返回null
+     */
+    public static File directory() {
+        ExecutionContext context = current.get();
+        return context == null ? null : context.directory;
+    }
+
+    /**
+     * 进入monkey函数时调用,计1步并检查配额及调用深度
+     *
+     * @param depth 进入后的调用深度
+     * @return 超出配额时返回错误,否则返回null
+     */
+    public static ErrorObject checkCall(int depth) {
+        ExecutionContext context = current.get();
+        if (context == null) {
+            return null;
+        }
+        if (context.limits.getMaxDepth() > 0 && depth > context.limits.getMaxDepth() && context.aborted == null) {
+            return context.abort(String.format("execution aborted: call depth limit of %d exceeded", context.limits.getMaxDepth()));
+        }
+        return context.step();
+    }
+
+    /**
+     * 记录分配的字节数,超出配额时中止执行,中止的错误在下一次检查时返回
+     *
+     * @param bytes 字节数
+     */
+    public static void recordAllocation(long bytes) {
+        if (!allocationLimited) {
+            return;
+        }
+        ExecutionContext context = current.get();
+        if (context == null || context.limits.getMaxBytes() == 0) {
+            return;
+        }
+        if (context.allocatedBytes.addAndGet(bytes) > context.limits.getMaxBytes() && context.aborted == null) {
+            context.abort(String.format("execution aborted: allocation limit of %d bytes exceeded", context.limits.getMaxBytes()));
+        }
+    }
+
+    /**
+     * 记录一个解释器对象的分配
+     *
+     * @param type 对象类型
+     */
+    public static void recordAllocation(ObjectType type) {
+        if (allocationLimited) {
+            recordAllocation(SizeUtils.shallowSize(type));
+        }
+    }
+
+    /**
+     * 是否存在限制分配字节数的上下文
+     *
+     * @return 是否存在
+     */
+    public static boolean isAllocationLimited() {
+        return allocationLimited;
+    }
+
+    /**
+     * 获取当前执行中止的错误,已被取消但尚未中止时立即中止;不检查执行时间,开销足够低,可在每条语句之后调用
+     *
+     * @return 错误对象,未中止或没有上下文时返回null
+     */
+    public static ErrorObject aborted() {
+        ExecutionContext context = current.get();
+        return context == null ? null : context.poll(false);
+    }
+}
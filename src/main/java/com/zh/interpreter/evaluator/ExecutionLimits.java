@@ -0,0 +1,78 @@
+package com.zh.interpreter.evaluator;
+
+/**
+ * 单次程序执行的资源配额,各项为0时表示不限制<br/>
+ * 步数在每次循环迭代和函数调用时计1步;分配字节数为解释器对象及数组、哈希、字符串增长的估算值
+ */
+public class ExecutionLimits {
+    /**
+     * 不做任何限制
+     */
+    public static final ExecutionLimits UNLIMITED = new ExecutionLimits(0, 0, 0, 0);
+
+    /**
+     * 通过系统属性monkey.limit.steps、monkey.limit.timeout(毫秒)、monkey.limit.bytes、monkey.limit.depth指定的默认配额
+     */
+    public static final ExecutionLimits DEFAULT = new ExecutionLimits(
+            Long.getLong("monkey.limit.steps", 0),
+            Long.getLong("monkey.limit.timeout", 0),
+            Long.getLong("monkey.limit.bytes", 0),
+            Integer.getInteger("monkey.limit.depth", 0));
+
+    /**
+     * 最大步数
+     */
+    private final long maxSteps;
+
+    /**
+     * 最长执行时间,毫秒
+     */
+    private final long timeoutMillis;
+
+    /**
+     * 最大分配字节数
+     */
+    private final long maxBytes;
+
+    /**
+     * 最大函数调用深度
+     */
+    private final int maxDepth;
+
+    public ExecutionLimits(long maxSteps, long timeoutMillis, long maxBytes, int maxDepth) {
+        this.maxSteps = Math.max(0, maxSteps);
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxDepth = Math.max(0, maxDepth);
+    }
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * 是否没有任何限制
+     *
+     * @return 是否不限制
+     */
+    public boolean isUnlimited() {
+        return maxSteps == 0 && timeoutMillis == 0 && maxBytes == 0 && maxDepth == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExecutionLimits(steps=%d,timeout=%dms,bytes=%d,depth=%d)", maxSteps, timeoutMillis, maxBytes, maxDepth);
+    }
+}
@@ -0,0 +1,329 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.ast.Program;
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.lexer.Lexer;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.HashObject;
+import com.zh.interpreter.object.struct.StringObject;
+import com.zh.interpreter.object.tools.ErrorObject;
+import com.zh.interpreter.parser.Parser;
+import com.zh.interpreter.utils.FileUtils;
+import com.zh.interpreter.utils.ObjectUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 模块加载器<br/>
+ * 每个模块文件在进程内只进行一次词法分析、语法分析、宏展开和执行,执行完成后模块的全局环境及其中的值被冻结,
+ * 由所有导入者共享;再次导入时先比较文件的修改时间和大小,二者变化时再比较内容的摘要,内容变化才重新加载。
+ * 模块导入的其它模块被重新加载时,该模块同样会被重新加载
+ */
+public abstract class ModuleLoader {
+    /**
+     * 按规范路径缓存的模块
+     */
+    private static final Map<String, Module> modules = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程正在加载的模块,用于解析相对路径及发现循环导入
+     */
+    private static final ThreadLocal<Deque<Module>> loading = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * 各线程正在等待获取锁的模块,与Module.loader一起构成等待图,用于发现跨线程的循环导入
+     */
+    private static final Map<Thread, Module> waiting = new HashMap<>();
+
+    /**
+     * 保护waiting及各模块的loader
+     */
+    private static final ReentrantLock graphLock = new ReentrantLock();
+
+    private ModuleLoader() {
+    }
+
+    /**
+     * 加载模块<br/>
+     * 相对路径在模块内导入时相对于该模块所在的目录,否则相对于当前执行的脚本所在的目录,
+     * 执行没有指定脚本目录时相对于当前工作目录
+     *
+     * @param path 模块文件路径
+     * @return 冻结的导出哈希,键为绑定名称;加载失败时返回ErrorObject
+     */
+    public static Object load(String path) {
+        Deque<Module> stack = loading.get();
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(stack.isEmpty() ? ExecutionContext.directory() : stack.peek().file.getParentFile(), path);
+        }
+        try {
+            file = file.getCanonicalFile();
+        } catch (IOException e) {
+            return new ErrorObject(String.format("can't import %s: %s", path, e.getMessage()));
+        }
+        Module module = modules.computeIfAbsent(file.getPath(), key -> new Module(new File(key)));
+        if (stack.contains(module)) {
+            return new ErrorObject(String.format("circular import of %s", file));
+        }
+        ErrorObject error = acquire(module);
+        if (error != null) {
+            return error;
+        }
+        Module importer = stack.peek();
+        stack.push(module);
+        Object exports;
+        try {
+            exports = module.get();
+        } finally {
+            stack.pop();
+            release(module);
+        }
+        // 记录模块之间的依赖,导入者在加载过程中才会记录
+        if (importer != null && importer.pending != null && !ObjectUtils.isError(exports)) {
+            importer.pending.put(module, (HashObject) exports);
+        }
+        return exports;
+    }
+
+    /**
+     * 获取模块的锁<br/>
+     * 加载模块及检查依赖是否过期时会在持有锁的情况下导入其它模块,修改后的模块可能与其它线程正在加载的模块构成循环;
+     * 等待前先沿等待图查找,持有者最终在等待当前线程持有的模块时说明存在循环导入,直接返回错误而不是死锁。
+     * 其它线程可能正在加载同一模块,最长等待到当前执行的截止时刻,被取消时由中断立即唤醒
+     *
+     * @param module 模块
+     * @return 获取失败时返回ErrorObject,否则返回null
+     */
+    private static ErrorObject acquire(Module module) {
+        Thread current = Thread.currentThread();
+        graphLock.lock();
+        try {
+            if (module.lock.tryLock()) {
+                module.loader = current;
+                return null;
+            }
+            Thread owner = module.loader;
+            // 图中不存在其它循环,步数不会超过等待的线程数
+            for (int i = 0; owner != null && i <= waiting.size(); i++) {
+                if (owner == current) {
+                    return new ErrorObject(String.format("circular import of %s", module.file));
+                }
+                Module next = waiting.get(owner);
+                owner = next == null ? null : next.loader;
+            }
+            waiting.put(current, module);
+        } finally {
+            graphLock.unlock();
+        }
+        boolean locked = false;
+        CancelInterrupter interrupter = CancelInterrupter.arm();
+        try {
+            long remaining = ExecutionContext.remainingNanos();
+            if (remaining == Long.MAX_VALUE) {
+                module.lock.lockInterruptibly();
+                locked = true;
+            } else {
+                locked = module.lock.tryLock(remaining, TimeUnit.NANOSECONDS);
+            }
+            if (!locked) {
+                ErrorObject aborted = ExecutionContext.poll();
+                return aborted != null ? aborted : new ErrorObject(String.format("import of %s timed out", module.file));
+            }
+            return null;
+        } catch (InterruptedException e) {
+            ErrorObject aborted = ExecutionContext.poll();
+            if (aborted != null) {
+                return aborted;
+            }
+            Thread.currentThread().interrupt();
+            return new ErrorObject(String.format("import of %s interrupted", module.file));
+        } finally {
+            interrupter.disarm();
+            graphLock.lock();
+            try {
+                waiting.remove(current);
+                if (locked) {
+                    module.loader = current;
+                }
+            } finally {
+                graphLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 释放acquire获取的模块锁
+     *
+     * @param module 模块
+     */
+    private static void release(Module module) {
+        graphLock.lock();
+        try {
+            module.loader = null;
+        } finally {
+            graphLock.unlock();
+        }
+        module.lock.unlock();
+    }
+
+    /**
+     * 获取当前缓存的模块数
+     *
+     * @return 缓存数量
+     */
+    public static int getCacheSize() {
+        return modules.size();
+    }
+
+    /**
+     * 清空模块缓存,之后的导入会重新加载模块
+     */
+    public static void clearCache() {
+        modules.clear();
+    }
+
+    /**
+     * 缓存的模块,除loader外的字段由lock保护
+     */
+    private static class Module {
+        private final File file;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * 持有lock的线程,由graphLock保护
+         */
+        private Thread loader;
+
+        /**
+         * 加载时文件的修改时间
+         */
+        private long lastModified;
+
+        /**
+         * 加载时文件的大小
+         */
+        private long length;
+
+        /**
+         * 加载时源码的SHA-256摘要
+         */
+        private String hash;
+
+        /**
+         * 冻结的导出哈希,尚未成功加载时为null
+         */
+        private HashObject exports;
+
+        /**
+         * 导入的模块及导入时得到的导出哈希
+         */
+        private Map<Module, HashObject> dependencies = new HashMap<>();
+
+        /**
+         * 加载过程中记录的依赖,加载成功后成为dependencies
+         */
+        private Map<Module, HashObject> pending;
+
+        private Module(File file) {
+            this.file = file;
+        }
+
+        /**
+         * 获取导出哈希,文件内容变化时重新加载
+         *
+         * @return 导出哈希或ErrorObject
+         */
+        private Object get() {
+            long lastModified = file.lastModified();
+            long length = file.length();
+            if (exports != null && lastModified == this.lastModified && length == this.length && !isStale()) {
+                return exports;
+            }
+            String source;
+            try {
+                source = FileUtils.readSource(file);
+            } catch (IOException e) {
+                return new ErrorObject(String.format("can't import %s: %s", file, e.getMessage()));
+            }
+            String hash = MonkeyEngine.hash(source);
+            if (exports == null || !hash.equals(this.hash) || isStale()) {
+                Object result = evaluate(source);
+                if (ObjectUtils.isError(result)) {
+                    return result;
+                }
+                this.exports = (HashObject) result;
+                this.hash = hash;
+            }
+            this.lastModified = lastModified;
+            this.length = length;
+            return exports;
+        }
+
+        /**
+         * 导入的模块是否已被重新加载
+         *
+         * @return 是否需要重新加载
+         */
+        private boolean isStale() {
+            for (Map.Entry<Module, HashObject> entry : dependencies.entrySet()) {
+                if (load(entry.getKey().file.getPath()) != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 编译并在独立的全局环境中执行模块,执行完成后冻结环境
+         *
+         * @param source 源码
+         * @return 导出哈希或ErrorObject
+         */
+        private Object evaluate(String source) {
+            Parser parser = new Parser(new Lexer(source));
+            Program program = parser.parse();
+            if (!parser.getErrors().isEmpty()) {
+                return new ErrorObject(String.format("can't import %s: %s", file, String.join("; ", parser.getErrors())));
+            }
+            // 宏定义只在模块内部展开,不会导出
+            program = Evaluator.expandMacros(program, new Environment(BuiltInEnvironment.getInstance()));
+            Environment environment = new Environment(BuiltInEnvironment.getInstance());
+            pending = new HashMap<>();
+            Object result;
+            try {
+                result = Evaluator.evaluateModule(program, environment);
+                if (ObjectUtils.isError(result)) {
+                    return result;
+                }
+                dependencies = pending;
+            } finally {
+                pending = null;
+            }
+            // 模块中的值由所有导入者共享,包括不导出的值
+            environment.freezeDeeply();
+            HashObject exports = new HashObject();
+            for (Map.Entry<String, Object> entry : environment.getStores().entrySet()) {
+                // 以下划线开头的绑定是模块私有的
+                if (!entry.getKey().startsWith("_")) {
+                    StringObject name = new StringObject();
+                    name.value = entry.getKey();
+                    exports.hashMap.put(name, entry.getValue());
+                }
+            }
+            exports.freeze();
+            return exports;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.ast.ASTNode;
+import com.zh.interpreter.ast.Expression;
+import com.zh.interpreter.ast.FunctionScope;
+import com.zh.interpreter.ast.Program;
+import com.zh.interpreter.ast.Statement;
+import com.zh.interpreter.ast.expression.*;
+import com.zh.interpreter.ast.expression.literal.*;
+import com.zh.interpreter.ast.statement.BlockStatement;
+import com.zh.interpreter.ast.statement.ExpressionStatement;
+import com.zh.interpreter.ast.statement.LetStatement;
+import com.zh.interpreter.ast.statement.ReturnStatement;
+import com.zh.interpreter.token.TokenType;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 函数字面量的作用域分析器,计算自由变量以及函数体内绑定的修改情况
+ */
+public class ScopeAnalyzer {
+    /**
+     * 引用到的标识符
+     */
+    private final Set<String> references = new HashSet<>();
+
+    /**
+     * let声明的标识符
+     */
+    private final Set<String> declared = new HashSet<>();
+
+    /**
+     * 绑定可能被替换的标识符
+     */
+    private final Set<String> mutated = new HashSet<>();
+
+    /**
+     * 作为中缀表达式左侧出现的标识符
+     */
+    private final Set<String> compared = new HashSet<>();
+
+    /**
+     * 是否可以静态分析
+     */
+    private boolean capturable = true;
+
+    /**
+     * 当前所处的while循环层数
+     */
+    private int loopDepth = 0;
+
+    private ScopeAnalyzer() {
+    }
+
+    /**
+     * 获取函数字面量的作用域分析结果,结果缓存在字面量上
+     *
+     * @param functionLiteral 函数字面量
+     * @return 作用域分析结果
+     */
+    public static FunctionScope analyze(FunctionLiteral functionLiteral) {
+        FunctionScope scope = functionLiteral.scope;
+        if (scope == null) {
+            scope = analyze(functionLiteral.parameters, functionLiteral.statement);
+            functionLiteral.scope = scope;
+        }
+        return scope;
+    }
+
+    /**
+     * 分析函数体
+     *
+     * @param parameters 参数列表
+     * @param body       函数体
+     * @return 作用域分析结果
+     */
+    private static FunctionScope analyze(Iterable<Identifier> parameters, BlockStatement body) {
+        ScopeAnalyzer analyzer = new ScopeAnalyzer();
+        analyzer.visit(body);
+        Set<String> freeVariables = new HashSet<>(analyzer.references);
+        for (Identifier parameter : parameters) {
+            freeVariables.remove(parameter.value);
+        }
+        return new FunctionScope(analyzer.capturable,
+                Collections.unmodifiableSet(freeVariables),
+                Collections.unmodifiableSet(analyzer.declared),
+                Collections.unmodifiableSet(analyzer.mutated),
+                Collections.unmodifiableSet(analyzer.compared));
+    }
+
+    /**
+     * 遍历节点,内部函数只贡献其自由变量,其声明及赋值发生在自身的调用环境中
+     *
+     * @param node AST节点
+     */
+    private void visit(ASTNode node) {
+        if (node == null) {
+            return;
+        }
+        if (node instanceof Identifier) {
+            references.add(((Identifier) node).value);
+        } else if (node instanceof BlockStatement) {
+            for (Statement statement : ((BlockStatement) node).statements) {
+                visit(statement);
+            }
+        } else if (node instanceof Program) {
+            for (Statement statement : ((Program) node).statements) {
+                visit(statement);
+            }
+        } else if (node instanceof ExpressionStatement) {
+            visit(((ExpressionStatement) node).expression);
+        } else if (node instanceof LetStatement) {
+            LetStatement statement = (LetStatement) node;
+            String name = statement.identifier.value;
+            // 重复声明或者循环内声明都会替换绑定
+            if (!declared.add(name) || loopDepth > 0) {
+                mutated.add(name);
+            }
+            visit(statement.expression);
+        } else if (node instanceof ReturnStatement) {
+            visit(((ReturnStatement) node).returnValue);
+        } else if (node instanceof PrefixExpression) {
+            visit(((PrefixExpression) node).rightExpression);
+        } else if (node instanceof InfixExpression) {
+            visitInfix((InfixExpression) node);
+        } else if (node instanceof CallExpression) {
+            CallExpression callExpression = (CallExpression) node;
+            if (Objects.equals(callExpression.function.tokenLiteral(), "quote")) {
+                capturable = false;
+                return;
+            }
+            visit(callExpression.function);
+            for (Expression argument : callExpression.arguments) {
+                visit(argument);
+            }
+        } else if (node instanceof DotExpression) {
+            DotExpression dotExpression = (DotExpression) node;
+            if (Objects.equals(dotExpression.function.tokenLiteral(), "quote")) {
+                capturable = false;
+                return;
+            }
+            visit(dotExpression.element);
+            visit(dotExpression.function);
+            for (Expression argument : dotExpression.arguments) {
+                visit(argument);
+            }
+        } else if (node instanceof IfExpression) {
+            IfExpression ifExpression = (IfExpression) node;
+            visit(ifExpression.condition);
+            visit(ifExpression.consequence);
+            visit(ifExpression.alternative);
+        } else if (node instanceof TernaryExpression) {
+            TernaryExpression ternaryExpression = (TernaryExpression) node;
+            visit(ternaryExpression.condition);
+            visit(ternaryExpression.consequence);
+            visit(ternaryExpression.alternative);
+        } else if (node instanceof WhileExpression) {
+            WhileExpression whileExpression = (WhileExpression) node;
+            loopDepth++;
+            visit(whileExpression.condition);
+            visit(whileExpression.blockStatement);
+            loopDepth--;
+        } else if (node instanceof IndexExpression) {
+            visit(((IndexExpression) node).expression);
+            visit(((IndexExpression) node).index);
+        } else if (node instanceof ArrayLiteral) {
+            for (Expression element : ((ArrayLiteral) node).elements) {
+                visit(element);
+            }
+        } else if (node instanceof HashLiteral) {
+            for (Map.Entry<Expression, Expression> entry : ((HashLiteral) node).hashMap.entrySet()) {
+                visit(entry.getKey());
+                visit(entry.getValue());
+            }
+        } else if (node instanceof FunctionLiteral) {
+            FunctionScope scope = analyze((FunctionLiteral) node);
+            references.addAll(scope.freeVariables);
+            capturable &= scope.capturable;
+        } else if (!(node instanceof IntegerLiteral || node instanceof DoubleLiteral || node instanceof StringLiteral
+                || node instanceof BooleanLiteral || node instanceof NullLiteral)) {
+            // 宏字面量以及未知节点无法静态分析
+            capturable = false;
+        }
+    }
+
+    /**
+     * 遍历中缀表达式,赋值的左侧标识符不算作引用
+     *
+     * @param expression 中缀表达式
+     */
+    private void visitInfix(InfixExpression expression) {
+        Expression left = expression.leftExpression;
+        if (Objects.equals(expression.operator, "=")) {
+            if (left.token.type == TokenType.IDENTIFIER) {
+                mutated.add(left.tokenLiteral());
+            } else {
+                // 对字符串的下标赋值会替换其绑定
+                if (left instanceof IndexExpression && ((IndexExpression) left).expression instanceof Identifier) {
+                    mutated.add(((Identifier) ((IndexExpression) left).expression).value);
+                }
+                visit(left);
+            }
+            visit(expression.rightExpression);
+            return;
+        }
+        if (left instanceof Identifier) {
+            String name = ((Identifier) left).value;
+            if (expression.operator.endsWith("=") && !isComparison(expression.operator)) {
+                mutated.add(name);
+            } else {
+                compared.add(name);
+            }
+        }
+        visit(left);
+        visit(expression.rightExpression);
+    }
+
+    /**
+     * 是否为比较运算符
+     *
+     * @param operator 运算符
+     * @return 是否为比较运算符
+     */
+    private static boolean isComparison(String operator) {
+        return "==".equals(operator) || "!=".equals(operator) || "<=".equals(operator) || ">=".equals(operator);
+    }
+}
@@ -0,0 +1,243 @@
+package com.zh.interpreter.io;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按行读取文件或标准输入<br/>
+ * 每次从通道读入一大块到缓冲区,再在字节中查找换行符并只把单行解码为UTF-8字符串,
+ * 内存占用与最长的一行有关,与文件大小无关;行尾的\n及\r\n都会被去掉
+ */
+public class LineReader implements Closeable {
+    /**
+     * 缓冲区的初始大小,遇到更长的行时按两倍扩大
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private static final ReentrantLock stdinLock = new ReentrantLock();
+
+    /**
+     * 进程共享的标准输入,避免多个读取者各自缓冲导致数据丢失
+     */
+    private static LineReader stdin;
+
+    /**
+     * 标准输入是否已被其它用途(如worker进程的协议)占用
+     */
+    private static volatile boolean stdinDetached;
+
+    private final String name;
+
+    private final ReadableByteChannel channel;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 读模式的缓冲区,position到limit为未读取的内容
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * 通道是否已读完
+     */
+    private boolean eof;
+
+    private boolean closed;
+
+    /**
+     * 已读取的行数
+     */
+    private long lineNumber;
+
+    private LineReader(String name, ReadableByteChannel channel, int bufferSize) {
+        this.name = name;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        ((Buffer) this.buffer).flip();
+    }
+
+    /**
+     * 打开文件
+     *
+     * @param path 文件
+     * @return 按行读取的reader
+     * @throws IOException 打开失败
+     */
+    public static LineReader open(Path path) throws IOException {
+        return new LineReader(path.toString(), FileChannel.open(path, StandardOpenOption.READ), BUFFER_SIZE);
+    }
+
+    /**
+     * 获取进程共享的标准输入
+     *
+     * @return 按行读取的reader
+     * @throws IOException 标准输入已被占用
+     */
+    public static LineReader stdin() throws IOException {
+        if (stdinDetached) {
+            throw new IOException("the standard input is not available");
+        }
+        stdinLock.lock();
+        try {
+            if (stdin == null) {
+                stdin = new LineReader("<stdin>", new InputChannel(new FileInputStream(FileDescriptor.in)), BUFFER_SIZE);
+            }
+            return stdin;
+        } finally {
+            stdinLock.unlock();
+        }
+    }
+
+    /**
+     * 标记标准输入已被占用,之后脚本无法再读取标准输入
+     */
+    public static void detachStdin() {
+        stdinDetached = true;
+    }
+
+    /**
+     * 读取下一行
+     *
+     * @return 不含换行符的行,已读完时返回null
+     * @throws IOException 读取失败或已关闭
+     */
+    public String readLine() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException(name + " is closed");
+            }
+            int scanned = 0;
+            while (true) {
+                byte[] array = buffer.array();
+                int start = buffer.position();
+                int limit = buffer.limit();
+                for (int i = start + scanned; i < limit; i++) {
+                    if (array[i] == '\n') {
+                        ((Buffer) buffer).position(i + 1);
+                        return decode(array, start, i);
+                    }
+                }
+                scanned = limit - start;
+                if (eof) {
+                    if (scanned == 0) {
+                        return null;
+                    }
+                    ((Buffer) buffer).position(limit);
+                    return decode(array, start, limit);
+                }
+                fill();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取已读取的行数
+     *
+     * @return 行数
+     */
+    public long getLineNumber() {
+        lock.lock();
+        try {
+            return lineNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 关闭文件,标准输入不会被关闭
+     *
+     * @throws IOException 关闭失败
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed || this == stdin) {
+                return;
+            }
+            closed = true;
+            buffer = null;
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将未读取的内容移到缓冲区开头并从通道读入更多内容,缓冲区已满(行比缓冲区长)时扩大一倍
+     *
+     * @throws IOException 读取失败或行超过2GB
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            if (buffer.capacity() > Integer.MAX_VALUE / 2) {
+                throw new IOException(String.format("line %d of %s is too long", lineNumber + 1, name));
+            }
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            ((Buffer) buffer).flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        if (channel.read(buffer) < 0) {
+            eof = true;
+        }
+        ((Buffer) buffer).flip();
+    }
+
+    private String decode(byte[] array, int start, int end) {
+        lineNumber++;
+        if (end > start && array[end - 1] == '\r') {
+            end--;
+        }
+        return new String(array, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 将输入流适配为通道;与Channels.newChannel不同,读取时被中断不会关闭标准输入
+     */
+    private static class InputChannel implements ReadableByteChannel {
+        private final InputStream input;
+
+        InputChannel(InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            int n = input.read(destination.array(), destination.arrayOffset() + destination.position(), destination.remaining());
+            if (n > 0) {
+                ((Buffer) destination).position(destination.position() + n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -33,6 +33,15 @@ public class Lexer {
         advanceCharacter();
     }
 
+    /**
+     * 获取源代码长度
+     *
+     * @return 源代码字符数
+     */
+    public int getSourceLength() {
+        return sourceCode.length();
+    }
+
     /**
      * 前移字符
      */
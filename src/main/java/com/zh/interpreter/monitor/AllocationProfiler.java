@@ -0,0 +1,303 @@
+package com.zh.interpreter.monitor;
+
+import com.zh.interpreter.ast.ASTNode;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.ArrayObject;
+import com.zh.interpreter.object.struct.HashObject;
+import com.zh.interpreter.object.tools.FunctionObject;
+import com.zh.interpreter.object.tools.MacroObject;
+import com.zh.interpreter.object.tools.ReturnObject;
+import com.zh.interpreter.utils.SizeUtils;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 解释器对象的分配点内存分析器<br/>
+ * 开启后,每个解释器对象的分配都会归属到正在求值的AST节点上,按分配点和类型统计个数及估算字节数;
+ * 数组、哈希的元素增长(push、+、+=、下标赋值等)同样计入对应的分配点
+ */
+public abstract class AllocationProfiler {
+    /**
+     * 是否开启分析
+     */
+    private static volatile boolean enabled = Boolean.getBoolean("monkey.profile");
+
+    /**
+     * 当前线程正在求值的AST节点
+     */
+    private static final ThreadLocal<ASTNode[]> currentNode = ThreadLocal.withInitial(() -> new ASTNode[1]);
+
+    /**
+     * 各分配点的统计,AST节点未重写equals,按对象身份区分
+     */
+    private static final Map<ASTNode, Site> sites = new ConcurrentHashMap<>();
+
+    /**
+     * 不在求值过程中的分配
+     */
+    private static final Site unknownSite = new Site(null);
+
+    private AllocationProfiler() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        AllocationProfiler.enabled = enabled;
+        Object.updateAllocationHooks();
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public static void reset() {
+        sites.clear();
+        unknownSite.clear();
+    }
+
+    /**
+     * 进入AST节点的求值
+     *
+     * @param node AST节点
+     * @return 之前正在求值的节点,求值结束后需要交给exitNode恢复
+     */
+    public static ASTNode enterNode(ASTNode node) {
+        ASTNode[] holder = currentNode.get();
+        ASTNode previous = holder[0];
+        holder[0] = node;
+        return previous;
+    }
+
+    /**
+     * 退出AST节点的求值
+     *
+     * @param previous enterNode返回的节点
+     */
+    public static void exitNode(ASTNode previous) {
+        currentNode.get()[0] = previous;
+    }
+
+    /**
+     * 记录一次解释器对象的分配
+     *
+     * @param type 对象类型
+     */
+    public static void recordAllocation(ObjectType type) {
+        if (enabled) {
+            currentSite().record(type, 1, SizeUtils.shallowSize(type));
+        }
+    }
+
+    /**
+     * 记录数组或哈希的元素增长
+     *
+     * @param type  容器类型(ARRAY_OBJECT或HASH_OBJECT)
+     * @param slots 增长的元素个数
+     */
+    public static void recordGrowth(ObjectType type, int slots) {
+        if (slots > 0) {
+            // 元素增长同样计入当前执行的分配配额
+            ExecutionContext.recordAllocation((long) slotSize(type) * slots);
+        }
+        if (enabled && slots > 0) {
+            currentSite().record(type, 0, (long) slotSize(type) * slots);
+        }
+    }
+
+    private static int slotSize(ObjectType type) {
+        return type == ObjectType.HASH_OBJECT ? SizeUtils.HASH_ENTRY : SizeUtils.ARRAY_SLOT;
+    }
+
+    /**
+     * 获取当前线程正在求值的分配点
+     *
+     * @return 分配点
+     */
+    private static Site currentSite() {
+        ASTNode node = currentNode.get()[0];
+        if (node == null) {
+            return unknownSite;
+        }
+        Site site = sites.get(node);
+        if (site == null) {
+            site = sites.computeIfAbsent(node, Site::new);
+        }
+        return site;
+    }
+
+    /**
+     * 输出按类型及按分配点的统计
+     *
+     * @param out   输出流
+     * @param limit 最多输出的分配点数
+     */
+    public static void report(PrintStream out, int limit) {
+        List<Site> list = new ArrayList<>(sites.values());
+        list.add(unknownSite);
+        // 按类型汇总
+        long[] typeCounts = new long[ObjectType.values().length];
+        long[] typeBytes = new long[ObjectType.values().length];
+        for (Site site : list) {
+            for (int i = 0; i < typeCounts.length; i++) {
+                typeCounts[i] += site.counts.get(i);
+                typeBytes[i] += site.bytes.get(i);
+            }
+        }
+        out.println("--- allocations by type ---");
+        out.printf("%16s %12s %14s%n", "type", "count", "bytes");
+        for (ObjectType type : ObjectType.values()) {
+            if (typeCounts[type.ordinal()] > 0 || typeBytes[type.ordinal()] > 0) {
+                out.printf("%16s %12d %14d%n", type, typeCounts[type.ordinal()], typeBytes[type.ordinal()]);
+            }
+        }
+        // 按分配点汇总,字节数从大到小
+        list.sort(Comparator.comparingLong(Site::totalBytes).reversed());
+        out.println("--- allocations by site ---");
+        out.printf("%12s %14s  %s%n", "count", "bytes", "site");
+        for (int i = 0; i < Math.min(limit, list.size()); i++) {
+            Site site = list.get(i);
+            if (site.totalBytes() == 0) {
+                break;
+            }
+            out.printf("%12d %14d  %s%n", site.totalCount(), site.totalBytes(), site.describe());
+        }
+    }
+
+    /**
+     * 输出从环境可达的解释器对象的直方图,函数对象捕获的环境也会被遍历,内置函数环境除外
+     *
+     * @param environment 全局环境
+     * @param out         输出流
+     */
+    public static void heapHistogram(Environment environment, PrintStream out) {
+        long[] counts = new long[ObjectType.values().length];
+        long[] bytes = new long[ObjectType.values().length];
+        Set<java.lang.Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<java.lang.Object> stack = new ArrayDeque<>();
+        stack.push(environment);
+        while (!stack.isEmpty()) {
+            java.lang.Object current = stack.pop();
+            if (current == null || current instanceof BuiltInEnvironment || !visited.add(current)) {
+                continue;
+            }
+            // 环境本身不计入直方图,只遍历其中的对象
+            if (current instanceof Environment) {
+                Environment env = (Environment) current;
+                stack.addAll(env.getStores().values());
+                if (env.outerEnvironment != null) {
+                    stack.push(env.outerEnvironment);
+                }
+                continue;
+            }
+            Object object = (Object) current;
+            counts[object.getType().ordinal()]++;
+            bytes[object.getType().ordinal()] += SizeUtils.selfSize(object);
+            switch (object.getType()) {
+                case ARRAY_OBJECT:
+                    stack.addAll(((ArrayObject) object).elements);
+                    break;
+                case HASH_OBJECT:
+                    for (Map.Entry<Object, Object> entry : ((HashObject) object).hashMap.entrySet()) {
+                        stack.push(entry.getKey());
+                        stack.push(entry.getValue());
+                    }
+                    break;
+                case FUNCTION_OBJECT:
+                    stack.push(((FunctionObject) object).environment);
+                    break;
+                case MACRO_FUNCTION_OBJECT:
+                    stack.push(((MacroObject) object).environment);
+                    break;
+                case RETURN_OBJECT:
+                    stack.push(((ReturnObject) object).value);
+                    break;
+            }
+        }
+        long totalCount = 0, totalBytes = 0;
+        out.println("--- live interpreter objects ---");
+        out.printf("%16s %12s %14s%n", "type", "count", "bytes");
+        for (ObjectType type : ObjectType.values()) {
+            if (counts[type.ordinal()] > 0) {
+                out.printf("%16s %12d %14d%n", type, counts[type.ordinal()], bytes[type.ordinal()]);
+                totalCount += counts[type.ordinal()];
+                totalBytes += bytes[type.ordinal()];
+            }
+        }
+        out.printf("%16s %12d %14d%n", "total", totalCount, totalBytes);
+    }
+
+    /**
+     * 分配点
+     */
+    private static class Site {
+        private final ASTNode node;
+
+        private final AtomicLongArray counts = new AtomicLongArray(ObjectType.values().length);
+
+        private final AtomicLongArray bytes = new AtomicLongArray(ObjectType.values().length);
+
+        private Site(ASTNode node) {
+            this.node = node;
+        }
+
+        private void record(ObjectType type, int count, long size) {
+            if (count > 0) {
+                counts.addAndGet(type.ordinal(), count);
+            }
+            bytes.addAndGet(type.ordinal(), size);
+        }
+
+        private void clear() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+                bytes.set(i, 0);
+            }
+        }
+
+        private long totalCount() {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        private long totalBytes() {
+            long total = 0;
+            for (int i = 0; i < bytes.length(); i++) {
+                total += bytes.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * 描述分配点:节点类型、节点源码片段以及占比最大的对象类型
+         */
+        private String describe() {
+            int top = 0;
+            for (int i = 1; i < bytes.length(); i++) {
+                if (bytes.get(i) > bytes.get(top)) {
+                    top = i;
+                }
+            }
+            String mainType = ObjectType.values()[top].toString();
+            if (node == null) {
+                return "<outside evaluation> " + mainType;
+            }
+            String description = node.getNodeDescription().replaceAll("\\s+", " ");
+            if (description.length() > 60) {
+                description = description.substring(0, 57) + "...";
+            }
+            return node.getClass().getSimpleName() + " `" + description + "` " + mainType;
+        }
+    }
+}
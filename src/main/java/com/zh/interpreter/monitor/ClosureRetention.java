@@ -0,0 +1,164 @@
+package com.zh.interpreter.monitor;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.ArrayObject;
+import com.zh.interpreter.object.struct.HashObject;
+import com.zh.interpreter.object.tools.FunctionObject;
+import com.zh.interpreter.object.tools.ReturnObject;
+import com.zh.interpreter.utils.SizeUtils;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * 闭包内存保留分析器<br/>
+ * 找出只因被闭包捕获而存活的数据:先标记从全局环境直接可达(不进入函数环境)的对象,
+ * 再遍历每个可达闭包捕获的局部环境,输出其中未被标记且估算大小超过阈值的绑定
+ */
+public abstract class ClosureRetention {
+    /**
+     * 默认的报告阈值(字节)
+     */
+    public static final long DEFAULT_THRESHOLD = 1024;
+
+    private ClosureRetention() {
+    }
+
+    /**
+     * 输出被闭包保留的数据
+     *
+     * @param environment 全局环境
+     * @param out         输出流
+     * @param threshold   报告阈值(字节)
+     */
+    public static void report(Environment environment, PrintStream out, long threshold) {
+        Set<java.lang.Object> marked = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<FunctionObject> closures = new ArrayDeque<>();
+        // 标记全局环境直接可达的对象,同时收集遇到的闭包
+        for (Environment env = environment; env != null && !(env instanceof BuiltInEnvironment); env = env.outerEnvironment) {
+            for (Object value : env.getStores().values()) {
+                mark(value, marked, closures);
+            }
+        }
+        List<Retained> retained = new ArrayList<>();
+        Set<Environment> visitedFrames = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (!closures.isEmpty()) {
+            FunctionObject closure = closures.pop();
+            // 只遍历闭包捕获的局部环境,到达全局环境时停止
+            for (Environment frame = closure.environment; frame != null && frame.scope != null; frame = frame.outerEnvironment) {
+                if (!visitedFrames.add(frame)) {
+                    break;
+                }
+                for (Map.Entry<String, Object> entry : frame.getStores().entrySet()) {
+                    Object value = entry.getValue();
+                    long size = retainedSize(value, marked, closures);
+                    if (size >= threshold) {
+                        boolean referenced = closure.scope == null || closure.scope.freeVariables.contains(entry.getKey());
+                        retained.add(new Retained(entry.getKey(), value, size, referenced, closure));
+                    }
+                }
+            }
+        }
+        retained.sort(Comparator.comparingLong((Retained r) -> r.size).reversed());
+        out.println("--- values retained by closures ---");
+        out.printf("%14s  %-20s %s%n", "bytes", "binding", "closure");
+        for (Retained r : retained) {
+            out.printf("%14d  %-20s %s%s%n", r.size, r.name + " " + r.value.getType(),
+                    describe(r.closure), r.referenced ? "" : " (unreferenced)");
+        }
+        if (retained.isEmpty()) {
+            out.printf("no value larger than %d bytes is retained only by closures%n", threshold);
+        }
+    }
+
+    /**
+     * 标记对象及其元素,函数对象只收集不进入其环境
+     */
+    private static void mark(Object root, Set<java.lang.Object> marked, Deque<FunctionObject> closures) {
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Object object = stack.pop();
+            if (object == null || !marked.add(object)) {
+                continue;
+            }
+            pushChildren(object, stack, closures);
+        }
+    }
+
+    /**
+     * 估算未被标记部分的大小,遍历过的对象同样被标记,避免在多个闭包间重复计算
+     */
+    private static long retainedSize(Object root, Set<java.lang.Object> marked, Deque<FunctionObject> closures) {
+        long size = 0;
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Object object = stack.pop();
+            if (object == null || !marked.add(object)) {
+                continue;
+            }
+            size += SizeUtils.selfSize(object);
+            pushChildren(object, stack, closures);
+        }
+        return size;
+    }
+
+    private static void pushChildren(Object object, Deque<Object> stack, Deque<FunctionObject> closures) {
+        switch (object.getType()) {
+            case ARRAY_OBJECT:
+                for (Object element : ((ArrayObject) object).elements) {
+                    stack.push(element);
+                }
+                break;
+            case HASH_OBJECT:
+                for (Map.Entry<Object, Object> entry : ((HashObject) object).hashMap.entrySet()) {
+                    stack.push(entry.getKey());
+                    stack.push(entry.getValue());
+                }
+                break;
+            case RETURN_OBJECT:
+                stack.push(((ReturnObject) object).value);
+                break;
+            case FUNCTION_OBJECT:
+                closures.push((FunctionObject) object);
+                break;
+        }
+    }
+
+    private static String describe(FunctionObject closure) {
+        String description = closure.toString().replaceAll("\\s+", " ");
+        if (description.length() > 60) {
+            description = description.substring(0, 57) + "...";
+        }
+        return description;
+    }
+
+    /**
+     * 被闭包保留的绑定
+     */
+    private static class Retained {
+        private final String name;
+
+        private final Object value;
+
+        private final long size;
+
+        /**
+         * 闭包是否引用了该绑定,未引用说明闭包捕获了整个环境
+         */
+        private final boolean referenced;
+
+        private final FunctionObject closure;
+
+        private Retained(String name, Object value, long size, boolean referenced, FunctionObject closure) {
+            this.name = name;
+            this.value = value;
+            this.size = size;
+            this.referenced = referenced;
+            this.closure = closure;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.zh.interpreter.monitor;
+
+/**
+ * JFR事件的入口<br/>
+ * 事件类依赖jdk.jfr,单独编译到monitor.event包中,只有运行时存在jdk.jfr时才会反射加载;
+ * 否则所有事件均为空操作,解释器本身仍可在没有JFR的jdk8上运行
+ */
+public abstract class Events {
+    /**
+     * 已经开始计时的事件,各类事件通过对应子接口的record设置字段并提交
+     */
+    public interface EventHandle {
+        /**
+         * @return 是否需要提交,未开启记录或未超过阈值时为false
+         */
+        boolean shouldCommit();
+    }
+
+    /**
+     * 解析事件
+     */
+    public interface ParseHandle extends EventHandle {
+        /**
+         * @param sourceSize     源代码长度(字符数)
+         * @param statementCount 解析出的语句数
+         * @param errorCount     解析错误数
+         */
+        void record(int sourceSize, int statementCount, int errorCount);
+    }
+
+    /**
+     * 宏展开事件
+     */
+    public interface MacroExpansionHandle extends EventHandle {
+        /**
+         * @param definitionCount 宏定义数
+         * @param expansionCount  宏展开次数
+         */
+        void record(int definitionCount, int expansionCount);
+    }
+
+    /**
+     * monkey函数调用事件
+     */
+    public interface FunctionCallHandle extends EventHandle {
+        /**
+         * @param name  调用处的函数名
+         * @param depth 调用深度
+         */
+        void record(String name, int depth);
+    }
+
+    /**
+     * 内置函数调用事件
+     */
+    public interface BuiltInCallHandle extends EventHandle {
+        /**
+         * @param name          内置函数名
+         * @param argumentCount 参数个数
+         */
+        void record(String name, int argumentCount);
+    }
+
+    /**
+     * callJava事件
+     */
+    public interface CallJavaHandle extends EventHandle {
+        /**
+         * @param className  类名
+         * @param methodName 方法名
+         * @param success    是否调用成功
+         */
+        void record(String className, String methodName, boolean success);
+    }
+
+    /**
+     * 未启用JFR时使用的空事件,同时实现各类事件的接口
+     */
+    private static final class Disabled implements ParseHandle, MacroExpansionHandle, FunctionCallHandle,
+            BuiltInCallHandle, CallJavaHandle {
+        @Override
+        public boolean shouldCommit() {
+            return false;
+        }
+
+        @Override
+        public void record(int sourceSize, int statementCount, int errorCount) {
+        }
+
+        @Override
+        public void record(int definitionCount, int expansionCount) {
+        }
+
+        @Override
+        public void record(String name, int count) {
+        }
+
+        @Override
+        public void record(String className, String methodName, boolean success) {
+        }
+    }
+
+    private static final Disabled disabled = new Disabled();
+
+    /**
+     * JFR事件工厂,运行时没有jdk.jfr时为null
+     */
+    private static final Events factory = load();
+
+    protected Events() {
+    }
+
+    private static Events load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Events) Class.forName("com.zh.interpreter.monitor.event.JfrEvents")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 运行时是否支持JFR事件
+     */
+    public static boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * 开始一个解析事件
+     */
+    public static ParseHandle parse() {
+        return factory == null ? disabled : factory.newParse();
+    }
+
+    /**
+     * 开始一个宏展开事件
+     */
+    public static MacroExpansionHandle macroExpansion() {
+        return factory == null ? disabled : factory.newMacroExpansion();
+    }
+
+    /**
+     * 开始一个monkey函数调用事件
+     */
+    public static FunctionCallHandle functionCall() {
+        return factory == null ? disabled : factory.newFunctionCall();
+    }
+
+    /**
+     * 开始一个内置函数调用事件
+     */
+    public static BuiltInCallHandle builtInCall() {
+        return factory == null ? disabled : factory.newBuiltInCall();
+    }
+
+    /**
+     * 开始一个callJava事件
+     */
+    public static CallJavaHandle callJava() {
+        return factory == null ? disabled : factory.newCallJava();
+    }
+
+    protected abstract ParseHandle newParse();
+
+    protected abstract MacroExpansionHandle newMacroExpansion();
+
+    protected abstract FunctionCallHandle newFunctionCall();
+
+    protected abstract BuiltInCallHandle newBuiltInCall();
+
+    protected abstract CallJavaHandle newCallJava();
+}
@@ -0,0 +1,194 @@
+package com.zh.interpreter.monitor;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 解释器运行时指标,以Prometheus文本格式导出<br/>
+ * 默认关闭,开启后才会进行统计,避免影响普通的命令行执行
+ */
+public abstract class InterpreterMetrics {
+    /**
+     * 求值耗时直方图的桶上界(秒)
+     */
+    private static final double[] latencyBuckets = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10};
+
+    /**
+     * 是否开启统计
+     */
+    private static volatile boolean enabled = false;
+
+    /**
+     * 程序执行总数
+     */
+    private static final LongAdder executions = new LongAdder();
+
+    /**
+     * 执行结果为错误的程序数
+     */
+    private static final LongAdder errors = new LongAdder();
+
+    /**
+     * 正在执行的程序数
+     */
+    private static final AtomicLong activeExecutions = new AtomicLong();
+
+    /**
+     * 求值耗时直方图,最后一个桶为+Inf
+     */
+    private static final LongAdder[] latencyCounts = new LongAdder[latencyBuckets.length + 1];
+
+    /**
+     * 求值总耗时(秒)
+     */
+    private static final DoubleAdder latencySum = new DoubleAdder();
+
+    /**
+     * 编译脚本缓存命中数
+     */
+    private static final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * 编译脚本缓存未命中数
+     */
+    private static final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * 各类型解释器对象的分配数
+     */
+    private static final LongAdder[] allocations = new LongAdder[ObjectType.values().length];
+
+    static {
+        for (int i = 0; i < latencyCounts.length; i++) {
+            latencyCounts[i] = new LongAdder();
+        }
+        for (int i = 0; i < allocations.length; i++) {
+            allocations[i] = new LongAdder();
+        }
+    }
+
+    private InterpreterMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        InterpreterMetrics.enabled = enabled;
+        Object.updateAllocationHooks();
+    }
+
+    /**
+     * 记录程序开始执行
+     *
+     * @return 开始时间,未开启统计时返回0
+     */
+    public static long executionStarted() {
+        if (!enabled) {
+            return 0L;
+        }
+        activeExecutions.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录程序执行结束
+     *
+     * @param startTime executionStarted返回的开始时间
+     * @param error     执行结果是否为错误
+     */
+    public static void executionFinished(long startTime, boolean error) {
+        if (startTime == 0L) {
+            return;
+        }
+        activeExecutions.decrementAndGet();
+        executions.increment();
+        if (error) {
+            errors.increment();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        latencySum.add(seconds);
+        int i = 0;
+        while (i < latencyBuckets.length && seconds > latencyBuckets[i]) {
+            i++;
+        }
+        latencyCounts[i].increment();
+    }
+
+    /**
+     * 记录编译脚本缓存的查询结果
+     *
+     * @param hit 是否命中
+     */
+    public static void recordCacheLookup(boolean hit) {
+        if (!enabled) {
+            return;
+        }
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    /**
+     * 记录一次解释器对象分配
+     *
+     * @param type 对象类型
+     */
+    public static void recordAllocation(ObjectType type) {
+        if (enabled) {
+            allocations[type.ordinal()].increment();
+        }
+    }
+
+    /**
+     * 以Prometheus文本格式导出全部指标
+     *
+     * @return 指标文本
+     */
+    public static String scrape() {
+        StringBuilder builder = new StringBuilder();
+        counter(builder, "monkey_executions_total", "Monkey programs executed.", executions.sum());
+        counter(builder, "monkey_execution_errors_total", "Monkey programs whose result was an error.", errors.sum());
+        builder.append("# HELP monkey_active_executions Monkey programs currently being evaluated.\n");
+        builder.append("# TYPE monkey_active_executions gauge\n");
+        builder.append("monkey_active_executions ").append(activeExecutions.get()).append('\n');
+        // 直方图的桶为累加值
+        builder.append("# HELP monkey_evaluation_duration_seconds Evaluation latency of monkey programs.\n");
+        builder.append("# TYPE monkey_evaluation_duration_seconds histogram\n");
+        long cumulative = 0L;
+        for (int i = 0; i < latencyCounts.length; i++) {
+            cumulative += latencyCounts[i].sum();
+            String le = i < latencyBuckets.length ? format(latencyBuckets[i]) : "+Inf";
+            builder.append("monkey_evaluation_duration_seconds_bucket{le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        builder.append("monkey_evaluation_duration_seconds_sum ").append(format(latencySum.sum())).append('\n');
+        builder.append("monkey_evaluation_duration_seconds_count ").append(cumulative).append('\n');
+        counter(builder, "monkey_script_cache_hits_total", "Compiled script cache hits.", cacheHits.sum());
+        counter(builder, "monkey_script_cache_misses_total", "Compiled script cache misses.", cacheMisses.sum());
+        builder.append("# HELP monkey_objects_allocated_total Interpreter objects allocated, by type.\n");
+        builder.append("# TYPE monkey_objects_allocated_total counter\n");
+        for (ObjectType type : ObjectType.values()) {
+            builder.append("monkey_objects_allocated_total{type=\"").append(type).append("\"} ")
+                    .append(allocations[type.ordinal()].sum()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 输出计数器类型的指标
+     */
+    private static void counter(StringBuilder builder, String name, String help, long value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" counter\n");
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%s", value);
+    }
+}
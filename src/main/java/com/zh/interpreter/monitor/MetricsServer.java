@@ -0,0 +1,74 @@
+package com.zh.interpreter.monitor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * 基于jdk内置HttpServer的指标服务,仅监听本地回环地址,在/metrics路径下提供Prometheus格式的指标
+ */
+public class MetricsServer {
+    private final HttpServer server;
+
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * 开启指标统计并启动指标服务
+     *
+     * @param port 监听端口,为0时随机选择
+     * @return 指标服务
+     * @throws IOException 端口绑定失败
+     */
+    public static MetricsServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", MetricsServer::handle);
+        // 使用单个守护线程处理请求,不阻止jvm退出
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "monkey-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        InterpreterMetrics.setEnabled(true);
+        return new MetricsServer(server);
+    }
+
+    /**
+     * 获取实际监听的端口
+     *
+     * @return 端口
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 关闭指标服务
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * 处理/metrics请求
+     *
+     * @param exchange http请求
+     * @throws IOException 写入响应失败
+     */
+    private static void handle(HttpExchange exchange) throws IOException {
+        byte[] body = InterpreterMetrics.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.zh.interpreter.monitor;
+
+import com.zh.interpreter.utils.SignalUtils;
+import com.zh.interpreter.utils.ThreadUtils;
+
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 执行轨迹记录器,常开且有界<br/>
+ * 每个线程拥有一个预分配的环形缓冲区,事件写入基本类型的槽位,记录事件时不分配对象,
+ * 缓冲区只由所属线程写入,因此无需加锁;转储其它线程的缓冲区时只保证尽力而为<br/>
+ * 虚拟线程数量多且生命周期短,只分配较小的缓冲区;已结束线程的缓冲区在注册新缓冲区时按摊还的方式清理
+ */
+public abstract class Tracer {
+    /**
+     * 函数进入
+     */
+    public static final int FUNCTION_ENTER = 1;
+
+    /**
+     * 函数退出
+     */
+    public static final int FUNCTION_EXIT = 2;
+
+    /**
+     * 产生错误
+     */
+    public static final int ERROR = 3;
+
+    /**
+     * 调用java函数
+     */
+    public static final int CALL_JAVA = 4;
+
+    /**
+     * 每个线程的缓冲区容量,向上取整为2的幂
+     */
+    private static final int capacity = Integer.highestOneBit(Math.max(16, Integer.getInteger("monkey.trace.size", 4096)) * 2 - 1);
+
+    /**
+     * 虚拟线程的缓冲区容量
+     */
+    private static final int virtualCapacity = Math.max(16, capacity / 16);
+
+    /**
+     * 是否记录
+     */
+    private static volatile boolean enabled = !"false".equals(System.getProperty("monkey.trace"));
+
+    /**
+     * 程序执行结果为错误时是否转储当前线程的轨迹
+     */
+    private static volatile boolean dumpOnError = Boolean.getBoolean("monkey.trace.dumpOnError");
+
+    /**
+     * 符号表,将函数名、类名等字符串映射为编号
+     */
+    private static final Map<String, Integer> symbolMap = new ConcurrentHashMap<>();
+
+    /**
+     * 编号到符号的反向表
+     */
+    private static final List<String> symbols = new ArrayList<>();
+
+    /**
+     * 符号表的写锁,使用ReentrantLock避免在虚拟线程中占住载体线程
+     */
+    private static final ReentrantLock symbolLock = new ReentrantLock();
+
+    /**
+     * 所有线程的缓冲区
+     */
+    private static final ConcurrentLinkedQueue<TraceBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已注册的缓冲区数(含尚未清理的已结束线程)
+     */
+    private static final AtomicInteger registered = new AtomicInteger();
+
+    /**
+     * 注册数达到该值时清理已结束线程的缓冲区,清理后设为存活数的两倍,使清理的开销摊还到每次注册
+     */
+    private static volatile int sweepThreshold = 64;
+
+    /**
+     * 清理缓冲区的锁,保证已注册数的计数准确
+     */
+    private static final ReentrantLock sweepLock = new ReentrantLock();
+
+    private static final ThreadLocal<TraceBuffer> localBuffer = ThreadLocal.withInitial(Tracer::register);
+
+    static {
+        // 编号0表示无符号
+        symbols.add("");
+    }
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+    }
+
+    public static boolean isDumpOnError() {
+        return dumpOnError;
+    }
+
+    public static void setDumpOnError(boolean dumpOnError) {
+        Tracer.dumpOnError = dumpOnError;
+    }
+
+    /**
+     * 记录函数进入
+     *
+     * @param name  调用处的函数名
+     * @param depth 调用深度
+     */
+    public static void enter(String name, int depth) {
+        if (enabled) {
+            localBuffer.get().record(FUNCTION_ENTER, depth, symbol(name), 0, null);
+        }
+    }
+
+    /**
+     * 记录函数退出
+     *
+     * @param name  调用处的函数名
+     * @param depth 调用深度
+     */
+    public static void exit(String name, int depth) {
+        if (enabled) {
+            localBuffer.get().record(FUNCTION_EXIT, depth, symbol(name), 0, null);
+        }
+    }
+
+    /**
+     * 记录产生的错误,错误信息只保存引用,不进行复制
+     *
+     * @param message 错误信息
+     */
+    public static void error(String message) {
+        if (enabled) {
+            localBuffer.get().record(ERROR, 0, 0, 0, message);
+        }
+    }
+
+    /**
+     * 记录callJava的调用目标
+     *
+     * @param className  类名
+     * @param methodName 方法名
+     */
+    public static void callJava(String className, String methodName) {
+        if (enabled) {
+            localBuffer.get().record(CALL_JAVA, 0, symbol(className), symbol(methodName), null);
+        }
+    }
+
+    /**
+     * 转储当前线程最近的事件
+     *
+     * @param out   输出流
+     * @param limit 最多输出的事件数
+     */
+    public static void dump(PrintStream out, int limit) {
+        localBuffer.get().dump(out, limit);
+    }
+
+    /**
+     * 转储所有存活线程最近的事件
+     *
+     * @param out 输出流
+     */
+    public static void dumpAll(PrintStream out) {
+        sweep();
+        for (TraceBuffer buffer : buffers) {
+            buffer.dump(out, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 注册SIGUSR1信号,收到信号时将所有线程的轨迹转储到标准错误输出;
+     * SIGUSR2在linux上被jvm用于挂起线程(如JFR采样),不能占用
+     *
+     * @return 是否注册成功
+     */
+    public static boolean installSignalHandler() {
+        return SignalUtils.handle("USR1", () -> dumpAll(System.err));
+    }
+
+    /**
+     * 为当前线程创建并注册缓冲区
+     *
+     * @return 缓冲区
+     */
+    private static TraceBuffer register() {
+        Thread thread = Thread.currentThread();
+        TraceBuffer buffer = new TraceBuffer(thread, ThreadUtils.isVirtual(thread) ? virtualCapacity : capacity);
+        // 其它线程正在清理时不等待
+        if (registered.incrementAndGet() >= sweepThreshold && sweepLock.tryLock()) {
+            try {
+                sweepThreshold = Math.max(64, sweep() * 2);
+            } finally {
+                sweepLock.unlock();
+            }
+        }
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * 移除已结束线程的缓冲区
+     *
+     * @return 剩余的缓冲区数
+     */
+    private static int sweep() {
+        sweepLock.lock();
+        try {
+            int alive = 0;
+            Iterator<TraceBuffer> iterator = buffers.iterator();
+            while (iterator.hasNext()) {
+                Thread thread = iterator.next().thread.get();
+                if (thread == null || !thread.isAlive()) {
+                    iterator.remove();
+                    registered.decrementAndGet();
+                } else {
+                    alive++;
+                }
+            }
+            return alive;
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * 获取字符串对应的符号编号,已存在的符号查询时不分配对象
+     *
+     * @param name 字符串
+     * @return 符号编号
+     */
+    private static int symbol(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer id = symbolMap.get(name);
+        if (id != null) {
+            return id;
+        }
+        symbolLock.lock();
+        try {
+            id = symbolMap.get(name);
+            if (id == null) {
+                id = symbols.size();
+                symbols.add(name);
+                symbolMap.put(name, id);
+            }
+            return id;
+        } finally {
+            symbolLock.unlock();
+        }
+    }
+
+    /**
+     * 获取符号编号对应的字符串
+     *
+     * @param id 符号编号
+     * @return 字符串
+     */
+    private static String symbolName(int id) {
+        symbolLock.lock();
+        try {
+            return id < symbols.size() ? symbols.get(id) : "?";
+        } finally {
+            symbolLock.unlock();
+        }
+    }
+
+    /**
+     * 单个线程的环形缓冲区
+     */
+    private static class TraceBuffer {
+        private final WeakReference<Thread> thread;
+
+        private final String threadName;
+
+        /**
+         * 容量,为2的幂
+         */
+        private final int capacity;
+
+        private final long[] times;
+
+        private final int[] kinds;
+
+        private final int[] depths;
+
+        private final int[] firstSymbols;
+
+        private final int[] secondSymbols;
+
+        private final String[] messages;
+
+        /**
+         * 已写入的事件总数
+         */
+        private volatile long count;
+
+        private TraceBuffer(Thread thread, int capacity) {
+            this.thread = new WeakReference<>(thread);
+            this.threadName = thread.getName();
+            this.capacity = capacity;
+            this.times = new long[capacity];
+            this.kinds = new int[capacity];
+            this.depths = new int[capacity];
+            this.firstSymbols = new int[capacity];
+            this.secondSymbols = new int[capacity];
+            this.messages = new String[capacity];
+        }
+
+        /**
+         * 写入一个事件,仅由所属线程调用
+         */
+        private void record(int kind, int depth, int first, int second, String message) {
+            long position = count;
+            int index = (int) position & (capacity - 1);
+            times[index] = System.nanoTime();
+            kinds[index] = kind;
+            depths[index] = depth;
+            firstSymbols[index] = first;
+            secondSymbols[index] = second;
+            messages[index] = message;
+            count = position + 1;
+        }
+
+        /**
+         * 从旧到新输出最近的事件,时间为相对转储时刻的偏移
+         */
+        private void dump(PrintStream out, int limit) {
+            long end = count;
+            long start = Math.max(0, end - Math.min(limit, capacity));
+            long now = System.nanoTime();
+            out.printf("--- trace of thread %s (%d of %d events) ---%n", threadName, end - start, end);
+            for (long position = start; position < end; position++) {
+                int index = (int) position & (capacity - 1);
+                StringBuilder builder = new StringBuilder();
+                builder.append(String.format("%12.3fms ", (times[index] - now) / 1e6));
+                switch (kinds[index]) {
+                    case FUNCTION_ENTER:
+                        appendIndent(builder, depths[index]);
+                        builder.append("-> ").append(symbolName(firstSymbols[index]));
+                        break;
+                    case FUNCTION_EXIT:
+                        appendIndent(builder, depths[index]);
+                        builder.append("<- ").append(symbolName(firstSymbols[index]));
+                        break;
+                    case ERROR:
+                        builder.append("error ").append(messages[index]);
+                        break;
+                    case CALL_JAVA:
+                        builder.append("callJava ").append(symbolName(firstSymbols[index]))
+                                .append('.').append(symbolName(secondSymbols[index]));
+                        break;
+                    default:
+                        builder.append("?");
+                }
+                out.println(builder);
+            }
+        }
+
+        private static void appendIndent(StringBuilder builder, int depth) {
+            for (int i = 1; i < depth; i++) {
+                builder.append("  ");
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.zh.interpreter.monitor.event;
+
+import com.zh.interpreter.monitor.Events;
+import jdk.jfr.*;
+
+/**
+ * 内置函数调用的JFR事件
+ */
+@Name("com.zh.interpreter.BuiltInCall")
+@Label("Monkey Built-in Call")
+@Category({"Monkey Interpreter", "Execution"})
+@Description("Call of a monkey built-in function")
+@StackTrace(false)
+public class BuiltInCallEvent extends Event implements Events.BuiltInCallHandle {
+    /**
+     * 内置函数名
+     */
+    @Label("Function Name")
+    public String name;
+
+    /**
+     * 参数个数
+     */
+    @Label("Argument Count")
+    public int argumentCount;
+
+    @Override
+    public void record(String name, int argumentCount) {
+        this.name = name;
+        this.argumentCount = argumentCount;
+        commit();
+    }
+}
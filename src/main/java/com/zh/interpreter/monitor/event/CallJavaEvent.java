@@ -0,0 +1,39 @@
+package com.zh.interpreter.monitor.event;
+
+import com.zh.interpreter.monitor.Events;
+import jdk.jfr.*;
+
+/**
+ * callJava及callJavaD调用java函数的JFR事件
+ */
+@Name("com.zh.interpreter.CallJava")
+@Label("Monkey Call Java")
+@Category({"Monkey Interpreter", "Execution"})
+@Description("Java method invoked by callJava or callJavaD")
+public class CallJavaEvent extends Event implements Events.CallJavaHandle {
+    /**
+     * 类名
+     */
+    @Label("Class Name")
+    public String className;
+
+    /**
+     * 方法名
+     */
+    @Label("Method Name")
+    public String methodName;
+
+    /**
+     * 是否调用成功
+     */
+    @Label("Success")
+    public boolean success;
+
+    @Override
+    public void record(String className, String methodName, boolean success) {
+        this.className = className;
+        this.methodName = methodName;
+        this.success = success;
+        commit();
+    }
+}
@@ -0,0 +1,33 @@
+package com.zh.interpreter.monitor.event;
+
+import com.zh.interpreter.monitor.Events;
+import jdk.jfr.*;
+
+/**
+ * monkey函数调用的JFR事件,默认只记录耗时超过阈值的慢调用
+ */
+@Name("com.zh.interpreter.FunctionCall")
+@Label("Monkey Function Call")
+@Category({"Monkey Interpreter", "Execution"})
+@Description("Monkey function call slower than the threshold")
+@Threshold("10 ms")
+public class FunctionCallEvent extends Event implements Events.FunctionCallHandle {
+    /**
+     * 调用处的函数名
+     */
+    @Label("Function Name")
+    public String name;
+
+    /**
+     * 调用深度
+     */
+    @Label("Call Depth")
+    public int depth;
+
+    @Override
+    public void record(String name, int depth) {
+        this.name = name;
+        this.depth = depth;
+        commit();
+    }
+}
@@ -0,0 +1,43 @@
+package com.zh.interpreter.monitor.event;
+
+import com.zh.interpreter.monitor.Events;
+
+/**
+ * 基于jdk.jfr的事件工厂,由Events反射加载
+ */
+public class JfrEvents extends Events {
+    @Override
+    protected ParseHandle newParse() {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    protected MacroExpansionHandle newMacroExpansion() {
+        MacroExpansionEvent event = new MacroExpansionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    protected FunctionCallHandle newFunctionCall() {
+        FunctionCallEvent event = new FunctionCallEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    protected BuiltInCallHandle newBuiltInCall() {
+        BuiltInCallEvent event = new BuiltInCallEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    protected CallJavaHandle newCallJava() {
+        CallJavaEvent event = new CallJavaEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,33 @@
+package com.zh.interpreter.monitor.event;
+
+import com.zh.interpreter.monitor.Events;
+import jdk.jfr.*;
+
+/**
+ * 宏预处理及宏展开阶段的JFR事件
+ */
+@Name("com.zh.interpreter.MacroExpansion")
+@Label("Monkey Macro Expansion")
+@Category({"Monkey Interpreter", "Compile"})
+@Description("Macro definition and expansion of a monkey program")
+@StackTrace(false)
+public class MacroExpansionEvent extends Event implements Events.MacroExpansionHandle {
+    /**
+     * 宏定义数
+     */
+    @Label("Definition Count")
+    public int definitionCount;
+
+    /**
+     * 宏展开次数
+     */
+    @Label("Expansion Count")
+    public int expansionCount;
+
+    @Override
+    public void record(int definitionCount, int expansionCount) {
+        this.definitionCount = definitionCount;
+        this.expansionCount = expansionCount;
+        commit();
+    }
+}
@@ -0,0 +1,40 @@
+package com.zh.interpreter.monitor.event;
+
+import com.zh.interpreter.monitor.Events;
+import jdk.jfr.*;
+
+/**
+ * 词法分析及语法分析阶段的JFR事件,持续时间即为整个解析阶段的耗时
+ */
+@Name("com.zh.interpreter.Parse")
+@Label("Monkey Parse")
+@Category({"Monkey Interpreter", "Compile"})
+@Description("Lexing and parsing of a monkey source")
+@StackTrace(false)
+public class ParseEvent extends Event implements Events.ParseHandle {
+    /**
+     * 源代码长度(字符数)
+     */
+    @Label("Source Size")
+    public int sourceSize;
+
+    /**
+     * 解析出的语句数
+     */
+    @Label("Statement Count")
+    public int statementCount;
+
+    /**
+     * 解析错误数
+     */
+    @Label("Error Count")
+    public int errorCount;
+
+    @Override
+    public void record(int sourceSize, int statementCount, int errorCount) {
+        this.sourceSize = sourceSize;
+        this.statementCount = statementCount;
+        this.errorCount = errorCount;
+        commit();
+    }
+}
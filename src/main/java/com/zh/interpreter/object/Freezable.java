@@ -0,0 +1,19 @@
+package com.zh.interpreter.object;
+
+/**
+ * 指示那些对象可以冻结<br/>
+ * 冻结后的对象不可再修改,因此可以不经复制地发布给任意线程或脚本
+ */
+public interface Freezable {
+    /**
+     * 冻结对象,容器会同时冻结其中的元素
+     */
+    void freeze();
+
+    /**
+     * 是否已冻结
+     *
+     * @return 是否已冻结
+     */
+    boolean isFrozen();
+}
@@ -1,6 +1,44 @@
 package com.zh.interpreter.object;
 
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.monitor.AllocationProfiler;
+import com.zh.interpreter.monitor.InterpreterMetrics;
+
+import java.util.concurrent.locks.ReentrantLock;
+
 public abstract class Object {
+    private static final ReentrantLock hookLock = new ReentrantLock();
+
+    /**
+     * 是否有任一分配统计(指标、分配分析、分配配额)开启,均未开启时构造对象不做任何统计
+     */
+    private static volatile boolean allocationHooked = AllocationProfiler.isEnabled()
+            || InterpreterMetrics.isEnabled() || ExecutionContext.isAllocationLimited();
+
+    protected Object() {
+        if (allocationHooked) {
+            // 统计对象分配,各子类的getType均返回常量,可以在构造时调用
+            ObjectType type = getType();
+            InterpreterMetrics.recordAllocation(type);
+            AllocationProfiler.recordAllocation(type);
+            ExecutionContext.recordAllocation(type);
+        }
+    }
+
+    /**
+     * 分配统计的开关改变后调用,重新计算是否需要在构造对象时统计
+     */
+    public static void updateAllocationHooks() {
+        // 加锁使最后一次更新看到所有开关的最新值
+        hookLock.lock();
+        try {
+            allocationHooked = AllocationProfiler.isEnabled()
+                    || InterpreterMetrics.isEnabled() || ExecutionContext.isAllocationLimited();
+        } finally {
+            hookLock.unlock();
+        }
+    }
+
     /**
      * 获取对象类型
      *
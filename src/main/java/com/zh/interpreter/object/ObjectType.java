@@ -17,7 +17,12 @@ public enum ObjectType {
     RETURN_OBJECT("ReturnValue"),
     ERROR_OBJECT("Error"),
     QUOTE_OBJECT("Quote"),
-    MACRO_FUNCTION_OBJECT("MacroFunction");
+    MACRO_FUNCTION_OBJECT("MacroFunction"),
+    TASK_OBJECT("Task"),
+    CHANNEL_OBJECT("Channel"),
+    COUNTER_OBJECT("Counter"),
+    STORE_OBJECT("Store"),
+    LINES_OBJECT("Lines");
 
     private final String type;
 
@@ -1,22 +1,53 @@
 package com.zh.interpreter.object.environment;
 
 import com.zh.interpreter.annotation.IgnoreMethod;
+import com.zh.interpreter.evaluator.CancelInterrupter;
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.io.LineReader;
+import com.zh.interpreter.monitor.AllocationProfiler;
+import com.zh.interpreter.monitor.Events;
+import com.zh.interpreter.monitor.Tracer;
 import com.zh.interpreter.object.Cloneable;
+import com.zh.interpreter.object.Freezable;
+import com.zh.interpreter.object.Hashable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
 import com.zh.interpreter.object.struct.*;
 import com.zh.interpreter.object.tools.ErrorObject;
 import com.zh.interpreter.object.tools.NullObject;
+import com.zh.interpreter.object.tools.TaskObject;
+import com.zh.interpreter.snapshot.HeapSnapshot;
+import com.zh.interpreter.snapshot.SnapshotReader;
+import com.zh.interpreter.snapshot.SnapshotWriter;
+import com.zh.interpreter.store.KeyValueStore;
 import com.zh.interpreter.utils.ObjectUtils;
+import com.zh.interpreter.utils.ParallelUtils;
+import com.zh.interpreter.utils.ThreadUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 内置函数的环境
@@ -42,6 +73,8 @@ public class BuiltInEnvironment extends Environment {
             }
             setObject(method.getName(), new BuiltInFunctionObject(method));
         }
+        // 内置函数环境由所有执行共享,构造完成后只读
+        freeze();
     }
 
     /**
@@ -67,6 +100,12 @@ public class BuiltInEnvironment extends Environment {
             case HASH_OBJECT:
                 integerObject.value = (long) ((HashObject) object).hashMap.size();
                 break;
+            case CHANNEL_OBJECT:
+                integerObject.value = (long) ((ChannelObject) object).size();
+                break;
+            case STORE_OBJECT:
+                integerObject.value = (long) ((StoreObject) object).store.size();
+                break;
             default:
                 return new ErrorObject(String.format("argument to {size} not supported, get %s", object.getType()));
         }
@@ -88,8 +127,12 @@ public class BuiltInEnvironment extends Environment {
             return new ErrorObject(String.format("the object is not a array,it's real type is %s", args[0].getType()));
         }
         ArrayObject array = (ArrayObject) args[0];
+        if (array.isFrozen()) {
+            return ObjectUtils.frozenError(array);
+        }
         // 推入数据
         array.elements.add(args[1]);
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, 1);
         return array;
     }
 
@@ -108,8 +151,173 @@ public class BuiltInEnvironment extends Environment {
             return new ErrorObject(String.format("the object is not a array,it's real type is %s", args[0].getType()));
         }
         ArrayObject array = (ArrayObject) args[0];
-        // 删除数据
-        return array.elements.remove(array.elements.size() - 1);
+        if (array.isFrozen()) {
+            return ObjectUtils.frozenError(array);
+        }
+        // 删除数据,并发数组在取得长度后可能已被其它任务修改,因此失败时重试
+        while (true) {
+            int size = array.elements.size();
+            if (size == 0) {
+                return new ErrorObject("the function {pop} can't pop from an empty array");
+            }
+            try {
+                return array.elements.remove(size - 1);
+            } catch (IndexOutOfBoundsException e) {
+                // 重试
+            }
+        }
+    }
+
+    /**
+     * 对数组的每个元素调用函数,返回由结果组成的新数组<br/>
+     * map(array, function)
+     *
+     * @param args 可变参数(应该为2个元素,第一个参数为数组对象,第二个参数为函数)
+     * @return 数组对象或ErrorObject对象
+     */
+    private static Object map(Object... args) {
+        Object error = checkArrayFunction("map", 2, args);
+        if (error != null) {
+            return error;
+        }
+        ArrayObject result = new ArrayObject();
+        for (Object element : ((ArrayObject) args[0]).elements.toArray(new Object[0])) {
+            Object value = ParallelUtils.call(args[1], "map", element);
+            if (ObjectUtils.isError(value)) {
+                return value;
+            }
+            result.elements.add(value);
+        }
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, result.elements.size());
+        return result;
+    }
+
+    /**
+     * 返回函数结果为真的元素组成的新数组<br/>
+     * filter(array, function)
+     *
+     * @param args 可变参数(应该为2个元素,第一个参数为数组对象,第二个参数为函数)
+     * @return 数组对象或ErrorObject对象
+     */
+    private static Object filter(Object... args) {
+        Object error = checkArrayFunction("filter", 2, args);
+        if (error != null) {
+            return error;
+        }
+        ArrayObject result = new ArrayObject();
+        for (Object element : ((ArrayObject) args[0]).elements.toArray(new Object[0])) {
+            Object value = ParallelUtils.call(args[1], "filter", element);
+            if (ObjectUtils.isError(value)) {
+                return value;
+            }
+            if (ObjectUtils.convertToBoolean(value).value) {
+                result.elements.add(element);
+            }
+        }
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, result.elements.size());
+        return result;
+    }
+
+    /**
+     * 从左到右归约数组,函数的参数为(累积值, 元素);未给出初始值时以第一个元素作为初始值<br/>
+     * reduce(array, function[, initial])
+     *
+     * @param args 可变参数(应该为2或3个元素)
+     * @return 归约结果或ErrorObject对象
+     */
+    private static Object reduce(Object... args) {
+        if (args.length != 2 && args.length != 3) {
+            return new ErrorObject(String.format("the function {reduce} get wrong number of arguments,want 2 or 3 arguments but real get %d", args.length));
+        }
+        Object error = checkArrayFunction("reduce", args.length, args);
+        if (error != null) {
+            return error;
+        }
+        Object[] elements = ((ArrayObject) args[0]).elements.toArray(new Object[0]);
+        int start = 0;
+        Object accumulator;
+        if (args.length == 3) {
+            accumulator = args[2];
+        } else if (elements.length > 0) {
+            accumulator = elements[start++];
+        } else {
+            return new ErrorObject("the function {reduce} get an empty array without initial value");
+        }
+        for (int i = start; i < elements.length; i++) {
+            accumulator = ParallelUtils.call(args[1], "reduce", accumulator, elements[i]);
+            if (ObjectUtils.isError(accumulator)) {
+                return accumulator;
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * map的并行版本,数组被切分后在ForkJoinPool中执行,结果顺序与原数组一致;函数不应依赖执行顺序<br/>
+     * pmap(array, function)
+     *
+     * @param args 可变参数(应该为2个元素,第一个参数为数组对象,第二个参数为函数)
+     * @return 数组对象或ErrorObject对象
+     */
+    private static Object pmap(Object... args) {
+        Object error = checkArrayFunction("pmap", 2, args);
+        if (error != null) {
+            return error;
+        }
+        Object[] elements = ((ArrayObject) args[0]).elements.toArray(new Object[0]);
+        Object[] results = new Object[elements.length];
+        error = ParallelUtils.map(elements, args[1], "pmap", results);
+        if (error != null) {
+            return error;
+        }
+        ArrayObject result = new ArrayObject();
+        result.elements.addAll(Arrays.asList(results));
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, results.length);
+        return result;
+    }
+
+    /**
+     * filter的并行版本,函数结果并行计算,保留的元素顺序与原数组一致<br/>
+     * pfilter(array, function)
+     *
+     * @param args 可变参数(应该为2个元素,第一个参数为数组对象,第二个参数为函数)
+     * @return 数组对象或ErrorObject对象
+     */
+    private static Object pfilter(Object... args) {
+        Object error = checkArrayFunction("pfilter", 2, args);
+        if (error != null) {
+            return error;
+        }
+        Object[] elements = ((ArrayObject) args[0]).elements.toArray(new Object[0]);
+        Object[] results = new Object[elements.length];
+        error = ParallelUtils.map(elements, args[1], "pfilter", results);
+        if (error != null) {
+            return error;
+        }
+        ArrayObject result = new ArrayObject();
+        for (int i = 0; i < elements.length; i++) {
+            if (ObjectUtils.convertToBoolean(results[i]).value) {
+                result.elements.add(elements[i]);
+            }
+        }
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, result.elements.size());
+        return result;
+    }
+
+    /**
+     * reduce的并行版本,函数需要满足结合律,初始值需要是函数的单位元(如加法的0)<br/>
+     * preduce(array, function, identity)
+     *
+     * @param args 可变参数(应该为3个元素)
+     * @return 归约结果或ErrorObject对象
+     */
+    private static Object preduce(Object... args) {
+        Object error = checkArrayFunction("preduce", 3, args);
+        if (error != null) {
+            return error;
+        }
+        Object[] elements = ((ArrayObject) args[0]).elements.toArray(new Object[0]);
+        return ParallelUtils.reduce(elements, args[1], "preduce", args[2]);
     }
 
     /**
@@ -202,12 +410,147 @@ public class BuiltInEnvironment extends Environment {
      * @return NullObject对象
      */
     private static Object puts(Object... args) {
+        PrintStream out = ExecutionContext.out();
         for (Object arg : args) {
-            System.out.println(arg);
+            out.println(arg);
         }
         return NullObject.getInstance();
     }
 
+    /**
+     * 按行惰性读取文件或标准输入,每次只读取一行,不会把整个文件读入内存<br/>
+     * lines([path]),不传参数或path为"-"时读取标准输入
+     *
+     * @param args 可变参数(应该为0或1个字符串)
+     * @return LinesObject对象或ErrorObject对象
+     */
+    private static Object lines(Object... args) {
+        if (args.length > 1) {
+            return new ErrorObject(String.format("the function {lines} get wrong number of arguments,want 0 or 1 argument but real get %d", args.length));
+        }
+        try {
+            return new LinesObject(openLines("lines", args.length == 0 ? null : args[0]));
+        } catch (IOException | IllegalArgumentException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 读取一行,不含换行符;读完时返回null<br/>
+     * readLine([lines]),不传参数时读取标准输入
+     *
+     * @param args 可变参数(应该为0或1个元素)
+     * @return StringObject对象、NullObject对象或ErrorObject对象
+     */
+    private static Object readLine(Object... args) {
+        if (args.length > 1) {
+            return new ErrorObject(String.format("the function {readLine} get wrong number of arguments,want 0 or 1 argument but real get %d", args.length));
+        }
+        if (args.length == 1 && args[0].getType() != ObjectType.LINES_OBJECT) {
+            return new ErrorObject(String.format("argument to {readLine} must be Lines, get %s", args[0].getType()));
+        }
+        try {
+            String line = args.length == 0 ? LineReader.stdin().readLine() : ((LinesObject) args[0]).next();
+            return line == null ? NullObject.getInstance() : lineObject(line);
+        } catch (IOException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 对文件、标准输入或行迭代器的每一行调用函数,读取完毕或函数返回错误时结束,文件会被关闭<br/>
+     * forEachLine(source, function(line) {...}),source为路径、"-"(标准输入)或lines的结果
+     *
+     * @param args 可变参数(应该为2个元素)
+     * @return 读取的行数或ErrorObject对象
+     */
+    private static Object forEachLine(Object... args) {
+        if (args.length != 2) {
+            return new ErrorObject(String.format("the function {forEachLine} get wrong number of arguments,want 2 argument but real get %d", args.length));
+        }
+        if (!ObjectUtils.isFunction(args[1])) {
+            return new ErrorObject(String.format("argument to {forEachLine} must be a function, get %s", args[1].getType()));
+        }
+        LinesObject lines;
+        try {
+            lines = args[0].getType() == ObjectType.LINES_OBJECT ? (LinesObject) args[0] :
+                    new LinesObject(openLines("forEachLine", args[0]));
+        } catch (IOException | IllegalArgumentException e) {
+            return new ErrorObject(e.getMessage());
+        }
+        Object result = eachLine(lines, args[1], "forEachLine");
+        if (lines != args[0]) {
+            try {
+                lines.close();
+            } catch (IOException e) {
+                return new ErrorObject(e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 打开行读取的来源
+     *
+     * @param name   内置函数名
+     * @param source 路径字符串,为null或"-"时为标准输入
+     * @return reader
+     * @throws IOException              打开失败
+     * @throws IllegalArgumentException 来源不是字符串
+     */
+    @IgnoreMethod
+    private static LineReader openLines(String name, Object source) throws IOException {
+        if (source == null) {
+            return LineReader.stdin();
+        }
+        if (source.getType() != ObjectType.STRING_OBJECT) {
+            throw new IllegalArgumentException(String.format("argument to {%s} must be a path, get %s", name, source.getType()));
+        }
+        String path = ((StringObject) source).value;
+        if ("-".equals(path)) {
+            return LineReader.stdin();
+        }
+        try {
+            return LineReader.open(Paths.get(path));
+        } catch (IOException e) {
+            throw new IOException(String.format("can't read %s: %s", path, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * 对行迭代器剩余的每一行调用函数
+     *
+     * @param lines    行迭代器
+     * @param function 函数
+     * @param name     内置函数名
+     * @return 读取的行数或ErrorObject对象
+     */
+    @IgnoreMethod
+    private static Object eachLine(LinesObject lines, Object function, String name) {
+        long count = 0;
+        try {
+            String line;
+            while ((line = lines.next()) != null) {
+                count++;
+                Object value = ParallelUtils.call(function, name, lineObject(line));
+                if (ObjectUtils.isError(value)) {
+                    return value;
+                }
+            }
+        } catch (IOException e) {
+            return new ErrorObject(e.getMessage());
+        }
+        return new IntegerObject(count);
+    }
+
+    @IgnoreMethod
+    private static StringObject lineObject(String line) {
+        ExecutionContext.recordAllocation(2L * line.length());
+        StringObject string = new StringObject();
+        string.value = line;
+        return string;
+    }
+
     /**
      * 拷贝对象
      *
@@ -223,9 +566,161 @@ public class BuiltInEnvironment extends Environment {
         if (!Cloneable.class.isAssignableFrom(object.getClass())) {
             return new ErrorObject(String.format("the type of %s not support clone", object.getType()));
         }
+        // 已冻结的对象不会再被修改,无需拷贝
+        if (ObjectUtils.isFrozen(object)) {
+            return object;
+        }
         return ((Cloneable) object).cloneObject();
     }
 
+    /**
+     * 冻结对象并返回,数组和哈希会连同其中的元素一起冻结;
+     * 冻结后的对象不可修改,可以不经拷贝地交给其它任务或脚本共享<br/>
+     * freeze(value)
+     *
+     * @param args 可变参数(应该为1个元素)
+     * @return 被冻结的对象或ErrorObject对象
+     */
+    private static Object freeze(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {freeze} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0] instanceof Freezable) {
+            ((Freezable) args[0]).freeze();
+        }
+        return args[0];
+    }
+
+    /**
+     * 判断对象是否已冻结<br/>
+     * isFrozen(value)
+     *
+     * @param args 可变参数(应该为1个元素)
+     * @return BooleanObject对象或ErrorObject对象
+     */
+    private static Object isFrozen(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {isFrozen} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        return BooleanObject.getInstance(ObjectUtils.isFrozen(args[0]));
+    }
+
+    /**
+     * 将数据值编码为紧凑的二进制格式,结果为每个字符对应一个字节的字符串<br/>
+     * 支持null、布尔、整数、浮点数、字符串、数组及哈希,共享引用、循环引用及冻结状态都会保留<br/>
+     * serialize(value)
+     *
+     * @param args 可变参数(应该为1个元素)
+     * @return StringObject对象或ErrorObject对象
+     */
+    private static Object serialize(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {serialize} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        ByteBuffer content;
+        try {
+            SnapshotWriter writer = new SnapshotWriter(true);
+            writer.writeObject(args[0]);
+            content = writer.toByteBuffer();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new ErrorObject(e.getMessage());
+        }
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        ExecutionContext.recordAllocation(2L * bytes.length);
+        StringObject result = new StringObject();
+        result.value = new String(bytes, StandardCharsets.ISO_8859_1);
+        return result;
+    }
+
+    /**
+     * 解码serialize的结果<br/>
+     * deserialize(bytes)
+     *
+     * @param args 可变参数(应该为1个元素)
+     * @return 解码得到的对象或ErrorObject对象
+     */
+    private static Object deserialize(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {deserialize} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.STRING_OBJECT) {
+            return new ErrorObject(String.format("the function {deserialize} want a string but get %s", args[0].getType()));
+        }
+        return readValue(ByteBuffer.wrap(((StringObject) args[0]).value.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * 将数据值编码后写入文件,先写临时文件再替换,大文件使用内存映射<br/>
+     * serializeFile(path, value)
+     *
+     * @param args 可变参数(应该为2个元素)
+     * @return 写入的字节数或ErrorObject对象
+     */
+    private static Object serializeFile(Object... args) {
+        if (args.length != 2) {
+            return new ErrorObject(String.format("the function {serializeFile} get wrong number of arguments,want 2 arguments but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.STRING_OBJECT) {
+            return new ErrorObject(String.format("the first argument of {serializeFile} should be a string path but get %s", args[0].getType()));
+        }
+        SnapshotWriter writer = new SnapshotWriter(true);
+        try {
+            writer.writeObject(args[1]);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new ErrorObject(e.getMessage());
+        }
+        try {
+            HeapSnapshot.write(Paths.get(((StringObject) args[0]).value), HeapSnapshot.KIND_VALUE, writer.toByteBuffer());
+        } catch (IOException | InvalidPathException e) {
+            return new ErrorObject(String.format("can't write %s: %s", args[0], e.getMessage()));
+        }
+        return new IntegerObject((long) writer.size());
+    }
+
+    /**
+     * 读取serializeFile写入的文件,文件头部及校验和不正确时返回错误<br/>
+     * deserializeFile(path)
+     *
+     * @param args 可变参数(应该为1个元素)
+     * @return 解码得到的对象或ErrorObject对象
+     */
+    private static Object deserializeFile(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {deserializeFile} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.STRING_OBJECT) {
+            return new ErrorObject(String.format("the function {deserializeFile} want a string path but get %s", args[0].getType()));
+        }
+        ByteBuffer content;
+        try {
+            content = HeapSnapshot.read(Paths.get(((StringObject) args[0]).value), HeapSnapshot.KIND_VALUE);
+        } catch (IOException | InvalidPathException e) {
+            return new ErrorObject(String.format("can't read %s: %s", args[0], e.getMessage()));
+        }
+        return readValue(content);
+    }
+
+    /**
+     * 从缓冲区解码恰好一个数据值
+     *
+     * @param content 编码后的内容
+     * @return 对象或ErrorObject对象
+     */
+    @IgnoreMethod
+    private static Object readValue(ByteBuffer content) {
+        SnapshotReader reader = new SnapshotReader(content, true);
+        try {
+            Object value = reader.readObject();
+            if (reader.hasRemaining()) {
+                return new ErrorObject("can't deserialize: there is trailing data after the value");
+            }
+            return value;
+        } catch (IOException e) {
+            return new ErrorObject("can't deserialize: " + e.getMessage());
+        }
+    }
+
     /**
      * 列举出所有的内置函数
      *
@@ -239,11 +734,739 @@ public class BuiltInEnvironment extends Environment {
             if (annotation != null || method.isSynthetic()) {
                 continue;
             }
-            System.out.println(method.getName());
+            ExecutionContext.out().println(method.getName());
+        }
+        return NullObject.getInstance();
+    }
+
+    /**
+     * 打印当前线程最近的执行轨迹
+     *
+     * @param args 可变参数(可为空,或为1个整数表示最多打印的事件数)
+     * @return NullObject对象
+     */
+    private static Object trace(Object... args) {
+        if (args.length > 1) {
+            return new ErrorObject(String.format("the function {trace} get wrong number of arguments,want 0 or 1 argument but real get %d", args.length));
+        }
+        int limit = Integer.MAX_VALUE;
+        if (args.length == 1) {
+            if (args[0].getType() != ObjectType.INTEGER_OBJECT) {
+                return new ErrorObject(String.format("argument to {trace} must be Integer, get %s", args[0].getType()));
+            }
+            long value = ((IntegerObject) args[0]).value;
+            if (value < 0) {
+                return new ErrorObject(String.format("argument to {trace} must not be negative, get %d", value));
+            }
+            limit = (int) Math.min(value, Integer.MAX_VALUE);
         }
+        Tracer.dump(ExecutionContext.out(), limit);
         return NullObject.getInstance();
     }
 
+    /**
+     * 使当前执行暂停指定的毫秒数,在虚拟线程中暂停时不会占用平台线程
+     *
+     * @param args 可变参数(长度应该为1,为毫秒数)
+     * @return NullObject对象或ErrorObject对象
+     */
+    private static Object sleep(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {sleep} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.INTEGER_OBJECT) {
+            return new ErrorObject(String.format("argument to {sleep} must be Integer, get %s", args[0].getType()));
+        }
+        // 最长等待到当前执行的截止时刻,被取消时由中断立即唤醒
+        long nanos = Math.min(TimeUnit.MILLISECONDS.toNanos(((IntegerObject) args[0]).value), ExecutionContext.remainingNanos());
+        CancelInterrupter interrupter = CancelInterrupter.arm();
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            if (ExecutionContext.poll() == null) {
+                Thread.currentThread().interrupt();
+                return new ErrorObject("the function {sleep} is interrupted");
+            }
+        } finally {
+            interrupter.disarm();
+        }
+        ErrorObject aborted = ExecutionContext.poll();
+        return aborted != null ? aborted : NullObject.getInstance();
+    }
+
+    /**
+     * 在其它线程中调用函数,立即返回任务对象;任务继承当前的执行上下文及调用深度<br/>
+     * spawn(function, args...)
+     *
+     * @param args 可变参数(第一个参数为函数,其余为函数的参数)
+     * @return TaskObject对象或ErrorObject对象
+     */
+    private static Object spawn(Object... args) {
+        if (args.length < 1) {
+            return new ErrorObject("the function {spawn} need at least 1 argument but real get 0");
+        }
+        if (!ObjectUtils.isFunction(args[0])) {
+            return new ErrorObject(String.format("argument to {spawn} must be a function, get %s", args[0].getType()));
+        }
+        Object function = args[0];
+        Object[] arguments = Arrays.copyOfRange(args, 1, args.length);
+        ExecutionContext context = ExecutionContext.current();
+        // 任务从调用处的深度继续计算,避免通过await(spawn(...))递归绕过调用深度限制
+        int depth = Evaluator.getCallDepth();
+        return new TaskObject(ThreadUtils.taskExecutor().submit(() -> {
+            ExecutionContext previous = ExecutionContext.enter(context);
+            int previousDepth = Evaluator.setCallDepth(depth);
+            try {
+                return ParallelUtils.call(function, "spawn", arguments);
+            } finally {
+                Evaluator.setCallDepth(previousDepth);
+                ExecutionContext.exit(previous);
+            }
+        }));
+    }
+
+    /**
+     * 等待任务结束并返回其结果,任务的错误作为ErrorObject返回<br/>
+     * await(task[, timeout]),timeout为毫秒数
+     *
+     * @param args 可变参数(应该为1或2个元素)
+     * @return 任务结果或ErrorObject对象
+     */
+    private static Object await(Object... args) {
+        if (args.length != 1 && args.length != 2) {
+            return new ErrorObject(String.format("the function {await} get wrong number of arguments,want 1 or 2 arguments but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.TASK_OBJECT) {
+            return new ErrorObject(String.format("argument to {await} must be Task, get %s", args[0].getType()));
+        }
+        long timeout = -1;
+        if (args.length == 2) {
+            if (args[1].getType() != ObjectType.INTEGER_OBJECT) {
+                return new ErrorObject(String.format("argument to {await} must be Integer, get %s", args[1].getType()));
+            }
+            timeout = ((IntegerObject) args[1]).value;
+        }
+        return awaitTask((TaskObject) args[0], timeout);
+    }
+
+    /**
+     * 等待数组中的所有任务结束,返回按顺序排列的结果数组;存在错误时返回第一个错误<br/>
+     * awaitAll(tasks)
+     *
+     * @param args 可变参数(应该为1个任务数组)
+     * @return 数组对象或ErrorObject对象
+     */
+    private static Object awaitAll(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {awaitAll} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.ARRAY_OBJECT) {
+            return new ErrorObject(String.format("the object is not a array,it's real type is %s", args[0].getType()));
+        }
+        ArrayObject result = new ArrayObject();
+        Object error = null;
+        for (Object element : ((ArrayObject) args[0]).elements.toArray(new Object[0])) {
+            if (element.getType() != ObjectType.TASK_OBJECT) {
+                return new ErrorObject(String.format("argument to {awaitAll} must be an array of Task, get %s", element.getType()));
+            }
+            // 出现错误后仍然等待其余任务结束
+            Object value = awaitTask((TaskObject) element, -1);
+            if (error == null && ObjectUtils.isError(value)) {
+                error = value;
+            }
+            result.elements.add(value);
+        }
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, result.elements.size());
+        return error != null ? error : result;
+    }
+
+    /**
+     * 等待任务结束
+     *
+     * @param task    任务对象
+     * @param timeout 超时毫秒数,小于0时一直等待
+     * @return 任务结果或ErrorObject对象
+     */
+    @IgnoreMethod
+    private static Object awaitTask(TaskObject task, long timeout) {
+        // 最长等待到await或当前执行的截止时刻,被取消时由中断立即唤醒
+        long remaining = ExecutionContext.remainingNanos();
+        long wait = timeout < 0 ? remaining : Math.min(TimeUnit.MILLISECONDS.toNanos(timeout), remaining);
+        CancelInterrupter interrupter = CancelInterrupter.arm();
+        try {
+            Object value = wait == Long.MAX_VALUE ? task.future.get() : task.future.get(wait, TimeUnit.NANOSECONDS);
+            return value == null ? NullObject.getInstance() : value;
+        } catch (InterruptedException e) {
+            ErrorObject aborted = ExecutionContext.poll();
+            if (aborted != null) {
+                return aborted;
+            }
+            Thread.currentThread().interrupt();
+            return new ErrorObject("the function {await} is interrupted");
+        } catch (ExecutionException e) {
+            return new ErrorObject("task failed," + e.getCause());
+        } catch (TimeoutException e) {
+            ErrorObject aborted = ExecutionContext.poll();
+            return aborted != null ? aborted : new ErrorObject(String.format("the task is not finished in %d ms", timeout));
+        } catch (CancellationException e) {
+            return new ErrorObject("the task is cancelled");
+        } finally {
+            interrupter.disarm();
+        }
+    }
+
+    /**
+     * 创建有界通道<br/>
+     * channel(capacity)
+     *
+     * @param args 可变参数(应该为1个正整数)
+     * @return ChannelObject对象或ErrorObject对象
+     */
+    private static Object channel(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {channel} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.INTEGER_OBJECT || ((IntegerObject) args[0]).value <= 0) {
+            return new ErrorObject(String.format("argument to {channel} must be a positive Integer, get %s", args[0]));
+        }
+        return new ChannelObject(((IntegerObject) args[0]).value.intValue());
+    }
+
+    /**
+     * 向通道发送数据,通道满时阻塞;null用于表示通道已关闭,不能发送<br/>
+     * send(channel, value)
+     *
+     * @param args 可变参数(应该为2个元素)
+     * @return NullObject对象或ErrorObject对象
+     */
+    private static Object send(Object... args) {
+        Object error = checkChannel("send", 2, args);
+        if (error != null) {
+            return error;
+        }
+        if (args[1].getType() == ObjectType.NULL_OBJECT) {
+            return new ErrorObject("the function {send} can't send null,null means the channel is closed");
+        }
+        try {
+            if (!((ChannelObject) args[0]).send(args[1])) {
+                ErrorObject aborted = ExecutionContext.poll();
+                return aborted != null ? aborted : new ErrorObject("the function {send} can't send to a closed channel");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ErrorObject("the function {send} is interrupted");
+        }
+        return NullObject.getInstance();
+    }
+
+    /**
+     * 从通道接收数据,通道空时阻塞;通道关闭且没有剩余数据时返回null<br/>
+     * recv(channel)
+     *
+     * @param args 可变参数(应该为1个通道)
+     * @return 数据或ErrorObject对象
+     */
+    private static Object recv(Object... args) {
+        Object error = checkChannel("recv", 1, args);
+        if (error != null) {
+            return error;
+        }
+        try {
+            Object value = ((ChannelObject) args[0]).receive();
+            if (value == null) {
+                ErrorObject aborted = ExecutionContext.poll();
+                return aborted != null ? aborted : NullObject.getInstance();
+            }
+            return value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ErrorObject("the function {recv} is interrupted");
+        }
+    }
+
+    /**
+     * 不阻塞地从通道接收数据,没有数据时返回null<br/>
+     * tryRecv(channel)
+     *
+     * @param args 可变参数(应该为1个通道)
+     * @return 数据或ErrorObject对象
+     */
+    private static Object tryRecv(Object... args) {
+        Object error = checkChannel("tryRecv", 1, args);
+        if (error != null) {
+            return error;
+        }
+        Object value = ((ChannelObject) args[0]).tryReceive();
+        return value == null ? NullObject.getInstance() : value;
+    }
+
+    /**
+     * 关闭通道,之后不能再发送,接收方取完剩余数据后结束;
+     * 也可以关闭kvOpen打开的存储(同一文件的所有存储都关闭后释放文件)或lines打开的文件<br/>
+     * close(channel),close(store),close(lines)
+     *
+     * @param args 可变参数(应该为1个通道、存储或行迭代器)
+     * @return NullObject对象或ErrorObject对象
+     */
+    private static Object close(Object... args) {
+        if (args.length == 1 && args[0].getType() == ObjectType.LINES_OBJECT) {
+            try {
+                ((LinesObject) args[0]).close();
+                return NullObject.getInstance();
+            } catch (IOException e) {
+                return new ErrorObject(e.getMessage());
+            }
+        }
+        if (args.length == 1 && args[0].getType() == ObjectType.STORE_OBJECT) {
+            try {
+                ((StoreObject) args[0]).close();
+                return NullObject.getInstance();
+            } catch (IOException e) {
+                return new ErrorObject(e.getMessage());
+            }
+        }
+        Object error = checkChannel("close", 1, args);
+        if (error != null) {
+            return error;
+        }
+        ((ChannelObject) args[0]).close();
+        return NullObject.getInstance();
+    }
+
+    /**
+     * 从多个通道中接收最先到达的数据,返回[通道下标, 数据];所有通道都已关闭或超时时返回null<br/>
+     * select(channels[, timeout]),timeout为毫秒数
+     *
+     * @param args 可变参数(应该为1或2个元素)
+     * @return 数组对象或ErrorObject对象
+     */
+    private static Object select(Object... args) {
+        if (args.length != 1 && args.length != 2) {
+            return new ErrorObject(String.format("the function {select} get wrong number of arguments,want 1 or 2 arguments but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.ARRAY_OBJECT) {
+            return new ErrorObject(String.format("the object is not a array,it's real type is %s", args[0].getType()));
+        }
+        Object[] channels = ((ArrayObject) args[0]).elements.toArray(new Object[0]);
+        for (Object channel : channels) {
+            if (channel.getType() != ObjectType.CHANNEL_OBJECT) {
+                return new ErrorObject(String.format("argument to {select} must be an array of Channel, get %s", channel.getType()));
+            }
+        }
+        boolean timed = args.length == 2;
+        long deadline = 0;
+        if (timed) {
+            if (args[1].getType() != ObjectType.INTEGER_OBJECT) {
+                return new ErrorObject(String.format("argument to {select} must be Integer, get %s", args[1].getType()));
+            }
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(((IntegerObject) args[1]).value);
+        }
+        // 登记到每个通道后再检查,检查之后到达的数据或关闭会唤醒当前线程
+        Thread thread = Thread.currentThread();
+        Runnable wakeup = () -> LockSupport.unpark(thread);
+        for (Object channel : channels) {
+            ((ChannelObject) channel).addSelector(thread);
+        }
+        ExecutionContext.onCancel(wakeup);
+        try {
+            while (true) {
+                boolean drained = true;
+                for (int i = 0; i < channels.length; i++) {
+                    ChannelObject channel = (ChannelObject) channels[i];
+                    Object value = channel.tryReceive();
+                    if (value != null) {
+                        ArrayObject result = new ArrayObject();
+                        result.elements.add(new IntegerObject((long) i));
+                        result.elements.add(value);
+                        return result;
+                    }
+                    drained &= channel.isDrained();
+                }
+                if (drained || timed && deadline - System.nanoTime() <= 0) {
+                    return NullObject.getInstance();
+                }
+                ErrorObject aborted = ExecutionContext.poll();
+                if (aborted != null) {
+                    return aborted;
+                }
+                // 最长等待到select或当前执行的截止时刻
+                long wait = ExecutionContext.remainingNanos();
+                if (timed) {
+                    wait = Math.min(wait, deadline - System.nanoTime());
+                }
+                if (wait == Long.MAX_VALUE) {
+                    LockSupport.park(channels);
+                } else {
+                    LockSupport.parkNanos(channels, wait);
+                }
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return new ErrorObject("the function {select} is interrupted");
+                }
+            }
+        } finally {
+            ExecutionContext.removeOnCancel(wakeup);
+            for (Object channel : channels) {
+                ((ChannelObject) channel).removeSelector(thread);
+            }
+        }
+    }
+
+    /**
+     * 对数组的每个元素,通道中直到关闭前的每个数据,或者行迭代器剩余的每一行调用函数<br/>
+     * forEach(arrayOrChannel, function)
+     *
+     * @param args 可变参数(应该为2个元素)
+     * @return NullObject对象或ErrorObject对象
+     */
+    private static Object forEach(Object... args) {
+        if (args.length != 2) {
+            return new ErrorObject(String.format("the function {forEach} get wrong number of arguments,want 2 argument but real get %d", args.length));
+        }
+        if (!ObjectUtils.isFunction(args[1])) {
+            return new ErrorObject(String.format("argument to {forEach} must be a function, get %s", args[1].getType()));
+        }
+        switch (args[0].getType()) {
+            case ARRAY_OBJECT:
+                for (Object element : ((ArrayObject) args[0]).elements.toArray(new Object[0])) {
+                    Object value = ParallelUtils.call(args[1], "forEach", element);
+                    if (ObjectUtils.isError(value)) {
+                        return value;
+                    }
+                }
+                return NullObject.getInstance();
+            case CHANNEL_OBJECT:
+                try {
+                    ChannelObject channel = (ChannelObject) args[0];
+                    Object element;
+                    while ((element = channel.receive()) != null) {
+                        Object value = ParallelUtils.call(args[1], "forEach", element);
+                        if (ObjectUtils.isError(value)) {
+                            return value;
+                        }
+                    }
+                    ErrorObject aborted = ExecutionContext.poll();
+                    return aborted != null ? aborted : NullObject.getInstance();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new ErrorObject("the function {forEach} is interrupted");
+                }
+            case LINES_OBJECT: {
+                Object result = eachLine((LinesObject) args[0], args[1], "forEach");
+                return ObjectUtils.isError(result) ? result : NullObject.getInstance();
+            }
+            default:
+                return new ErrorObject(String.format("argument to {forEach} must be Array, Channel or Lines, get %s", args[0].getType()));
+        }
+    }
+
+    /**
+     * 创建可在多个任务间共享的并发哈希,下标、+、-、size等语义与普通哈希相同<br/>
+     * concurrentHash([hash]),可以传入哈希作为初始内容
+     *
+     * @param args 可变参数(应该为0或1个哈希)
+     * @return HashObject对象或ErrorObject对象
+     */
+    private static Object concurrentHash(Object... args) {
+        if (args.length > 1) {
+            return new ErrorObject(String.format("the function {concurrentHash} get wrong number of arguments,want 0 or 1 argument but real get %d", args.length));
+        }
+        HashObject result = new HashObject(new ConcurrentHashMap<>());
+        if (args.length == 1) {
+            if (args[0].getType() != ObjectType.HASH_OBJECT) {
+                return new ErrorObject(String.format("argument to {concurrentHash} must be Hash, get %s", args[0].getType()));
+            }
+            result.hashMap.putAll(((HashObject) args[0]).hashMap);
+        }
+        return result;
+    }
+
+    /**
+     * 创建可在多个任务间共享的写时复制数组,适合读多写少的场景,下标、+、-、size等语义与普通数组相同<br/>
+     * concurrentArray([array]),可以传入数组作为初始内容
+     *
+     * @param args 可变参数(应该为0或1个数组)
+     * @return ArrayObject对象或ErrorObject对象
+     */
+    private static Object concurrentArray(Object... args) {
+        if (args.length > 1) {
+            return new ErrorObject(String.format("the function {concurrentArray} get wrong number of arguments,want 0 or 1 argument but real get %d", args.length));
+        }
+        if (args.length == 1 && args[0].getType() != ObjectType.ARRAY_OBJECT) {
+            return new ErrorObject(String.format("argument to {concurrentArray} must be Array, get %s", args[0].getType()));
+        }
+        return new ArrayObject(args.length == 1
+                ? new CopyOnWriteArrayList<>(((ArrayObject) args[0]).elements)
+                : new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * 键不存在时调用函数计算值并放入哈希,返回哈希中最终的值;
+     * 并发哈希上多个任务同时计算时只有一个结果会被放入<br/>
+     * computeIfAbsent(hash, key, function),函数以key为参数
+     *
+     * @param args 可变参数(应该为3个元素)
+     * @return 哈希中的值或ErrorObject对象
+     */
+    private static Object computeIfAbsent(Object... args) {
+        Object error = checkHashUpdate("computeIfAbsent", 3, args);
+        if (error != null) {
+            return error;
+        }
+        Map<Object, Object> map = ((HashObject) args[0]).hashMap;
+        Object value = map.get(args[1]);
+        if (value != null) {
+            return value;
+        }
+        // 解释器函数可能耗时较长或再次访问该哈希,因此不在ConcurrentHashMap.compute的锁内执行;
+        // 函数拿到的是键的拷贝,原地修改不会影响放入哈希的键
+        value = ParallelUtils.call(args[2], "computeIfAbsent", copyForCallback(args[1]));
+        if (ObjectUtils.isError(value)) {
+            return value;
+        }
+        Object previous = map.putIfAbsent(args[1], value);
+        if (previous == null) {
+            AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, 1);
+            return value;
+        }
+        return previous;
+    }
+
+    /**
+     * 键不存在时放入value,否则以(旧值, value)调用函数并用结果替换旧值,返回新值;
+     * 并发哈希上以比较并替换的方式重试,不会丢失其它任务的更新<br/>
+     * merge(hash, key, value, function)
+     *
+     * @param args 可变参数(应该为4个元素)
+     * @return 哈希中的新值或ErrorObject对象
+     */
+    private static Object merge(Object... args) {
+        Object error = checkHashUpdate("merge", 4, args);
+        if (error != null) {
+            return error;
+        }
+        Map<Object, Object> map = ((HashObject) args[0]).hashMap;
+        while (true) {
+            Object previous = map.get(args[1]);
+            if (previous == null) {
+                if (map.putIfAbsent(args[1], args[2]) == null) {
+                    AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, 1);
+                    return args[2];
+                }
+                continue;
+            }
+            // 函数拿到的是旧值的拷贝,即使原地修改(如+=)并返回,哈希中的旧值也保持不变,
+            // 其它任务先完成更新时replace失败并以新的旧值重试
+            Object value = ParallelUtils.call(args[3], "merge", copyForCallback(previous), args[2]);
+            if (ObjectUtils.isError(value)) {
+                return value;
+            }
+            if (map.replace(args[1], previous, value)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 创建原子计数器<br/>
+     * atomicCounter([initial])
+     *
+     * @param args 可变参数(应该为0或1个整数)
+     * @return CounterObject对象或ErrorObject对象
+     */
+    private static Object atomicCounter(Object... args) {
+        if (args.length > 1) {
+            return new ErrorObject(String.format("the function {atomicCounter} get wrong number of arguments,want 0 or 1 argument but real get %d", args.length));
+        }
+        if (args.length == 1 && args[0].getType() != ObjectType.INTEGER_OBJECT) {
+            return new ErrorObject(String.format("argument to {atomicCounter} must be Integer, get %s", args[0].getType()));
+        }
+        return new CounterObject(args.length == 1 ? ((IntegerObject) args[0]).value : 0);
+    }
+
+    /**
+     * 原子地增加计数器的值,不返回累加后的值以避免争用<br/>
+     * increment(counter[, delta]),delta默认为1
+     *
+     * @param args 可变参数(应该为1或2个元素)
+     * @return NullObject对象或ErrorObject对象
+     */
+    private static Object increment(Object... args) {
+        if (args.length != 1 && args.length != 2) {
+            return new ErrorObject(String.format("the function {increment} get wrong number of arguments,want 1 or 2 arguments but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.COUNTER_OBJECT) {
+            return new ErrorObject(String.format("argument to {increment} must be Counter, get %s", args[0].getType()));
+        }
+        if (args.length == 2 && args[1].getType() != ObjectType.INTEGER_OBJECT) {
+            return new ErrorObject(String.format("argument to {increment} must be Integer, get %s", args[1].getType()));
+        }
+        ((CounterObject) args[0]).adder.add(args.length == 2 ? ((IntegerObject) args[1]).value : 1);
+        return NullObject.getInstance();
+    }
+
+    /**
+     * 读取计数器当前的值<br/>
+     * counterValue(counter)
+     *
+     * @param args 可变参数(应该为1个计数器)
+     * @return IntegerObject对象或ErrorObject对象
+     */
+    private static Object counterValue(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {counterValue} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.COUNTER_OBJECT) {
+            return new ErrorObject(String.format("argument to {counterValue} must be Counter, get %s", args[0].getType()));
+        }
+        return new IntegerObject(((CounterObject) args[0]).adder.sum());
+    }
+
+    /**
+     * 打开持久化键值存储,文件不存在时创建;记录追加写入内存映射的日志,进程崩溃后不会丢失已完成的写入<br/>
+     * kvOpen(path)
+     *
+     * @param args 可变参数(应该为1个字符串)
+     * @return StoreObject对象或ErrorObject对象
+     */
+    private static Object kvOpen(Object... args) {
+        if (args.length != 1) {
+            return new ErrorObject(String.format("the function {kvOpen} get wrong number of arguments,want 1 argument but real get %d", args.length));
+        }
+        if (args[0].getType() != ObjectType.STRING_OBJECT) {
+            return new ErrorObject(String.format("the function {kvOpen} want a string path but get %s", args[0].getType()));
+        }
+        try {
+            return new StoreObject(KeyValueStore.open(Paths.get(((StringObject) args[0]).value)));
+        } catch (IOException | InvalidPathException e) {
+            return new ErrorObject(String.format("can't open %s: %s", args[0], e.getMessage()));
+        }
+    }
+
+    /**
+     * 读取键对应的值,键不存在时返回null<br/>
+     * kvGet(store, key)
+     *
+     * @param args 可变参数(应该为2个元素)
+     * @return 值或ErrorObject对象
+     */
+    private static Object kvGet(Object... args) {
+        Object error = checkStore("kvGet", 2, args);
+        if (error != null) {
+            return error;
+        }
+        try {
+            Object value = ((StoreObject) args[0]).store.get(args[1]);
+            return value == null ? NullObject.getInstance() : value;
+        } catch (IOException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 写入键值,键需要可hash,键和值只能由null、布尔、数字、字符串、数组及哈希组成<br/>
+     * kvPut(store, key, value)
+     *
+     * @param args 可变参数(应该为3个元素)
+     * @return 写入的值或ErrorObject对象
+     */
+    private static Object kvPut(Object... args) {
+        Object error = checkStore("kvPut", 3, args);
+        if (error != null) {
+            return error;
+        }
+        try {
+            ((StoreObject) args[0]).store.put(args[1], args[2]);
+            return args[2];
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 删除键<br/>
+     * kvDelete(store, key)
+     *
+     * @param args 可变参数(应该为2个元素)
+     * @return 键是否存在或ErrorObject对象
+     */
+    private static Object kvDelete(Object... args) {
+        Object error = checkStore("kvDelete", 2, args);
+        if (error != null) {
+            return error;
+        }
+        try {
+            return BooleanObject.getInstance(((StoreObject) args[0]).store.delete(args[1]));
+        } catch (IOException | IllegalArgumentException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 读取全部键值,或键以prefix开头的字符串键的键值<br/>
+     * kvScan(store[, prefix])
+     *
+     * @param args 可变参数(应该为1或2个元素)
+     * @return HashObject对象或ErrorObject对象
+     */
+    private static Object kvScan(Object... args) {
+        Object error = checkStore("kvScan", args.length == 2 ? 2 : 1, args);
+        if (error != null) {
+            return error;
+        }
+        if (args.length == 2 && args[1].getType() != ObjectType.STRING_OBJECT) {
+            return new ErrorObject(String.format("the prefix of {kvScan} should be a string but get %s", args[1].getType()));
+        }
+        try {
+            HashObject result = new HashObject();
+            result.hashMap.putAll(((StoreObject) args[0]).store.scan(args.length == 2 ? ((StringObject) args[1]).value : null));
+            return result;
+        } catch (IOException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 将已写入的记录强制写入磁盘,之后即使操作系统崩溃也不会丢失<br/>
+     * kvFlush(store)
+     *
+     * @param args 可变参数(应该为1个存储)
+     * @return NullObject对象或ErrorObject对象
+     */
+    private static Object kvFlush(Object... args) {
+        Object error = checkStore("kvFlush", 1, args);
+        if (error != null) {
+            return error;
+        }
+        try {
+            ((StoreObject) args[0]).store.flush();
+            return NullObject.getInstance();
+        } catch (IOException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
+    /**
+     * 立即压缩日志,只保留每个键最新的记录;失效记录较多时写入操作会自动压缩<br/>
+     * kvCompact(store)
+     *
+     * @param args 可变参数(应该为1个存储)
+     * @return 压缩后的日志字节数或ErrorObject对象
+     */
+    private static Object kvCompact(Object... args) {
+        Object error = checkStore("kvCompact", 1, args);
+        if (error != null) {
+            return error;
+        }
+        try {
+            KeyValueStore store = ((StoreObject) args[0]).store;
+            store.compact();
+            return new IntegerObject((long) store.getLogSize());
+        } catch (IOException e) {
+            return new ErrorObject(e.getMessage());
+        }
+    }
+
     /**
      * 调用Java的函数,参数要求形如<br/>
      * callJava("com.example.JavaClass","javaMethod",instance,args...);
@@ -255,18 +1478,23 @@ public class BuiltInEnvironment extends Environment {
         if (args.length < 3) {
             return new ErrorObject(String.format("the function {callJava} need at least 3 arguments but real get %d", args.length));
         }
+        Events.CallJavaHandle event = Events.callJava();
+        String className = null;
+        String methodName = null;
+        boolean success = false;
         try {
             // 获取类名
-            String className = getString(args[0]);
+            className = getString(args[0]);
             if (className == null) {
                 return new ErrorObject("the function {callJava}'s first argument is className,it needs a string");
             }
             Class<?> clazz = Class.forName(className);
             // 获取函数名
-            String methodName = getString(args[1]);
+            methodName = getString(args[1]);
             if (methodName == null) {
                 return new ErrorObject("the function {callJava}'s second argument is methodName,it needs a string");
             }
+            Tracer.callJava(className, methodName);
             // 获取参数列表,并解包
             Object[] objects = new Object[args.length - 3];
             System.arraycopy(args, 3, objects, 0, objects.length);
@@ -279,6 +1507,7 @@ public class BuiltInEnvironment extends Environment {
             method.setAccessible(true);
             JavaObject javaObject = new JavaObject();
             javaObject.object = method.invoke(getObject(args[2]), parameters);
+            success = true;
             return javaObject;
         } catch (ClassNotFoundException e) {
             return new ErrorObject("class is not exist," + e.getMessage());
@@ -288,6 +1517,10 @@ public class BuiltInEnvironment extends Environment {
             return new ErrorObject("method is not accessible," + e.getMessage());
         } catch (InvocationTargetException e) {
             return new ErrorObject("method invoke error," + e.getMessage());
+        } finally {
+            if (event.shouldCommit()) {
+                event.record(className, methodName, success);
+            }
         }
     }
 
@@ -307,19 +1540,24 @@ public class BuiltInEnvironment extends Environment {
         if (classPath == null) {
             return new ErrorObject("the function {callJavaD}'s first argument is directory,it needs a string");
         }
+        Events.CallJavaHandle event = Events.callJava();
+        String className = null;
+        String methodName = null;
+        boolean success = false;
         try {
             URLClassLoader urlClassLoader = new URLClassLoader(new URL[]{new File(classPath).toURI().toURL()});
             // 获取类名
-            String className = getString(args[1]);
+            className = getString(args[1]);
             if (className == null) {
                 return new ErrorObject("the function {callJavaD}'s second argument is className,it needs a string");
             }
             Class<?> clazz = urlClassLoader.loadClass(className);
             // 获取函数名
-            String methodName = getString(args[2]);
+            methodName = getString(args[2]);
             if (methodName == null) {
                 return new ErrorObject("the function {callJavaD}'s third argument is methodName,it needs a string");
             }
+            Tracer.callJava(className, methodName);
             // 获取参数列表,并解包
             Object[] objects = new Object[args.length - 4];
             System.arraycopy(args, 4, objects, 0, objects.length);
@@ -332,6 +1570,7 @@ public class BuiltInEnvironment extends Environment {
             method.setAccessible(true);
             JavaObject javaObject = new JavaObject();
             javaObject.object = method.invoke(getObject(args[3]), parameters);
+            success = true;
             return javaObject;
         } catch (MalformedURLException e) {
             return new ErrorObject(classPath + " is not a valid class path," + e.getMessage());
@@ -343,9 +1582,118 @@ public class BuiltInEnvironment extends Environment {
             return new ErrorObject("method is not accessible," + e.getMessage());
         } catch (InvocationTargetException e) {
             return new ErrorObject("method invoke error," + e.getMessage());
+        } finally {
+            if (event.shouldCommit()) {
+                event.record(className, methodName, success);
+            }
         }
     }
 
+    /**
+     * 检查参数个数,以及第一个参数为数组、第二个参数为函数
+     *
+     * @param name   内置函数名
+     * @param length 需要的参数个数
+     * @param args   参数
+     * @return ErrorObject对象,检查通过时返回null
+     */
+    @IgnoreMethod
+    private static Object checkArrayFunction(String name, int length, Object[] args) {
+        if (args.length != length) {
+            return new ErrorObject(String.format("the function {%s} get wrong number of arguments,want %d argument but real get %d", name, length, args.length));
+        }
+        if (args[0].getType() != ObjectType.ARRAY_OBJECT) {
+            return new ErrorObject(String.format("the object is not a array,it's real type is %s", args[0].getType()));
+        }
+        if (!ObjectUtils.isFunction(args[1])) {
+            return new ErrorObject(String.format("argument to {%s} must be a function, get %s", name, args[1].getType()));
+        }
+        return null;
+    }
+
+    /**
+     * 检查参数个数,以及第一个参数为通道
+     *
+     * @param name   内置函数名
+     * @param length 需要的参数个数
+     * @param args   参数
+     * @return ErrorObject对象,检查通过时返回null
+     */
+    @IgnoreMethod
+    private static Object checkChannel(String name, int length, Object[] args) {
+        if (args.length != length) {
+            return new ErrorObject(String.format("the function {%s} get wrong number of arguments,want %d argument but real get %d", name, length, args.length));
+        }
+        if (args[0].getType() != ObjectType.CHANNEL_OBJECT) {
+            return new ErrorObject(String.format("argument to {%s} must be Channel, get %s", name, args[0].getType()));
+        }
+        return null;
+    }
+
+    /**
+     * 检查参数个数,以及第一个参数为未关闭的存储
+     *
+     * @param name   内置函数名
+     * @param length 需要的参数个数
+     * @param args   参数
+     * @return ErrorObject对象,检查通过时返回null
+     */
+    @IgnoreMethod
+    private static Object checkStore(String name, int length, Object[] args) {
+        if (args.length != length) {
+            return new ErrorObject(String.format("the function {%s} get wrong number of arguments,want %d argument but real get %d", name, length, args.length));
+        }
+        if (args[0].getType() != ObjectType.STORE_OBJECT) {
+            return new ErrorObject(String.format("argument to {%s} must be Store, get %s", name, args[0].getType()));
+        }
+        if (((StoreObject) args[0]).isClosed()) {
+            return new ErrorObject(String.format("the function {%s} can't use a closed store", name));
+        }
+        return null;
+    }
+
+    /**
+     * 检查参数个数,以及第一个参数为未冻结的哈希、第二个参数可hash、最后一个参数为函数
+     *
+     * @param name   内置函数名
+     * @param length 需要的参数个数
+     * @param args   参数
+     * @return ErrorObject对象,检查通过时返回null
+     */
+    @IgnoreMethod
+    private static Object checkHashUpdate(String name, int length, Object[] args) {
+        if (args.length != length) {
+            return new ErrorObject(String.format("the function {%s} get wrong number of arguments,want %d argument but real get %d", name, length, args.length));
+        }
+        if (args[0].getType() != ObjectType.HASH_OBJECT) {
+            return new ErrorObject(String.format("argument to {%s} must be Hash, get %s", name, args[0].getType()));
+        }
+        if (!(args[1] instanceof Hashable)) {
+            return new ErrorObject(String.format("%s not support hash", args[1].getType()));
+        }
+        if (!ObjectUtils.isFunction(args[length - 1])) {
+            return new ErrorObject(String.format("argument to {%s} must be a function, get %s", name, args[length - 1].getType()));
+        }
+        if (ObjectUtils.isFrozen(args[0])) {
+            return ObjectUtils.frozenError(args[0]);
+        }
+        return null;
+    }
+
+    /**
+     * 复制交给merge、computeIfAbsent回调的哈希中的对象,冻结或不可拷贝的对象原样返回
+     *
+     * @param object 哈希中的键或值
+     * @return 拷贝
+     */
+    @IgnoreMethod
+    private static Object copyForCallback(Object object) {
+        if (object instanceof Cloneable && !ObjectUtils.isFrozen(object)) {
+            return ((Cloneable) object).cloneObject();
+        }
+        return object;
+    }
+
     /**
      * 根据object获取指定字符串对象
      *
@@ -365,7 +1713,7 @@ public class BuiltInEnvironment extends Environment {
     }
 
     /**
-     * 解包解释器object将其转换为java.lang.Object
+     * 解包解释器object将其转换为java.lang.Object,已冻结的数组及哈希转换为只读视图
      *
      * @param object 待转换的object对象
      * @return java.lang.Object
@@ -393,10 +1741,13 @@ public class BuiltInEnvironment extends Environment {
                 return ((BooleanObject) object).value;
             }
             case HASH_OBJECT: {
-                return ((HashObject) object).hashMap;
+                // 冻结的值只交给java只读视图
+                HashObject hashObject = (HashObject) object;
+                return hashObject.isFrozen() ? Collections.unmodifiableMap(hashObject.hashMap) : hashObject.hashMap;
             }
             case ARRAY_OBJECT: {
-                return ((ArrayObject) object).elements;
+                ArrayObject arrayObject = (ArrayObject) object;
+                return arrayObject.isFrozen() ? Collections.unmodifiableList(arrayObject.elements) : arrayObject.elements;
             }
             case NULL_OBJECT: {
                 return null;
@@ -406,7 +1757,7 @@ public class BuiltInEnvironment extends Environment {
     }
 
     /**
-     * 解包解释器object将其转换为java.lang.Object
+     * 解包解释器object将其转换为java.lang.Object,已冻结的数组及哈希转换为只读视图
      *
      * @param objects 待转换的object数组
      * @return java.lang.Object[]
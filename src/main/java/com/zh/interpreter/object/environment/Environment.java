@@ -1,7 +1,10 @@
 package com.zh.interpreter.object.environment;
 
+import com.zh.interpreter.ast.FunctionScope;
+import com.zh.interpreter.object.Freezable;
 import com.zh.interpreter.object.Object;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,6 +19,16 @@ public class Environment {
      */
     public Environment outerEnvironment;
 
+    /**
+     * 函数调用产生的局部环境所对应的作用域分析结果,为null时表示全局环境等非局部环境
+     */
+    public FunctionScope scope;
+
+    /**
+     * 是否已冻结,冻结后的环境只读,可以被多个线程同时访问
+     */
+    private volatile boolean frozen;
+
     public Environment() {
         stores = new HashMap<>();
         outerEnvironment = null;
@@ -33,9 +46,54 @@ public class Environment {
      * @param dataObject 数据对象
      */
     public void setObject(String identifier, Object dataObject) {
+        if (frozen) {
+            throw new IllegalStateException(String.format("can't set %s,the environment is frozen", identifier));
+        }
         stores.put(identifier, dataObject);
     }
 
+    /**
+     * 冻结环境,之后不能再设置标识符
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * 冻结环境及其中可冻结的值,之后环境连同这些值都可以被多个线程共享
+     */
+    public void freezeDeeply() {
+        for (Object object : stores.values()) {
+            if (object instanceof Freezable) {
+                ((Freezable) object).freeze();
+            }
+        }
+        freeze();
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * 获取当前环境中(不含外层环境)的全部标识符及数据对象
+     *
+     * @return 只读的标识符映射
+     */
+    public Map<String, Object> getStores() {
+        return Collections.unmodifiableMap(stores);
+    }
+
+    /**
+     * 获取当前环境中(不含外层环境)标识符对应的数据对象
+     *
+     * @param identifier 标识符
+     * @return 数据对象,不存在时返回null
+     */
+    public Object getLocalObject(String identifier) {
+        return stores.get(identifier);
+    }
+
     /**
      * 获取标识符对应的数据对象,如果当前环境中不存在对应标识符则向外层环境中寻找
      *
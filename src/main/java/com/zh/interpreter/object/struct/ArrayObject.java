@@ -1,22 +1,80 @@
 package com.zh.interpreter.object.struct;
 
+import com.zh.interpreter.monitor.AllocationProfiler;
 import com.zh.interpreter.object.Cloneable;
 import com.zh.interpreter.object.Computable;
+import com.zh.interpreter.object.Freezable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 数组对象
  */
-public class ArrayObject extends Object implements Computable, Cloneable {
+public class ArrayObject extends Object implements Computable, Cloneable, Freezable {
     /**
      * 数组内的元素
      */
-    public final List<Object> elements = new ArrayList<>();
+    public final List<Object> elements;
+
+    /**
+     * 是否已冻结,冻结后不能再修改,其中的元素同样已冻结
+     */
+    private volatile boolean frozen;
+
+    public ArrayObject() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * @param elements 存放元素的列表,如CopyOnWriteArrayList
+     */
+    public ArrayObject(List<Object> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * 是否为可在多个任务间共享的并发数组
+     *
+     * @return 是否并发
+     */
+    public boolean isConcurrent() {
+        return elements instanceof CopyOnWriteArrayList;
+    }
+
+    /**
+     * 创建与当前数组同类(普通或并发)的空数组
+     *
+     * @return 空数组
+     */
+    public ArrayObject newEmpty() {
+        return isConcurrent() ? new ArrayObject(new CopyOnWriteArrayList<>()) : new ArrayObject();
+    }
+
+    /**
+     * 冻结自身及其中的元素,先设置标记再遍历元素,因此自引用的容器也能结束
+     */
+    @Override
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        frozen = true;
+        for (Object element : elements) {
+            if (element instanceof Freezable && !((Freezable) element).isFrozen()) {
+                ((Freezable) element).freeze();
+            }
+        }
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return frozen;
+    }
 
     @Override
     public ObjectType getType() {
@@ -43,8 +101,9 @@ public class ArrayObject extends Object implements Computable, Cloneable {
 
     @Override
     public ArrayObject cloneObject() {
-        ArrayObject arrayObject = new ArrayObject();
+        ArrayObject arrayObject = newEmpty();
         arrayObject.elements.addAll(elements);
+        AllocationProfiler.recordGrowth(ObjectType.ARRAY_OBJECT, elements.size());
         return arrayObject;
     }
 }
@@ -0,0 +1,259 @@
+package com.zh.interpreter.object.struct;
+
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界通道,用于任务之间传递数据<br/>
+ * 通道满时发送方阻塞,通道空时接收方阻塞;关闭后不能再发送,接收方取完剩余数据后得到关闭信号<br/>
+ * 数据、关闭状态及等待的select线程都由同一把锁保护,发送、接收及关闭通过条件变量唤醒对方,不进行轮询
+ */
+public class ChannelObject extends Object {
+    /**
+     * 通道内的数据
+     */
+    private final ArrayDeque<Object> buffer;
+
+    /**
+     * 通道容量
+     */
+    public final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 有数据或已关闭
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * 有空位或已关闭
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * 正在select中等待该通道的线程,通道有数据或关闭时唤醒
+     */
+    private final List<Thread> selectors = new ArrayList<>();
+
+    /**
+     * 执行被取消时唤醒阻塞在该通道上的线程
+     */
+    private final Runnable wakeup = this::signalAll;
+
+    /**
+     * 是否已关闭,只在持有锁时修改
+     */
+    private volatile boolean closed;
+
+    public ChannelObject(int capacity) {
+        this.capacity = capacity;
+        this.buffer = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * 发送数据,通道满时阻塞
+     *
+     * @param value 数据,不能为null
+     * @return 是否发送成功,通道已关闭或当前执行被中止时返回false
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean send(Object value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && buffer.size() == capacity) {
+                if (!await(notFull)) {
+                    return false;
+                }
+            }
+            if (closed) {
+                return false;
+            }
+            buffer.addLast(value);
+            notEmpty.signal();
+            wakeSelectors();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 接收数据,通道空时阻塞
+     *
+     * @return 数据,通道已关闭且没有剩余数据或当前执行被中止时返回null
+     * @throws InterruptedException 等待时被中断
+     */
+    public Object receive() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (buffer.isEmpty()) {
+                if (closed || !await(notEmpty)) {
+                    return null;
+                }
+            }
+            Object value = buffer.pollFirst();
+            notFull.signal();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不阻塞地接收数据
+     *
+     * @return 数据,没有数据时返回null
+     */
+    public Object tryReceive() {
+        lock.lock();
+        try {
+            Object value = buffer.pollFirst();
+            if (value != null) {
+                notFull.signal();
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭通道,唤醒所有等待的发送方、接收方及select
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            wakeSelectors();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 是否已关闭且没有剩余数据
+     *
+     * @return 是否已取完
+     */
+    public boolean isDrained() {
+        lock.lock();
+        try {
+            return closed && buffer.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 通道内的数据个数
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 登记在select中等待的线程,通道有数据或关闭时将其唤醒
+     *
+     * @param thread 等待的线程
+     */
+    public void addSelector(Thread thread) {
+        lock.lock();
+        try {
+            selectors.add(thread);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 注销在select中等待的线程
+     *
+     * @param thread 等待的线程
+     */
+    public void removeSelector(Thread thread) {
+        lock.lock();
+        try {
+            selectors.remove(thread);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 持有锁时等待条件,最长等待到当前执行的超时截止时刻
+     *
+     * @param condition 条件
+     * @return 是否可以继续等待,当前执行被取消或超时时返回false
+     * @throws InterruptedException 等待时被中断
+     */
+    private boolean await(Condition condition) throws InterruptedException {
+        // 先注册唤醒动作再检查,取消发生在两者之间时也能被唤醒
+        ExecutionContext.onCancel(wakeup);
+        try {
+            if (ExecutionContext.poll() != null) {
+                return false;
+            }
+            long remaining = ExecutionContext.remainingNanos();
+            if (remaining == Long.MAX_VALUE) {
+                condition.await();
+            } else {
+                condition.awaitNanos(remaining);
+            }
+        } finally {
+            ExecutionContext.removeOnCancel(wakeup);
+        }
+        return ExecutionContext.poll() == null;
+    }
+
+    /**
+     * 持有锁时唤醒select中等待的线程
+     */
+    private void wakeSelectors() {
+        for (Thread thread : selectors) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 唤醒阻塞在该通道上的所有线程,由执行的取消钩子调用
+     */
+    private void signalAll() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ObjectType getType() {
+        return ObjectType.CHANNEL_OBJECT;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Channel(%d/%d%s)", size(), capacity, closed ? ",closed" : "");
+    }
+}
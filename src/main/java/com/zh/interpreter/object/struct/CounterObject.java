@@ -0,0 +1,28 @@
+package com.zh.interpreter.object.struct;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 原子计数器,用于多个任务并发累加<br/>
+ * 基于LongAdder,高并发累加时各线程写入不同的单元,读取时再求和
+ */
+public class CounterObject extends Object {
+    public final LongAdder adder = new LongAdder();
+
+    public CounterObject(long initial) {
+        adder.add(initial);
+    }
+
+    @Override
+    public ObjectType getType() {
+        return ObjectType.COUNTER_OBJECT;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Counter(%d)", adder.sum());
+    }
+}
@@ -2,6 +2,7 @@ package com.zh.interpreter.object.struct;
 
 import com.zh.interpreter.object.Cloneable;
 import com.zh.interpreter.object.Computable;
+import com.zh.interpreter.object.Freezable;
 import com.zh.interpreter.object.Hashable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
@@ -11,12 +12,17 @@ import java.util.Objects;
 /**
  * 浮点数数据类型
  */
-public class DoubleObject extends Object implements Hashable, Computable, Cloneable {
+public class DoubleObject extends Object implements Hashable, Computable, Cloneable, Freezable {
     /**
      * double数值
      */
     public Double value;
 
+    /**
+     * 是否已冻结,冻结后不能再通过+=等操作原地修改
+     */
+    private volatile boolean frozen;
+
     public DoubleObject() {
     }
 
@@ -24,6 +30,16 @@ public class DoubleObject extends Object implements Hashable, Computable, Clonea
         this.value = value;
     }
 
+    @Override
+    public void freeze() {
+        frozen = true;
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     @Override
     public ObjectType getType() {
         return ObjectType.DOUBLE_OBJECT;
@@ -1,7 +1,9 @@
 package com.zh.interpreter.object.struct;
 
+import com.zh.interpreter.monitor.AllocationProfiler;
 import com.zh.interpreter.object.Cloneable;
 import com.zh.interpreter.object.Computable;
+import com.zh.interpreter.object.Freezable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
 
@@ -9,15 +11,74 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 哈希数据对象
  */
-public class HashObject extends Object implements Computable, Cloneable {
+public class HashObject extends Object implements Computable, Cloneable, Freezable {
     /**
      * 数据map
      */
-    public final Map<Object, Object> hashMap = new HashMap<>();
+    public final Map<Object, Object> hashMap;
+
+    /**
+     * 是否已冻结,冻结后不能再修改,其中的元素同样已冻结
+     */
+    private volatile boolean frozen;
+
+    public HashObject() {
+        this(new HashMap<>());
+    }
+
+    /**
+     * @param hashMap 存放数据的map,如ConcurrentHashMap
+     */
+    public HashObject(Map<Object, Object> hashMap) {
+        this.hashMap = hashMap;
+    }
+
+    /**
+     * 是否为可在多个任务间共享的并发哈希
+     *
+     * @return 是否并发
+     */
+    public boolean isConcurrent() {
+        return hashMap instanceof ConcurrentHashMap;
+    }
+
+    /**
+     * 创建与当前哈希同类(普通或并发)的空哈希
+     *
+     * @return 空哈希
+     */
+    public HashObject newEmpty() {
+        return isConcurrent() ? new HashObject(new ConcurrentHashMap<>()) : new HashObject();
+    }
+
+    /**
+     * 冻结自身及其中的元素,先设置标记再遍历元素,因此自引用的容器也能结束
+     */
+    @Override
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        frozen = true;
+        for (Map.Entry<Object, Object> entry : hashMap.entrySet()) {
+            if (entry.getKey() instanceof Freezable && !((Freezable) entry.getKey()).isFrozen()) {
+                ((Freezable) entry.getKey()).freeze();
+            }
+            if (entry.getValue() instanceof Freezable && !((Freezable) entry.getValue()).isFrozen()) {
+                ((Freezable) entry.getValue()).freeze();
+            }
+        }
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return frozen;
+    }
 
     @Override
     public ObjectType getType() {
@@ -52,8 +113,9 @@ public class HashObject extends Object implements Computable, Cloneable {
 
     @Override
     public HashObject cloneObject() {
-        HashObject hashObject = new HashObject();
+        HashObject hashObject = newEmpty();
         hashObject.hashMap.putAll(hashMap);
+        AllocationProfiler.recordGrowth(ObjectType.HASH_OBJECT, hashMap.size());
         return hashObject;
     }
 }
@@ -0,0 +1,73 @@
+package com.zh.interpreter.object.struct;
+
+import com.zh.interpreter.io.LineReader;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+
+import java.io.IOException;
+
+/**
+ * lines返回的惰性行迭代器,每次只读取一行,读完后自动关闭文件
+ */
+public class LinesObject extends Object {
+    public final LineReader reader;
+
+    /**
+     * 是否已读完或已关闭
+     */
+    private volatile boolean done;
+
+    public LinesObject(LineReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读取下一行
+     *
+     * @return 行,已读完或已关闭时返回null
+     * @throws IOException 读取失败
+     */
+    public String next() throws IOException {
+        if (done) {
+            return null;
+        }
+        String line;
+        try {
+            line = reader.readLine();
+        } catch (IOException e) {
+            // 其它任务读到末尾时已关闭文件
+            if (done) {
+                return null;
+            }
+            throw e;
+        }
+        if (line == null) {
+            close();
+        }
+        return line;
+    }
+
+    /**
+     * 关闭迭代器,之后读取得到null
+     *
+     * @throws IOException 关闭文件失败
+     */
+    public void close() throws IOException {
+        done = true;
+        reader.close();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public ObjectType getType() {
+        return ObjectType.LINES_OBJECT;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lines(%s,line %d%s)", reader.getName(), reader.getLineNumber(), done ? ",done" : "");
+    }
+}
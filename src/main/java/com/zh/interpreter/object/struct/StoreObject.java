@@ -0,0 +1,47 @@
+package com.zh.interpreter.object.struct;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.store.KeyValueStore;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * kvOpen打开的持久化键值存储<br/>
+ * 同一文件的多个存储对象共享同一个KeyValueStore,每个对象只能关闭一次
+ */
+public class StoreObject extends Object {
+    public final KeyValueStore store;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public StoreObject(KeyValueStore store) {
+        this.store = store;
+    }
+
+    /**
+     * 关闭存储,重复关闭时不做任何操作
+     *
+     * @throws IOException 关闭文件失败
+     */
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            store.close();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public ObjectType getType() {
+        return ObjectType.STORE_OBJECT;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Store(%s%s)", store.getPath(), closed.get() ? ",closed" : "");
+    }
+}
@@ -2,6 +2,7 @@ package com.zh.interpreter.object.struct;
 
 import com.zh.interpreter.object.Cloneable;
 import com.zh.interpreter.object.Computable;
+import com.zh.interpreter.object.Freezable;
 import com.zh.interpreter.object.Hashable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
@@ -11,12 +12,27 @@ import java.util.Objects;
 /**
  * 字符串对象
  */
-public class StringObject extends Object implements Hashable, Computable, Cloneable {
+public class StringObject extends Object implements Hashable, Computable, Cloneable, Freezable {
     /**
      * 字符串对象的实际值
      */
     public String value;
 
+    /**
+     * 是否已冻结,冻结后不能再通过+=等操作原地修改
+     */
+    private volatile boolean frozen;
+
+    @Override
+    public void freeze() {
+        frozen = true;
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     @Override
     public ObjectType getType() {
         return ObjectType.STRING_OBJECT;
@@ -1,5 +1,6 @@
 package com.zh.interpreter.object.tools;
 
+import com.zh.interpreter.monitor.Tracer;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
 
@@ -14,6 +15,7 @@ public class ErrorObject extends Object {
 
     public ErrorObject(String message) {
         this.message = message;
+        Tracer.error(message);
     }
 
     @Override
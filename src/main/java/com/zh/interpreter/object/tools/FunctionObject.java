@@ -1,5 +1,6 @@
 package com.zh.interpreter.object.tools;
 
+import com.zh.interpreter.ast.FunctionScope;
 import com.zh.interpreter.ast.expression.Identifier;
 import com.zh.interpreter.ast.statement.BlockStatement;
 import com.zh.interpreter.object.environment.Environment;
@@ -29,6 +30,11 @@ public class FunctionObject extends Object {
      */
     public BlockStatement statement;
 
+    /**
+     * 函数体的作用域分析结果,调用时设置到函数的局部环境上
+     */
+    public FunctionScope scope;
+
     @Override
     public ObjectType getType() {
         return ObjectType.FUNCTION_OBJECT;
@@ -0,0 +1,30 @@
+package com.zh.interpreter.object.tools;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+
+import java.util.concurrent.Future;
+
+/**
+ * 任务对象,由spawn创建,表示一个在其它线程中执行的函数调用
+ */
+public class TaskObject extends Object {
+    /**
+     * 函数调用的结果
+     */
+    public final Future<Object> future;
+
+    public TaskObject(Future<Object> future) {
+        this.future = future;
+    }
+
+    @Override
+    public ObjectType getType() {
+        return ObjectType.TASK_OBJECT;
+    }
+
+    @Override
+    public String toString() {
+        return future.isDone() ? "Task(done)" : "Task(running)";
+    }
+}
@@ -11,6 +11,7 @@ import com.zh.interpreter.ast.statement.ExpressionStatement;
 import com.zh.interpreter.ast.statement.LetStatement;
 import com.zh.interpreter.ast.statement.ReturnStatement;
 import com.zh.interpreter.lexer.Lexer;
+import com.zh.interpreter.monitor.Events;
 import com.zh.interpreter.token.Token;
 import com.zh.interpreter.token.TokenType;
 import com.zh.interpreter.utils.ReflectUtils;
@@ -149,12 +150,17 @@ public class Parser {
      * @return 整个程序构建出的语法树
      */
     public Program parse() {
+        Events.ParseHandle event = Events.parse();
         Program program = new Program();
         while (!currentTokenIs(TokenType.EOF)) {
             Statement statement = parseStatement();
             program.statements.add(statement);
             advanceToken();
         }
+        // 记录解析事件
+        if (event.shouldCommit()) {
+            event.record(lexer.getSourceLength(), program.statements.size(), errors.size());
+        }
         return program;
     }
 
@@ -0,0 +1,171 @@
+package com.zh.interpreter.snapshot;
+
+import com.zh.interpreter.object.environment.Environment;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 解释器堆快照的读写<br/>
+ * 文件由18字节的头部(魔数MKSN、版本、内容种类、内容长度、内容的CRC32)和快照格式的内容组成;
+ * 读写都通过FileChannel进行,超过MAP_THRESHOLD的文件使用内存映射,写入时先写临时文件再替换,
+ * 写入中途失败不会破坏原有的快照
+ */
+public abstract class HeapSnapshot {
+    /**
+     * 内容为全局环境
+     */
+    public static final byte KIND_ENVIRONMENT = 'E';
+
+    /**
+     * 内容为单个值
+     */
+    public static final byte KIND_VALUE = 'V';
+
+    /**
+     * 超过该大小的快照使用内存映射读写
+     */
+    public static final long MAP_THRESHOLD = 1 << 20;
+
+    private static final int MAGIC = 0x4D4B534E;
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 18;
+
+    private HeapSnapshot() {
+    }
+
+    /**
+     * 保存全局环境,包括其中的数组、哈希、闭包及其捕获的环境、宏
+     *
+     * @param environment 全局环境
+     * @param path        快照文件
+     * @return 编码使用的writer,可以从中获取大小及被跳过的对象
+     * @throws IOException 写入失败
+     */
+    public static SnapshotWriter save(Environment environment, Path path) throws IOException {
+        SnapshotWriter writer = new SnapshotWriter();
+        writer.writeEnvironment(environment);
+        write(path, KIND_ENVIRONMENT, writer.toByteBuffer());
+        return writer;
+    }
+
+    /**
+     * 读取保存的全局环境
+     *
+     * @param path 快照文件
+     * @return 全局环境,外层为当前进程的内置函数环境
+     * @throws IOException 读取失败或文件已损坏
+     */
+    public static Environment load(Path path) throws IOException {
+        Environment environment = new SnapshotReader(read(path, KIND_ENVIRONMENT)).readEnvironment();
+        if (environment == null) {
+            throw new IOException(path + " doesn't contain an environment");
+        }
+        return environment;
+    }
+
+    /**
+     * 写入快照文件
+     *
+     * @param path    文件
+     * @param kind    内容种类
+     * @param payload 快照格式的内容
+     * @throws IOException 写入失败
+     */
+    public static void write(Path path, byte kind, ByteBuffer payload) throws IOException {
+        ByteBuffer content = payload.duplicate();
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).put(kind).putLong(content.remaining()).putInt((int) crc.getValue());
+        ((Buffer) header).flip();
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (content.remaining() >= MAP_THRESHOLD) {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + content.remaining());
+                    mapped.put(header).put(content);
+                    mapped.force();
+                } else {
+                    while (header.hasRemaining()) {
+                        channel.write(header);
+                    }
+                    while (content.hasRemaining()) {
+                        channel.write(content);
+                    }
+                    channel.force(true);
+                }
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * 读取快照文件并校验头部及CRC
+     *
+     * @param path 文件
+     * @param kind 期望的内容种类
+     * @return 快照格式的内容,大文件为内存映射的缓冲区
+     * @throws IOException 读取失败或文件已损坏
+     */
+    public static ByteBuffer read(Path path, byte kind) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException(path + " is not a monkey snapshot");
+            }
+            if (size >= MAP_THRESHOLD) {
+                // 映射在通道关闭后仍然有效
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // 读满为止
+                }
+                ((Buffer) buffer).flip();
+            }
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a monkey snapshot");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException(String.format("unsupported snapshot version %d", version));
+        }
+        byte actualKind = buffer.get();
+        if (actualKind != kind) {
+            throw new IOException(String.format("%s contains '%c' but '%c' is expected", path, (char) actualKind, (char) kind));
+        }
+        long length = buffer.getLong();
+        int checksum = buffer.getInt();
+        if (length != buffer.remaining()) {
+            throw new IOException(path + " is truncated or has trailing data");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException(path + " is corrupted,the checksum doesn't match");
+        }
+        return buffer.slice();
+    }
+}
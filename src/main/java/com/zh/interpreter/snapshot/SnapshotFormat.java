@@ -0,0 +1,137 @@
+package com.zh.interpreter.snapshot;
+
+import com.zh.interpreter.ast.ASTNode;
+import com.zh.interpreter.ast.FunctionScope;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 快照二进制格式的标签及AST节点的字段表<br/>
+ * 每个值以1字节标签开头;对象、环境及AST节点第一次出现时按出现顺序编号,再次出现时写入REFERENCE及编号,
+ * 因此共享引用和循环引用都能还原;整数使用varint,字符串使用去重表
+ */
+abstract class SnapshotFormat {
+    /**
+     * 引用之前出现过的对象、环境或AST节点,之后为编号
+     */
+    static final byte REFERENCE = 0;
+
+    static final byte NULL = 1;
+
+    static final byte TRUE = 2;
+
+    static final byte FALSE = 3;
+
+    static final byte INTEGER = 4;
+
+    static final byte DOUBLE = 5;
+
+    static final byte STRING = 6;
+
+    static final byte ARRAY = 7;
+
+    static final byte HASH = 8;
+
+    static final byte FUNCTION = 9;
+
+    static final byte MACRO = 10;
+
+    static final byte BUILT_IN_FUNCTION = 11;
+
+    static final byte QUOTE = 12;
+
+    static final byte COUNTER = 13;
+
+    static final byte ERROR = 14;
+
+    static final byte RETURN = 15;
+
+    static final byte ENVIRONMENT = 16;
+
+    /**
+     * 内置函数环境,不写入内容,读取时使用当前进程的内置函数环境
+     */
+    static final byte BUILT_IN_ENVIRONMENT = 17;
+
+    static final byte NODE = 18;
+
+    static final byte NULL_LITERAL = 19;
+
+    static final byte TOKEN = 20;
+
+    static final byte LIST = 21;
+
+    static final byte MAP = 22;
+
+    static final byte FIELD_STRING = 23;
+
+    static final byte FIELD_LONG = 24;
+
+    static final byte FIELD_DOUBLE = 25;
+
+    static final byte SCOPE = 26;
+
+    /**
+     * FunctionScope.CLOSURE
+     */
+    static final byte CLOSURE_SCOPE = 27;
+
+    /**
+     * 对象已冻结
+     */
+    static final int FLAG_FROZEN = 1;
+
+    /**
+     * 数组或哈希为并发版本
+     */
+    static final int FLAG_CONCURRENT = 2;
+
+    /**
+     * 各AST节点类需要保存的字段
+     */
+    private static final Map<Class<?>, Field[]> fieldMap = new ConcurrentHashMap<>();
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * 判断标签是否属于纯数据值(null、布尔、整数、浮点数、字符串、数组、哈希及对它们的引用),
+     * serialize只允许这些标签
+     *
+     * @param tag 标签
+     * @return 是否为纯数据值
+     */
+    static boolean isValueTag(byte tag) {
+        return tag >= REFERENCE && tag <= HASH;
+    }
+
+    /**
+     * 获取AST节点类需要保存的字段,即包括父类在内的全部实例字段,按名称排序;
+     * 作用域分析结果会在首次创建闭包时重新计算,不需要保存
+     *
+     * @param clazz AST节点类
+     * @return 字段
+     */
+    static Field[] fields(Class<?> clazz) {
+        return fieldMap.computeIfAbsent(clazz, key -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = key; c != null && ASTNode.class.isAssignableFrom(c); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType() == FunctionScope.class) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            return fields.toArray(new Field[0]);
+        });
+    }
+}
@@ -0,0 +1,580 @@
+package com.zh.interpreter.snapshot;
+
+import com.zh.interpreter.ast.ASTNode;
+import com.zh.interpreter.ast.FunctionScope;
+import com.zh.interpreter.ast.expression.Identifier;
+import com.zh.interpreter.ast.expression.literal.NullLiteral;
+import com.zh.interpreter.ast.statement.BlockStatement;
+import com.zh.interpreter.object.Freezable;
+import com.zh.interpreter.object.Hashable;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.*;
+import com.zh.interpreter.object.tools.*;
+import com.zh.interpreter.token.Token;
+import com.zh.interpreter.token.TokenType;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 从快照格式解码解释器对象、环境及AST,缓冲区可以是内存映射的文件
+ */
+public class SnapshotReader {
+    private final ByteBuffer buffer;
+
+    /**
+     * 按编号排列的已读取的对象、环境及AST节点
+     */
+    private final List<java.lang.Object> references = new ArrayList<>();
+
+    /**
+     * 字符串去重表
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * 是否只允许纯数据值
+     */
+    private final boolean valuesOnly;
+
+    /**
+     * 尚未执行的读取步骤,嵌套的值以入栈代替递归,深层嵌套的快照不会导致栈溢出
+     */
+    private final Deque<Step> pending = new ArrayDeque<>();
+
+    /**
+     * @param buffer 从当前位置开始读取的缓冲区
+     */
+    public SnapshotReader(ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    /**
+     * @param buffer     从当前位置开始读取的缓冲区
+     * @param valuesOnly 为true时只接受null、布尔、整数、浮点数、字符串、数组及哈希,
+     *                   不会创建函数、环境或AST节点
+     */
+    public SnapshotReader(ByteBuffer buffer, boolean valuesOnly) {
+        this.buffer = buffer;
+        this.valuesOnly = valuesOnly;
+    }
+
+    /**
+     * 是否还有未读取的内容
+     *
+     * @return 是否还有内容
+     */
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * 读取环境
+     *
+     * @return 环境
+     * @throws IOException 内容格式错误
+     */
+    public Environment readEnvironment() throws IOException {
+        if (valuesOnly) {
+            throw new IOException("the reader only accepts values");
+        }
+        return read(this::decodeEnvironment);
+    }
+
+    /**
+     * 读取对象
+     *
+     * @return 对象
+     * @throws IOException 内容格式错误
+     */
+    public Object readObject() throws IOException {
+        return read(this::decodeObject);
+    }
+
+    /**
+     * 依次执行读取步骤直到全部完成
+     *
+     * @param decoder 读取最外层值的步骤
+     * @return 最外层的值
+     * @throws IOException 内容格式错误
+     */
+    private <T> T read(Decoder<T> decoder) throws IOException {
+        List<T> result = new ArrayList<>(1);
+        pending.push(() -> decoder.decode(result::add));
+        try {
+            while (!pending.isEmpty()) {
+                pending.pop().run();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("the snapshot is truncated", e);
+        } finally {
+            pending.clear();
+        }
+        return result.get(0);
+    }
+
+    /**
+     * 安排之后的读取步骤,这些步骤在已安排的其它步骤之前按给定顺序执行,读取的顺序与写入的顺序相同
+     *
+     * @param steps 读取步骤
+     */
+    private void schedule(List<Step> steps) {
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            pending.push(steps.get(i));
+        }
+    }
+
+    private void decodeEnvironment(Sink<Environment> sink) throws IOException {
+        byte tag = readByte();
+        switch (tag) {
+            case SnapshotFormat.NULL:
+                sink.accept(null);
+                return;
+            case SnapshotFormat.BUILT_IN_ENVIRONMENT:
+                sink.accept(BuiltInEnvironment.getInstance());
+                return;
+            case SnapshotFormat.REFERENCE:
+                sink.accept(cast(reference(), Environment.class));
+                return;
+            case SnapshotFormat.ENVIRONMENT: {
+                Environment environment = new Environment();
+                references.add(environment);
+                int flags = readByte();
+                environment.scope = readScope();
+                schedule(Arrays.asList(
+                        () -> decodeEnvironment(outer -> environment.outerEnvironment = outer),
+                        () -> {
+                            int size = readSize();
+                            List<Step> steps = new ArrayList<>(size + 1);
+                            for (int i = 0; i < size; i++) {
+                                steps.add(() -> {
+                                    String name = readString();
+                                    decodeObject(value -> environment.setObject(name, value));
+                                });
+                            }
+                            steps.add(() -> {
+                                if ((flags & SnapshotFormat.FLAG_FROZEN) != 0) {
+                                    environment.freeze();
+                                }
+                                sink.accept(environment);
+                            });
+                            schedule(steps);
+                        }));
+                return;
+            }
+            default:
+                throw new IOException("unexpected tag " + tag + " for an environment");
+        }
+    }
+
+    private void decodeObject(Sink<Object> sink) throws IOException {
+        byte tag = readByte();
+        if (valuesOnly && !SnapshotFormat.isValueTag(tag)) {
+            throw new IOException("unexpected tag " + tag + " for a value");
+        }
+        switch (tag) {
+            case SnapshotFormat.NULL:
+                sink.accept(NullObject.getInstance());
+                return;
+            case SnapshotFormat.TRUE:
+                sink.accept(BooleanObject.getInstance(true));
+                return;
+            case SnapshotFormat.FALSE:
+                sink.accept(BooleanObject.getInstance(false));
+                return;
+            case SnapshotFormat.BUILT_IN_FUNCTION: {
+                String name = readString();
+                Object function = name == null ? null : BuiltInEnvironment.getInstance().getLocalObject(name);
+                if (function == null) {
+                    throw new IOException("unknown built-in function " + name);
+                }
+                sink.accept(function);
+                return;
+            }
+            case SnapshotFormat.REFERENCE:
+                sink.accept(cast(reference(), Object.class));
+                return;
+            case SnapshotFormat.INTEGER: {
+                IntegerObject integer = new IntegerObject();
+                references.add(integer);
+                int flags = readByte();
+                integer.value = unzigzag(readVarLong());
+                sink.accept(freeze(integer, flags));
+                return;
+            }
+            case SnapshotFormat.DOUBLE: {
+                DoubleObject number = new DoubleObject();
+                references.add(number);
+                int flags = readByte();
+                number.value = buffer.getDouble();
+                sink.accept(freeze(number, flags));
+                return;
+            }
+            case SnapshotFormat.STRING: {
+                StringObject string = new StringObject();
+                references.add(string);
+                int flags = readByte();
+                string.value = readString();
+                if (string.value == null) {
+                    throw new IOException("a string value can't be null");
+                }
+                sink.accept(freeze(string, flags));
+                return;
+            }
+            case SnapshotFormat.ARRAY: {
+                int flags = readByte();
+                ArrayObject array = (flags & SnapshotFormat.FLAG_CONCURRENT) != 0 ?
+                        new ArrayObject(new CopyOnWriteArrayList<>()) : new ArrayObject();
+                references.add(array);
+                int size = readSize();
+                List<Object> elements = new ArrayList<>(size);
+                List<Step> steps = new ArrayList<>(size + 1);
+                for (int i = 0; i < size; i++) {
+                    steps.add(() -> decodeObject(elements::add));
+                }
+                steps.add(() -> {
+                    // 写时复制的数组一次性加入全部元素
+                    array.elements.addAll(elements);
+                    sink.accept(freeze(array, flags));
+                });
+                schedule(steps);
+                return;
+            }
+            case SnapshotFormat.HASH: {
+                int flags = readByte();
+                HashObject hash = (flags & SnapshotFormat.FLAG_CONCURRENT) != 0 ?
+                        new HashObject(new ConcurrentHashMap<>()) : new HashObject();
+                references.add(hash);
+                int size = readSize();
+                List<Step> steps = new ArrayList<>(size + 1);
+                for (int i = 0; i < size; i++) {
+                    steps.add(() -> decodeObject(key -> {
+                        if (!(key instanceof Hashable)) {
+                            throw new IOException(key.getType() + " can't be a hash key");
+                        }
+                        decodeObject(value -> hash.hashMap.put(key, value));
+                    }));
+                }
+                steps.add(() -> sink.accept(freeze(hash, flags)));
+                schedule(steps);
+                return;
+            }
+            case SnapshotFormat.FUNCTION: {
+                FunctionObject function = new FunctionObject();
+                references.add(function);
+                schedule(Arrays.asList(
+                        () -> decodeEnvironment(environment -> function.environment = environment),
+                        () -> decodeField(parameters -> function.parameters = parameters(parameters)),
+                        () -> decodeField(statement -> function.statement = cast(statement, BlockStatement.class)),
+                        () -> {
+                            function.scope = readScope();
+                            sink.accept(function);
+                        }));
+                return;
+            }
+            case SnapshotFormat.MACRO: {
+                MacroObject macro = new MacroObject();
+                references.add(macro);
+                schedule(Arrays.asList(
+                        () -> decodeEnvironment(environment -> macro.environment = environment),
+                        () -> decodeField(parameters -> macro.parameters = parameters(parameters)),
+                        () -> decodeField(statement -> macro.statement = cast(statement, BlockStatement.class)),
+                        () -> sink.accept(macro)));
+                return;
+            }
+            case SnapshotFormat.QUOTE: {
+                // quote对象创建后才能得到节点,先占位
+                int index = references.size();
+                references.add(null);
+                pending.push(() -> decodeField(node -> {
+                    QuoteObject quote = new QuoteObject(cast(node, ASTNode.class));
+                    references.set(index, quote);
+                    sink.accept(quote);
+                }));
+                return;
+            }
+            case SnapshotFormat.COUNTER: {
+                CounterObject counter = new CounterObject(0);
+                references.add(counter);
+                counter.adder.add(unzigzag(readVarLong()));
+                sink.accept(counter);
+                return;
+            }
+            case SnapshotFormat.ERROR: {
+                int index = references.size();
+                references.add(null);
+                ErrorObject error = new ErrorObject(readString());
+                references.set(index, error);
+                sink.accept(error);
+                return;
+            }
+            case SnapshotFormat.RETURN: {
+                ReturnObject returnObject = new ReturnObject();
+                references.add(returnObject);
+                schedule(Arrays.asList(
+                        () -> decodeObject(value -> returnObject.value = value),
+                        () -> sink.accept(returnObject)));
+                return;
+            }
+            default:
+                throw new IOException("unexpected tag " + tag + " for an object");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Identifier> parameters(java.lang.Object value) throws IOException {
+        List<?> parameters = cast(value, List.class);
+        for (java.lang.Object parameter : parameters) {
+            cast(parameter, Identifier.class);
+        }
+        return (List<Identifier>) parameters;
+    }
+
+    /**
+     * 读取AST节点及其字段的值
+     *
+     * @param sink 接收字段的值
+     * @throws IOException 内容格式错误
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void decodeField(Sink<java.lang.Object> sink) throws IOException {
+        byte tag = readByte();
+        switch (tag) {
+            case SnapshotFormat.NULL:
+                sink.accept(null);
+                return;
+            case SnapshotFormat.NULL_LITERAL:
+                sink.accept(NullLiteral.instance);
+                return;
+            case SnapshotFormat.REFERENCE:
+                sink.accept(cast(reference(), ASTNode.class));
+                return;
+            case SnapshotFormat.NODE: {
+                ASTNode node = newNode(readString());
+                references.add(node);
+                Field[] fields = SnapshotFormat.fields(node.getClass());
+                List<Step> steps = new ArrayList<>(fields.length + 1);
+                for (Field field : fields) {
+                    steps.add(() -> decodeField(value -> {
+                        try {
+                            if (Modifier.isFinal(field.getModifiers()) && value instanceof Collection) {
+                                ((Collection) field.get(node)).addAll((Collection) value);
+                            } else if (Modifier.isFinal(field.getModifiers()) && value instanceof Map) {
+                                ((Map) field.get(node)).putAll((Map) value);
+                            } else {
+                                field.set(node, value);
+                            }
+                        } catch (IllegalAccessException | IllegalArgumentException | ClassCastException e) {
+                            throw new IOException("can't restore " + node.getClass().getSimpleName() + "." + field.getName(), e);
+                        }
+                    }));
+                }
+                steps.add(() -> sink.accept(node));
+                schedule(steps);
+                return;
+            }
+            case SnapshotFormat.TOKEN: {
+                String type = readString();
+                try {
+                    sink.accept(new Token(TokenType.valueOf(String.valueOf(type)), readString()));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("unknown token type " + type, e);
+                }
+                return;
+            }
+            case SnapshotFormat.FIELD_STRING:
+                sink.accept(readString());
+                return;
+            case SnapshotFormat.FIELD_LONG:
+                sink.accept(unzigzag(readVarLong()));
+                return;
+            case SnapshotFormat.FIELD_DOUBLE:
+                sink.accept(buffer.getDouble());
+                return;
+            case SnapshotFormat.TRUE:
+                sink.accept(Boolean.TRUE);
+                return;
+            case SnapshotFormat.FALSE:
+                sink.accept(Boolean.FALSE);
+                return;
+            case SnapshotFormat.LIST: {
+                int size = readSize();
+                List<java.lang.Object> list = new ArrayList<>(size);
+                List<Step> steps = new ArrayList<>(size + 1);
+                for (int i = 0; i < size; i++) {
+                    steps.add(() -> decodeField(list::add));
+                }
+                steps.add(() -> sink.accept(list));
+                schedule(steps);
+                return;
+            }
+            case SnapshotFormat.MAP: {
+                int size = readSize();
+                Map<java.lang.Object, java.lang.Object> map = new HashMap<>();
+                List<Step> steps = new ArrayList<>(size + 1);
+                for (int i = 0; i < size; i++) {
+                    steps.add(() -> decodeField(key -> decodeField(value -> map.put(key, value))));
+                }
+                steps.add(() -> sink.accept(map));
+                schedule(steps);
+                return;
+            }
+            default:
+                throw new IOException("unexpected tag " + tag + " for an AST field");
+        }
+    }
+
+    /**
+     * 创建AST节点,只允许AST节点类
+     *
+     * @param className 类名
+     * @return 字段为默认值的节点
+     * @throws IOException 类不存在或不是AST节点
+     */
+    private static ASTNode newNode(String className) throws IOException {
+        if (className == null) {
+            throw new IOException("an AST node needs a class name");
+        }
+        try {
+            // 检查类型之前不能初始化快照中给出的类,否则其静态初始化代码会被执行
+            Class<?> clazz = Class.forName(className, false, ASTNode.class.getClassLoader());
+            if (!ASTNode.class.isAssignableFrom(clazz)) {
+                throw new IOException(className + " is not an AST node");
+            }
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return (ASTNode) constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("can't create the AST node " + className, e);
+        }
+    }
+
+    private FunctionScope readScope() throws IOException {
+        byte tag = readByte();
+        switch (tag) {
+            case SnapshotFormat.NULL:
+                return null;
+            case SnapshotFormat.CLOSURE_SCOPE:
+                return FunctionScope.CLOSURE;
+            case SnapshotFormat.SCOPE: {
+                boolean capturable = readByte() != 0;
+                List<Set<String>> sets = new ArrayList<>(4);
+                for (int i = 0; i < 4; i++) {
+                    int size = readSize();
+                    Set<String> names = new HashSet<>();
+                    for (int j = 0; j < size; j++) {
+                        names.add(readString());
+                    }
+                    sets.add(names);
+                }
+                return new FunctionScope(capturable, sets.get(0), sets.get(1), sets.get(2), sets.get(3));
+            }
+            default:
+                throw new IOException("unexpected tag " + tag + " for a scope");
+        }
+    }
+
+    private java.lang.Object reference() throws IOException {
+        long id = readVarLong();
+        if (id < 0 || id >= references.size() || references.get((int) id) == null) {
+            throw new IOException("invalid reference " + id);
+        }
+        return references.get((int) id);
+    }
+
+    private static <T> T cast(java.lang.Object value, Class<T> clazz) throws IOException {
+        if (!clazz.isInstance(value)) {
+            throw new IOException(String.format("expect %s but get %s", clazz.getSimpleName(),
+                    value == null ? "null" : value.getClass().getSimpleName()));
+        }
+        return clazz.cast(value);
+    }
+
+    private static Object freeze(Freezable object, int flags) {
+        if ((flags & SnapshotFormat.FLAG_FROZEN) != 0) {
+            object.freeze();
+        }
+        return (Object) object;
+    }
+
+    private String readString() throws IOException {
+        long index = readVarLong();
+        if (index == 0) {
+            return null;
+        }
+        if (index == 1) {
+            int length = readSize();
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+        if (index - 2 >= strings.size()) {
+            throw new IOException("invalid string index " + (index - 2));
+        }
+        return strings.get((int) (index - 2));
+    }
+
+    /**
+     * 读取长度,长度不能超过剩余的字节数
+     */
+    private int readSize() throws IOException {
+        long size = readVarLong();
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IOException("invalid length " + size);
+        }
+        return (int) size;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private byte readByte() {
+        return buffer.get();
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 读取步骤
+     */
+    private interface Step {
+        void run() throws IOException;
+    }
+
+    /**
+     * 接收读取完成的值
+     */
+    private interface Sink<T> {
+        void accept(T value) throws IOException;
+    }
+
+    /**
+     * 读取一个值,完成后交给sink;嵌套的值通过安排之后的步骤读取
+     */
+    private interface Decoder<T> {
+        void decode(Sink<T> sink) throws IOException;
+    }
+}
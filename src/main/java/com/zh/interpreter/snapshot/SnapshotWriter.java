@@ -0,0 +1,490 @@
+package com.zh.interpreter.snapshot;
+
+import com.zh.interpreter.ast.ASTNode;
+import com.zh.interpreter.ast.FunctionScope;
+import com.zh.interpreter.ast.expression.literal.NullLiteral;
+import com.zh.interpreter.object.Freezable;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.object.environment.BuiltInEnvironment;
+import com.zh.interpreter.object.environment.BuiltInFunctionObject;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.*;
+import com.zh.interpreter.object.tools.*;
+import com.zh.interpreter.token.Token;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 将解释器对象、环境及闭包引用的AST编码为快照格式<br/>
+ * 无法保存的对象(java对象、任务、通道、键值存储及行迭代器)写为null,并记录在被跳过的类型中
+ */
+public class SnapshotWriter {
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    /**
+     * 已写入的对象、环境及AST节点的编号
+     */
+    private final Map<java.lang.Object, Integer> references = new IdentityHashMap<>();
+
+    /**
+     * 已写入的字符串在去重表中的下标
+     */
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * 被跳过的对象类型
+     */
+    private final Set<ObjectType> skippedTypes = EnumSet.noneOf(ObjectType.class);
+
+    private int skippedCount;
+
+    /**
+     * 是否只允许纯数据值
+     */
+    private final boolean valuesOnly;
+
+    /**
+     * 尚未执行的写入步骤,嵌套的值以入栈代替递归,深层嵌套的数组、哈希及AST不会导致栈溢出
+     */
+    private final Deque<Runnable> pending = new ArrayDeque<>();
+
+    public SnapshotWriter() {
+        this(false);
+    }
+
+    /**
+     * @param valuesOnly 为true时只允许null、布尔、整数、浮点数、字符串、数组及哈希,
+     *                   遇到其它对象时抛出IllegalArgumentException而不是写为null
+     */
+    public SnapshotWriter(boolean valuesOnly) {
+        this.valuesOnly = valuesOnly;
+    }
+
+    /**
+     * 写入环境,包括其外层环境以及其中的全部值
+     *
+     * @param environment 环境
+     */
+    public void writeEnvironment(Environment environment) {
+        drain(() -> encodeEnvironment(environment));
+    }
+
+    /**
+     * 写入对象
+     *
+     * @param object 对象
+     */
+    public void writeObject(Object object) {
+        drain(() -> encodeObject(object));
+    }
+
+    /**
+     * 依次执行写入步骤直到全部完成
+     *
+     * @param first 第一个步骤
+     */
+    private void drain(Runnable first) {
+        pending.push(first);
+        try {
+            while (!pending.isEmpty()) {
+                pending.pop().run();
+            }
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * 安排之后的写入步骤,这些步骤在已安排的其它步骤之前按给定顺序执行,写入的顺序与递归写入时相同
+     *
+     * @param steps 写入步骤
+     */
+    private void schedule(List<Runnable> steps) {
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            pending.push(steps.get(i));
+        }
+    }
+
+    private void encodeEnvironment(Environment environment) {
+        if (environment == null) {
+            writeByte(SnapshotFormat.NULL);
+            return;
+        }
+        if (environment == BuiltInEnvironment.getInstance()) {
+            writeByte(SnapshotFormat.BUILT_IN_ENVIRONMENT);
+            return;
+        }
+        if (writeReference(environment)) {
+            return;
+        }
+        writeByte(SnapshotFormat.ENVIRONMENT);
+        writeByte(environment.isFrozen() ? SnapshotFormat.FLAG_FROZEN : 0);
+        writeScope(environment.scope);
+        List<Map.Entry<String, Object>> entries = new ArrayList<>(environment.getStores().entrySet());
+        List<Runnable> steps = new ArrayList<>(entries.size() + 2);
+        steps.add(() -> encodeEnvironment(environment.outerEnvironment));
+        steps.add(() -> writeVarLong(entries.size()));
+        for (Map.Entry<String, Object> entry : entries) {
+            steps.add(() -> {
+                writeString(entry.getKey());
+                encodeObject(entry.getValue());
+            });
+        }
+        schedule(steps);
+    }
+
+    private void encodeObject(Object object) {
+        if (object == null || object.getType() == ObjectType.NULL_OBJECT) {
+            writeByte(SnapshotFormat.NULL);
+            return;
+        }
+        if (valuesOnly && !isValue(object.getType())) {
+            throw new IllegalArgumentException("can't serialize an object of type " + object.getType());
+        }
+        switch (object.getType()) {
+            case BOOLEAN_OBJECT:
+                writeByte(((BooleanObject) object).value ? SnapshotFormat.TRUE : SnapshotFormat.FALSE);
+                return;
+            case BUILT_IN_FUNCTION_OBJECT:
+                writeByte(SnapshotFormat.BUILT_IN_FUNCTION);
+                writeString(((BuiltInFunctionObject) object).method.getName());
+                return;
+            case JAVA_OBJECT:
+            case TASK_OBJECT:
+            case CHANNEL_OBJECT:
+            case STORE_OBJECT:
+            case LINES_OBJECT:
+                skippedTypes.add(object.getType());
+                skippedCount++;
+                writeByte(SnapshotFormat.NULL);
+                return;
+            default:
+                break;
+        }
+        if (writeReference(object)) {
+            return;
+        }
+        switch (object.getType()) {
+            case INTEGER_OBJECT:
+                writeByte(SnapshotFormat.INTEGER);
+                writeByte(flags(object));
+                writeVarLong(zigzag(((IntegerObject) object).value));
+                break;
+            case DOUBLE_OBJECT:
+                writeByte(SnapshotFormat.DOUBLE);
+                writeByte(flags(object));
+                ensure(8);
+                buffer.putDouble(((DoubleObject) object).value);
+                break;
+            case STRING_OBJECT:
+                writeByte(SnapshotFormat.STRING);
+                writeByte(flags(object));
+                writeString(((StringObject) object).value);
+                break;
+            case ARRAY_OBJECT: {
+                ArrayObject array = (ArrayObject) object;
+                writeByte(SnapshotFormat.ARRAY);
+                writeByte(flags(object) | (array.isConcurrent() ? SnapshotFormat.FLAG_CONCURRENT : 0));
+                // 并发数组可能正在被修改,先复制一份
+                List<Object> elements = new ArrayList<>(array.elements);
+                writeVarLong(elements.size());
+                List<Runnable> steps = new ArrayList<>(elements.size());
+                for (Object element : elements) {
+                    steps.add(() -> encodeObject(element));
+                }
+                schedule(steps);
+                break;
+            }
+            case HASH_OBJECT: {
+                HashObject hash = (HashObject) object;
+                writeByte(SnapshotFormat.HASH);
+                writeByte(flags(object) | (hash.isConcurrent() ? SnapshotFormat.FLAG_CONCURRENT : 0));
+                List<Map.Entry<Object, Object>> entries = new ArrayList<>(hash.hashMap.entrySet());
+                writeVarLong(entries.size());
+                List<Runnable> steps = new ArrayList<>(entries.size() * 2);
+                for (Map.Entry<Object, Object> entry : entries) {
+                    steps.add(() -> encodeObject(entry.getKey()));
+                    steps.add(() -> encodeObject(entry.getValue()));
+                }
+                schedule(steps);
+                break;
+            }
+            case FUNCTION_OBJECT: {
+                FunctionObject function = (FunctionObject) object;
+                writeByte(SnapshotFormat.FUNCTION);
+                schedule(Arrays.asList(
+                        () -> encodeEnvironment(function.environment),
+                        () -> encodeField(function.parameters),
+                        () -> encodeField(function.statement),
+                        () -> writeScope(function.scope)));
+                break;
+            }
+            case MACRO_FUNCTION_OBJECT: {
+                MacroObject macro = (MacroObject) object;
+                writeByte(SnapshotFormat.MACRO);
+                schedule(Arrays.asList(
+                        () -> encodeEnvironment(macro.environment),
+                        () -> encodeField(macro.parameters),
+                        () -> encodeField(macro.statement)));
+                break;
+            }
+            case QUOTE_OBJECT:
+                writeByte(SnapshotFormat.QUOTE);
+                pending.push(() -> encodeField(((QuoteObject) object).node));
+                break;
+            case COUNTER_OBJECT:
+                writeByte(SnapshotFormat.COUNTER);
+                writeVarLong(zigzag(((CounterObject) object).adder.sum()));
+                break;
+            case ERROR_OBJECT:
+                writeByte(SnapshotFormat.ERROR);
+                writeString(((ErrorObject) object).message);
+                break;
+            case RETURN_OBJECT:
+                writeByte(SnapshotFormat.RETURN);
+                pending.push(() -> encodeObject(((ReturnObject) object).value));
+                break;
+            default:
+                throw new IllegalArgumentException("can't save an object of type " + object.getType());
+        }
+    }
+
+    /**
+     * 获取已写入的内容
+     *
+     * @return 只读的缓冲区,位置为0,界限为内容长度
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer duplicate = buffer.duplicate();
+        ((Buffer) duplicate).flip();
+        return duplicate.asReadOnlyBuffer();
+    }
+
+    /**
+     * 获取已写入的字节数
+     *
+     * @return 字节数
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * 获取被跳过(写为null)的对象类型
+     *
+     * @return 对象类型
+     */
+    public Set<ObjectType> getSkippedTypes() {
+        return Collections.unmodifiableSet(skippedTypes);
+    }
+
+    /**
+     * 获取被跳过(写为null)的对象个数
+     *
+     * @return 个数
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * 已经写入过的对象写为引用,否则为其分配编号
+     *
+     * @param value 对象、环境或AST节点
+     * @return 是否已写为引用
+     */
+    private boolean writeReference(java.lang.Object value) {
+        Integer id = references.get(value);
+        if (id != null) {
+            writeByte(SnapshotFormat.REFERENCE);
+            writeVarLong(id);
+            return true;
+        }
+        references.put(value, references.size());
+        return false;
+    }
+
+    /**
+     * 写入AST节点及其字段的值
+     *
+     * @param value 字段的值
+     */
+    private void encodeField(java.lang.Object value) {
+        if (value == null) {
+            writeByte(SnapshotFormat.NULL);
+        } else if (value == NullLiteral.instance) {
+            writeByte(SnapshotFormat.NULL_LITERAL);
+        } else if (value instanceof ASTNode) {
+            if (writeReference(value)) {
+                return;
+            }
+            writeByte(SnapshotFormat.NODE);
+            writeString(value.getClass().getName());
+            Field[] fields = SnapshotFormat.fields(value.getClass());
+            List<Runnable> steps = new ArrayList<>(fields.length);
+            for (Field field : fields) {
+                java.lang.Object fieldValue;
+                try {
+                    fieldValue = field.get(value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+                steps.add(() -> encodeField(fieldValue));
+            }
+            schedule(steps);
+        } else if (value instanceof Token) {
+            writeByte(SnapshotFormat.TOKEN);
+            writeString(((Token) value).type.name());
+            writeString(((Token) value).literal);
+        } else if (value instanceof String) {
+            writeByte(SnapshotFormat.FIELD_STRING);
+            writeString((String) value);
+        } else if (value instanceof Long) {
+            writeByte(SnapshotFormat.FIELD_LONG);
+            writeVarLong(zigzag((Long) value));
+        } else if (value instanceof Double) {
+            writeByte(SnapshotFormat.FIELD_DOUBLE);
+            ensure(8);
+            buffer.putDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? SnapshotFormat.TRUE : SnapshotFormat.FALSE);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writeByte(SnapshotFormat.LIST);
+            writeVarLong(list.size());
+            List<Runnable> steps = new ArrayList<>(list.size());
+            for (java.lang.Object item : list) {
+                steps.add(() -> encodeField(item));
+            }
+            schedule(steps);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeByte(SnapshotFormat.MAP);
+            writeVarLong(map.size());
+            List<Runnable> steps = new ArrayList<>(map.size() * 2);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                steps.add(() -> encodeField(entry.getKey()));
+                steps.add(() -> encodeField(entry.getValue()));
+            }
+            schedule(steps);
+        } else {
+            throw new IllegalArgumentException("can't save an AST field of type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 写入作用域分析结果
+     *
+     * @param scope 作用域分析结果
+     */
+    private void writeScope(FunctionScope scope) {
+        if (scope == null) {
+            writeByte(SnapshotFormat.NULL);
+            return;
+        }
+        if (scope == FunctionScope.CLOSURE) {
+            writeByte(SnapshotFormat.CLOSURE_SCOPE);
+            return;
+        }
+        writeByte(SnapshotFormat.SCOPE);
+        writeByte(scope.capturable ? 1 : 0);
+        for (Set<String> names : Arrays.asList(scope.freeVariables, scope.declaredVariables,
+                scope.mutatedVariables, scope.comparedVariables)) {
+            writeVarLong(names.size());
+            for (String name : names) {
+                writeString(name);
+            }
+        }
+    }
+
+    /**
+     * 写入字符串:0表示null,1表示之后为新字符串的UTF-8编码,其余为去重表下标加2
+     *
+     * @param value 字符串
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarLong(index + 2);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(1);
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * 写入无符号varint,每字节7位,最高位表示之后还有字节
+     *
+     * @param value 值,按无符号处理
+     */
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    private static boolean isValue(ObjectType type) {
+        switch (type) {
+            case BOOLEAN_OBJECT:
+            case INTEGER_OBJECT:
+            case DOUBLE_OBJECT:
+            case STRING_OBJECT:
+            case ARRAY_OBJECT:
+            case HASH_OBJECT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int flags(Object object) {
+        return object instanceof Freezable && ((Freezable) object).isFrozen() ? SnapshotFormat.FLAG_FROZEN : 0;
+    }
+
+    /**
+     * zigzag编码,使绝对值小的负数同样只占用少量字节
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * 保证缓冲区至少还有指定的剩余空间,不足时按两倍扩容
+     *
+     * @param size 需要的字节数
+     */
+    private void ensure(int size) {
+        if (buffer.remaining() >= size) {
+            return;
+        }
+        long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.position() + size);
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("the snapshot is larger than 2GB");
+        }
+        ByteBuffer larger = ByteBuffer.allocate((int) capacity);
+        ((Buffer) buffer).flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,584 @@
+package com.zh.interpreter.store;
+
+import com.zh.interpreter.object.Cloneable;
+import com.zh.interpreter.object.Freezable;
+import com.zh.interpreter.object.Hashable;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.snapshot.SnapshotReader;
+import com.zh.interpreter.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射的追加日志的持久化键值存储<br/>
+ * 文件由8字节的头部(魔数MKKV、版本)和依次追加的记录组成,每条记录为CRC32、键长度、值长度(删除标记为-1)、键、值,
+ * 键和值使用serialize的编码;内存中的哈希索引记录每个键最新记录的位置。
+ * 记录直接写入映射的内存,进程崩溃后仍然保留在操作系统的页缓存中,flush之后才保证落盘;
+ * 打开时从头扫描日志重建索引,遇到校验失败的记录(写入中途崩溃)即认为日志到此结束。
+ * 失效的记录超过有效记录且超过COMPACT_THRESHOLD时,将有效记录写入新文件并替换原文件<br/>
+ * 打开期间文件按映射区域的大小(至少INITIAL_CAPACITY)占用磁盘,日志之后填充0;关闭时截短到日志的实际长度<br/>
+ * 同一进程内打开同一文件得到同一个存储,其它进程持有文件锁期间无法打开
+ */
+public class KeyValueStore {
+    /**
+     * 失效记录超过该字节数(且超过有效记录)时自动压缩
+     */
+    public static final long COMPACT_THRESHOLD = 1 << 20;
+
+    private static final int MAGIC = 0x4D4B4B56;
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 记录头部:CRC32、键长度、值长度
+     */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * 映射区域的初始大小,不足时按两倍扩大
+     */
+    private static final int INITIAL_CAPACITY = 64 << 10;
+
+    /**
+     * 当前进程中已打开的存储,按文件的真实路径索引
+     */
+    private static final Map<Path, KeyValueStore> openStores = new ConcurrentHashMap<>();
+
+    private static final ReentrantLock openLock = new ReentrantLock();
+
+    private final Path path;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 每个键最新记录的位置,按首次写入的顺序排列;更新不改变键的位置,删除后再次写入的键排在最后
+     */
+    private final Map<Object, Entry> index = new LinkedHashMap<>();
+
+    private FileChannel channel;
+
+    private FileLock fileLock;
+
+    private MappedByteBuffer mapped;
+
+    /**
+     * 下一条记录的写入位置
+     */
+    private int end;
+
+    /**
+     * 有效记录占用的字节数
+     */
+    private long liveBytes;
+
+    /**
+     * 打开次数,减为0时关闭
+     */
+    private int references;
+
+    /**
+     * 记录在日志中的位置
+     */
+    private static class Entry {
+        final int offset;
+
+        final int keyLength;
+
+        final int valueLength;
+
+        Entry(int offset, int keyLength, int valueLength) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        int size() {
+            return RECORD_HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    private KeyValueStore(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * 打开存储,文件不存在时创建;当前进程已打开该文件时返回同一个存储,每次open需要对应一次close
+     *
+     * @param file 存储文件
+     * @return 存储
+     * @throws IOException 读写失败、文件格式错误或被其它进程打开
+     */
+    public static KeyValueStore open(Path file) throws IOException {
+        openLock.lock();
+        try {
+            if (!Files.exists(file)) {
+                Files.createFile(file);
+            }
+            Path realPath = file.toRealPath();
+            KeyValueStore store = openStores.get(realPath);
+            if (store == null) {
+                store = new KeyValueStore(realPath);
+                store.load();
+                openStores.put(realPath, store);
+            }
+            store.references++;
+            return store;
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * 读取值
+     *
+     * @param key 键
+     * @return 值,不存在时返回null
+     * @throws IOException 存储已关闭或记录无法解码
+     */
+    public Object get(Object key) throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            Entry entry = index.get(key);
+            return entry == null ? null : readValue(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入值
+     *
+     * @param key   键,需要可hash
+     * @param value 值
+     * @throws IOException              存储已关闭或写入失败
+     * @throws IllegalArgumentException 键不可hash,或键、值中存在无法序列化的对象
+     */
+    public void put(Object key, Object value) throws IOException {
+        byte[] keyBytes = encodeKey(key);
+        byte[] valueBytes = encode(value);
+        lock.lock();
+        try {
+            checkOpen();
+            Entry entry = append(keyBytes, valueBytes);
+            // 更新已有的键时保留其原来的位置
+            Entry previous = index.put(copyKey(key), entry);
+            if (previous != null) {
+                liveBytes -= previous.size();
+            }
+            liveBytes += entry.size();
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除键,日志中追加一条删除标记
+     *
+     * @param key 键
+     * @return 键是否存在
+     * @throws IOException 存储已关闭或写入失败
+     */
+    public boolean delete(Object key) throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            append(encodeKey(key), null);
+            liveBytes -= index.remove(key).size();
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按首次写入的顺序读取全部键值
+     *
+     * @param prefix 只返回以此开头的字符串键,为null时返回全部
+     * @return 键值
+     * @throws IOException 存储已关闭或记录无法解码
+     */
+    public Map<Object, Object> scan(String prefix) throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            Map<Object, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<Object, Entry> entry : index.entrySet()) {
+                if (prefix == null || entry.getKey().getType() == ObjectType.STRING_OBJECT
+                        && entry.getKey().toString().startsWith(prefix)) {
+                    result.put(entry.getKey(), readValue(entry.getValue()));
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取键的个数
+     *
+     * @return 个数
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将已写入的记录强制写入磁盘
+     *
+     * @throws IOException 存储已关闭
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            mapped.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将有效记录写入新文件并替换原文件,写入中途失败时原文件保持不变
+     *
+     * @throws IOException 存储已关闭或写入失败
+     */
+    public void compact() throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".compact");
+            FileChannel newChannel = null;
+            try {
+                try {
+                    Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(path));
+                } catch (UnsupportedOperationException e) {
+                    // 非POSIX文件系统保持临时文件的默认权限
+                }
+                newChannel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock newLock = newChannel.lock();
+                ByteBuffer header = header();
+                while (header.hasRemaining()) {
+                    newChannel.write(header);
+                }
+                // 按原顺序复制有效记录,记录的内容不变,只有位置改变
+                Map<Object, Entry> entries = new LinkedHashMap<>();
+                int position = HEADER_SIZE;
+                for (Map.Entry<Object, Entry> entry : index.entrySet()) {
+                    Entry old = entry.getValue();
+                    ByteBuffer record = mapped.duplicate();
+                    ((Buffer) record).position(old.offset).limit(old.offset + old.size());
+                    while (record.hasRemaining()) {
+                        newChannel.write(record);
+                    }
+                    entries.put(entry.getKey(), new Entry(position, old.keyLength, old.valueLength));
+                    position += old.size();
+                }
+                newChannel.force(true);
+                try {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+                // 新文件的锁在移动前已经持有,其它进程无法在替换的间隙打开
+                channel.close();
+                channel = newChannel;
+                fileLock = newLock;
+                newChannel = null;
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityFor(position));
+                end = position;
+                index.clear();
+                index.putAll(entries);
+            } finally {
+                if (newChannel != null) {
+                    newChannel.close();
+                }
+                Files.deleteIfExists(temporary);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭存储,所有打开者都关闭后释放文件锁
+     *
+     * @throws IOException 关闭文件失败
+     */
+    public void close() throws IOException {
+        openLock.lock();
+        try {
+            lock.lock();
+            try {
+                if (references == 0 || --references > 0) {
+                    return;
+                }
+                openStores.remove(path);
+                mapped.force();
+                mapped = null;
+                index.clear();
+                try {
+                    // 映射会把文件扩大到映射区域的大小(包括压缩后重新映射时),关闭时截掉日志末尾之后未使用的部分
+                    channel.truncate(end);
+                } catch (IOException e) {
+                    // 映射尚未释放时部分平台(如Windows)不允许截短,保留的0在下次打开时被当作日志结尾
+                } finally {
+                    // 关闭通道同时释放文件锁
+                    channel.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    /**
+     * 获取存储文件的路径
+     *
+     * @return 真实路径
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * 获取日志的长度
+     *
+     * @return 字节数
+     */
+    public int getLogSize() {
+        lock.lock();
+        try {
+            return end;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return mapped == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 打开文件、加锁、映射并扫描日志重建索引
+     *
+     * @throws IOException 读写失败、文件格式错误或被其它进程打开
+     */
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                throw new IOException(path + " is opened by another process");
+            }
+            long size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = header();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                size = HEADER_SIZE;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is larger than 2GB");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_CAPACITY));
+            if (size < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a monkey key-value store");
+            }
+            if (mapped.get(4) != VERSION) {
+                throw new IOException(String.format("unsupported store version %d", mapped.get(4)));
+            }
+            recover((int) size);
+        } catch (IOException | RuntimeException e) {
+            mapped = null;
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 扫描日志重建索引,校验失败的记录及之后的内容被清零,之后的写入从该位置开始
+     *
+     * @param size 文件长度
+     * @throws IOException 记录无法解码
+     */
+    private void recover(int size) throws IOException {
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int checksum = mapped.getInt(position);
+            int keyLength = mapped.getInt(position + 4);
+            int valueLength = mapped.getInt(position + 8);
+            int length = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            if (keyLength <= 0 || valueLength < -1 || length < 0 || length > size - position
+                    || checksum != checksum(position, length)) {
+                break;
+            }
+            ByteBuffer keyBuffer = slice(position + RECORD_HEADER_SIZE, keyLength);
+            Object key = new SnapshotReader(keyBuffer, true).readObject();
+            // 与put及delete相同,更新已有的键时保留其原来的位置,删除标记移除该键
+            Entry previous;
+            if (valueLength >= 0) {
+                Entry entry = new Entry(position, keyLength, valueLength);
+                previous = index.put(key, entry);
+                liveBytes += entry.size();
+            } else {
+                previous = index.remove(key);
+            }
+            if (previous != null) {
+                liveBytes -= previous.size();
+            }
+            position += length;
+        }
+        end = position;
+        for (int i = position; i < size; i++) {
+            mapped.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * 在日志末尾追加记录,先写内容后写校验和
+     *
+     * @param key   键的编码
+     * @param value 值的编码,为null时为删除标记
+     * @return 记录的位置
+     * @throws IOException 扩大映射失败或超过2GB
+     */
+    private Entry append(byte[] key, byte[] value) throws IOException {
+        int valueLength = value == null ? 0 : value.length;
+        long length = (long) RECORD_HEADER_SIZE + key.length + valueLength;
+        if (end + length > Integer.MAX_VALUE) {
+            throw new IOException(path + " would be larger than 2GB");
+        }
+        if (end + length > mapped.capacity()) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityFor(end + length));
+        }
+        int position = end;
+        mapped.putInt(position + 4, key.length);
+        mapped.putInt(position + 8, value == null ? -1 : value.length);
+        ByteBuffer content = mapped.duplicate();
+        ((Buffer) content).position(position + RECORD_HEADER_SIZE);
+        content.put(key);
+        if (value != null) {
+            content.put(value);
+        }
+        mapped.putInt(position, checksum(position, (int) length));
+        end += (int) length;
+        return new Entry(position, key.length, valueLength);
+    }
+
+    private void compactIfNeeded() throws IOException {
+        long garbage = end - HEADER_SIZE - liveBytes;
+        if (garbage >= COMPACT_THRESHOLD && garbage > liveBytes) {
+            compact();
+        }
+    }
+
+    private Object readValue(Entry entry) throws IOException {
+        return new SnapshotReader(slice(entry.offset + RECORD_HEADER_SIZE + entry.keyLength, entry.valueLength), true)
+                .readObject();
+    }
+
+    /**
+     * 计算记录除校验和以外部分的CRC32
+     */
+    private int checksum(int position, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(slice(position + 4, length - 4));
+        return (int) crc.getValue();
+    }
+
+    private ByteBuffer slice(int position, int length) {
+        ByteBuffer buffer = mapped.duplicate();
+        ((Buffer) buffer).position(position).limit(position + length);
+        return buffer.slice();
+    }
+
+    private void checkOpen() throws IOException {
+        if (mapped == null) {
+            throw new IOException(path + " is closed");
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION);
+        ((Buffer) header).clear();
+        return header;
+    }
+
+    /**
+     * 计算映射区域的大小,为需要的大小留出一倍的余量
+     */
+    private static long capacityFor(long size) {
+        return Math.min(Math.max(size * 2, INITIAL_CAPACITY), Integer.MAX_VALUE);
+    }
+
+    private static byte[] encodeKey(Object key) {
+        if (!(key instanceof Hashable)) {
+            throw new IllegalArgumentException(String.format("the type of %s can't be a key", key.getType()));
+        }
+        return encode(key);
+    }
+
+    private static byte[] encode(Object value) {
+        SnapshotWriter writer = new SnapshotWriter(true);
+        writer.writeObject(value);
+        ByteBuffer content = writer.toByteBuffer();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 复制并冻结键,避免调用者之后修改键(如字符串的+=)导致索引失效
+     */
+    private static Object copyKey(Object key) {
+        Object copy = key instanceof Cloneable ? ((Cloneable) key).cloneObject() : key;
+        if (copy instanceof Freezable) {
+            ((Freezable) copy).freeze();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,32 @@
+package com.zh.interpreter.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * 源码文件读取工具
+ */
+public abstract class FileUtils {
+    private FileUtils() {
+    }
+
+    /**
+     * 读取源码文件,各行直接拼接
+     *
+     * @param file 源码文件
+     * @return 源码
+     * @throws IOException 读取失败
+     */
+    public static String readSource(File file) throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(file))) {
+            String line;
+            StringBuilder builder = new StringBuilder();
+            while ((line = bufferedReader.readLine()) != null) {
+                builder.append(line);
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -5,18 +5,19 @@ import com.zh.interpreter.ast.expression.literal.BooleanLiteral;
 import com.zh.interpreter.ast.expression.literal.DoubleLiteral;
 import com.zh.interpreter.ast.expression.literal.IntegerLiteral;
 import com.zh.interpreter.object.Computable;
+import com.zh.interpreter.object.Freezable;
 import com.zh.interpreter.object.Object;
 import com.zh.interpreter.object.ObjectType;
 import com.zh.interpreter.object.struct.*;
+import com.zh.interpreter.object.tools.ErrorObject;
 import com.zh.interpreter.object.tools.NullObject;
 import com.zh.interpreter.object.tools.QuoteObject;
 import com.zh.interpreter.token.Token;
 import com.zh.interpreter.token.TokenType;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 
 @SuppressWarnings({"unchecked", "BooleanMethodIsAlwaysInverted"})
 public abstract class ObjectUtils {
@@ -68,6 +69,26 @@ public abstract class ObjectUtils {
         return object != null && Objects.equals(object.getType(), ObjectType.ERROR_OBJECT);
     }
 
+    /**
+     * 判断对象是否已冻结
+     *
+     * @param object 待检测对象
+     * @return 是否已冻结
+     */
+    public static boolean isFrozen(Object object) {
+        return object instanceof Freezable && ((Freezable) object).isFrozen();
+    }
+
+    /**
+     * 修改已冻结对象时的错误
+     *
+     * @param object 已冻结的对象
+     * @return ErrorObject对象
+     */
+    public static ErrorObject frozenError(Object object) {
+        return new ErrorObject(String.format("the %s is frozen and can't be modified", object.getType()));
+    }
+
     /**
      * 判断object是否为一个函数,是则返回true,
      *
@@ -170,7 +191,7 @@ public abstract class ObjectUtils {
 
     /**
      * 将数据对象转换为数值对象,此时数据对象非空且类型应该为<br/>
-     * IntegerObject、BooleanObject或DoubleObject
+     * IntegerObject、BooleanObject、DoubleObject或StringObject
      *
      * @param object 数据对象
      * @return 数值对象
@@ -187,6 +208,9 @@ public abstract class ObjectUtils {
             case DOUBLE_OBJECT:
                 integerObject.value = ((DoubleObject) object).value.longValue();
                 break;
+            case STRING_OBJECT:
+                integerObject.value = parseNumber(((StringObject) object).value).longValue();
+                break;
         }
         return integerObject;
     }
@@ -216,7 +240,7 @@ public abstract class ObjectUtils {
 
     /**
      * 将数据对象转换为double值,此时数据对象非空且类型应该为<br/>
-     * IntegerObject、BooleanObject、DoubleObject
+     * IntegerObject、BooleanObject、DoubleObject、StringObject
      *
      * @param object 数据对象
      * @return 浮点数对象
@@ -233,10 +257,32 @@ public abstract class ObjectUtils {
             case DOUBLE_OBJECT:
                 doubleObject = (DoubleObject) object;
                 break;
+            case STRING_OBJECT:
+                doubleObject.value = parseNumber(((StringObject) object).value).doubleValue();
+                break;
         }
         return doubleObject;
     }
 
+    /**
+     * 解析字符串中的数字,忽略首尾空白;无法解析时为0,与awk对非数字字段的处理相同
+     *
+     * @param value 字符串
+     * @return 整数或浮点数
+     */
+    private static Number parseNumber(String value) {
+        String trimmed = value.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(trimmed);
+            } catch (NumberFormatException ignored) {
+                return 0L;
+            }
+        }
+    }
+
     /**
      * 将数据对象转换为字符串对象
      *
@@ -280,4 +326,232 @@ public abstract class ObjectUtils {
                 return null;
         }
     }
+
+    /**
+     * 将java对象转换为解释器对象<br/>
+     * 整数、浮点数、布尔、字符串、Map、Collection及数组转换为对应的解释器对象,解释器对象原样返回,其余对象封装为JavaObject
+     *
+     * @param value java对象
+     * @return 解释器对象
+     */
+    public static Object convertFromJava(java.lang.Object value) {
+        return convertFromJava(value, new IdentityHashMap<>());
+    }
+
+    /**
+     * 将java对象转换为解释器对象,容器按引用记录已转换的结果,因此自引用的容器转换后仍为自引用
+     *
+     * @param value     java对象
+     * @param converted 已转换的容器
+     * @return 解释器对象
+     */
+    private static Object convertFromJava(java.lang.Object value, Map<java.lang.Object, Object> converted) {
+        if (value == null) {
+            return NullObject.getInstance();
+        }
+        if (value instanceof Object) {
+            return (Object) value;
+        }
+        // 冻结值的视图还原为原来的解释器对象
+        if (value instanceof FrozenList) {
+            return ((FrozenList) value).array;
+        }
+        if (value instanceof FrozenMap) {
+            return ((FrozenMap) value).hash;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return new IntegerObject(((Number) value).longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return new DoubleObject(((Number) value).doubleValue());
+        }
+        if (value instanceof Boolean) {
+            return BooleanObject.getInstance((Boolean) value);
+        }
+        if (value instanceof CharSequence || value instanceof Character) {
+            StringObject stringObject = new StringObject();
+            stringObject.value = value.toString();
+            return stringObject;
+        }
+        Object result = converted.get(value);
+        if (result != null) {
+            return result;
+        }
+        if (value instanceof Map) {
+            HashObject hashObject = new HashObject();
+            converted.put(value, hashObject);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                hashObject.hashMap.put(convertFromJava(entry.getKey(), converted), convertFromJava(entry.getValue(), converted));
+            }
+            return hashObject;
+        }
+        if (value instanceof Collection) {
+            ArrayObject arrayObject = new ArrayObject();
+            converted.put(value, arrayObject);
+            for (java.lang.Object element : (Collection<?>) value) {
+                arrayObject.elements.add(convertFromJava(element, converted));
+            }
+            return arrayObject;
+        }
+        if (value.getClass().isArray()) {
+            ArrayObject arrayObject = new ArrayObject();
+            converted.put(value, arrayObject);
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                arrayObject.elements.add(convertFromJava(Array.get(value, i), converted));
+            }
+            return arrayObject;
+        }
+        JavaObject javaObject = new JavaObject();
+        javaObject.object = value;
+        return javaObject;
+    }
+
+    /**
+     * 将解释器对象转换为java对象<br/>
+     * 整数转换为Long,浮点数转换为Double,JavaObject解包;已冻结的数组和哈希不经复制地转换为只读的List及Map视图,
+     * 其余数组和哈希复制为ArrayList及LinkedHashMap,调用方持有的结果与解释器内部的存储互不影响;函数等其余对象原样返回
+     *
+     * @param object 解释器对象
+     * @return java对象
+     */
+    public static java.lang.Object convertToJava(Object object) {
+        return convertToJava(object, new IdentityHashMap<>());
+    }
+
+    /**
+     * 将解释器对象转换为java对象,容器按引用记录已转换的结果,因此自引用的数组或哈希转换后仍为自引用
+     *
+     * @param object    解释器对象
+     * @param converted 已转换的容器
+     * @return java对象
+     */
+    private static java.lang.Object convertToJava(Object object, Map<Object, java.lang.Object> converted) {
+        if (object == null) {
+            return null;
+        }
+        switch (object.getType()) {
+            case INTEGER_OBJECT:
+                return ((IntegerObject) object).value;
+            case DOUBLE_OBJECT:
+                return ((DoubleObject) object).value;
+            case BOOLEAN_OBJECT:
+                return ((BooleanObject) object).value;
+            case STRING_OBJECT:
+                return ((StringObject) object).value;
+            case NULL_OBJECT:
+                return null;
+            case JAVA_OBJECT:
+                return ((JavaObject) object).object;
+            case ARRAY_OBJECT: {
+                if (((ArrayObject) object).isFrozen()) {
+                    return new FrozenList((ArrayObject) object);
+                }
+                java.lang.Object result = converted.get(object);
+                if (result != null) {
+                    return result;
+                }
+                List<Object> elements = ((ArrayObject) object).elements;
+                List<java.lang.Object> list = new ArrayList<>(elements.size());
+                converted.put(object, list);
+                for (Object element : elements) {
+                    list.add(convertToJava(element, converted));
+                }
+                return list;
+            }
+            case HASH_OBJECT: {
+                if (((HashObject) object).isFrozen()) {
+                    return new FrozenMap((HashObject) object);
+                }
+                java.lang.Object result = converted.get(object);
+                if (result != null) {
+                    return result;
+                }
+                Map<java.lang.Object, java.lang.Object> map = new LinkedHashMap<>();
+                converted.put(object, map);
+                for (Map.Entry<Object, Object> entry : ((HashObject) object).hashMap.entrySet()) {
+                    map.put(convertToJava(entry.getKey(), converted), convertToJava(entry.getValue(), converted));
+                }
+                return map;
+            }
+            case ERROR_OBJECT:
+                return ((ErrorObject) object).message;
+            default:
+                return object;
+        }
+    }
+
+    /**
+     * 已冻结数组的只读视图,元素在读取时转换;冻结是深层的,因此视图的内容不会再改变
+     */
+    private static final class FrozenList extends AbstractList<java.lang.Object> implements RandomAccess {
+        private final ArrayObject array;
+
+        private FrozenList(ArrayObject array) {
+            this.array = array;
+        }
+
+        @Override
+        public java.lang.Object get(int index) {
+            return convertToJava(array.elements.get(index));
+        }
+
+        @Override
+        public int size() {
+            return array.elements.size();
+        }
+    }
+
+    /**
+     * 已冻结哈希的只读视图,键值在读取时转换;冻结是深层的,因此视图的内容不会再改变
+     */
+    private static final class FrozenMap extends AbstractMap<java.lang.Object, java.lang.Object> {
+        private final HashObject hash;
+
+        private FrozenMap(HashObject hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public java.lang.Object get(java.lang.Object key) {
+            return convertToJava(hash.hashMap.get(convertFromJava(key)));
+        }
+
+        @Override
+        public boolean containsKey(java.lang.Object key) {
+            return hash.hashMap.containsKey(convertFromJava(key));
+        }
+
+        @Override
+        public int size() {
+            return hash.hashMap.size();
+        }
+
+        @Override
+        public Set<Entry<java.lang.Object, java.lang.Object>> entrySet() {
+            return new AbstractSet<Entry<java.lang.Object, java.lang.Object>>() {
+                @Override
+                public Iterator<Entry<java.lang.Object, java.lang.Object>> iterator() {
+                    Iterator<Map.Entry<Object, Object>> iterator = hash.hashMap.entrySet().iterator();
+                    return new Iterator<Entry<java.lang.Object, java.lang.Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<java.lang.Object, java.lang.Object> next() {
+                            Map.Entry<Object, Object> entry = iterator.next();
+                            return new SimpleImmutableEntry<>(convertToJava(entry.getKey()), convertToJava(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return hash.hashMap.size();
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,241 @@
+package com.zh.interpreter.utils;
+
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.evaluator.ExecutionContext;
+import com.zh.interpreter.object.Cloneable;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.tools.NullObject;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数组的并行处理工具<br/>
+ * 将数组按下标切分后交给ForkJoinPool执行,每个工作线程在调用方的执行上下文及调用深度下对回调函数求值,
+ * 结果按下标写回,因此与顺序执行的结果顺序一致;出现错误时返回下标最小的错误
+ */
+public abstract class ParallelUtils {
+    /**
+     * 每个任务至少处理的元素数
+     */
+    private static final int minChunk = Math.max(1, Integer.getInteger("monkey.parallel.minChunk", 16));
+
+    private ParallelUtils() {
+    }
+
+    /**
+     * 调用函数,将求值器返回的null视为NullObject
+     *
+     * @param function  函数对象
+     * @param name      函数名
+     * @param arguments 参数
+     * @return 返回值
+     */
+    public static Object call(Object function, String name, Object... arguments) {
+        Object result = Evaluator.applyFunction(function, name, Arrays.asList(arguments));
+        return result == null ? NullObject.getInstance() : result;
+    }
+
+    /**
+     * 并行地对每个元素调用函数
+     *
+     * @param elements 元素
+     * @param function 函数对象
+     * @param name     函数名
+     * @param results  按下标存放的结果,长度与元素数相同
+     * @return 下标最小的错误,没有错误时返回null
+     */
+    public static Object map(Object[] elements, Object function, String name, Object[] results) {
+        AtomicInteger firstError = new AtomicInteger(elements.length);
+        ForkJoinPool.commonPool().invoke(new MapTask(ExecutionContext.current(), Evaluator.getCallDepth(), elements, function, name,
+                results, firstError, 0, elements.length, chunkSize(elements.length)));
+        return firstError.get() < elements.length ? results[firstError.get()] : null;
+    }
+
+    /**
+     * 并行归约,各段从初始值的副本开始顺序归约,再按顺序两两合并,函数需要满足结合律
+     *
+     * @param elements 元素
+     * @param function 二元函数对象
+     * @param name     函数名
+     * @param identity 初始值,需要是函数的单位元
+     * @return 归约结果或者错误
+     */
+    public static Object reduce(Object[] elements, Object function, String name, Object identity) {
+        if (elements.length == 0) {
+            return identity;
+        }
+        return ForkJoinPool.commonPool().invoke(new ReduceTask(ExecutionContext.current(), Evaluator.getCallDepth(), elements, function, name,
+                identity, 0, elements.length, chunkSize(elements.length)));
+    }
+
+    /**
+     * 计算每个任务处理的元素数
+     */
+    private static int chunkSize(int length) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        return Math.max(minChunk, length / (parallelism * 4));
+    }
+
+    /**
+     * 复制可变的初始值,避免+=等原地修改影响其它分段
+     */
+    private static Object copy(Object identity) {
+        return identity instanceof Cloneable ? ((Cloneable) identity).cloneObject() : identity;
+    }
+
+    private static class MapTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ExecutionContext context;
+
+        /**
+         * 调用方的函数调用深度
+         */
+        private final int depth;
+
+        private final Object[] elements;
+
+        private final Object function;
+
+        private final String name;
+
+        private final Object[] results;
+
+        private final AtomicInteger firstError;
+
+        private final int from;
+
+        private final int to;
+
+        private final int chunk;
+
+        private MapTask(ExecutionContext context, int depth, Object[] elements, Object function, String name,
+                        Object[] results, AtomicInteger firstError, int from, int to, int chunk) {
+            this.context = context;
+            this.depth = depth;
+            this.elements = elements;
+            this.function = function;
+            this.name = name;
+            this.results = results;
+            this.firstError = firstError;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunk) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MapTask(context, depth, elements, function, name, results, firstError, from, middle, chunk),
+                        new MapTask(context, depth, elements, function, name, results, firstError, middle, to, chunk));
+                return;
+            }
+            ExecutionContext previous = ExecutionContext.enter(context);
+            int previousDepth = Evaluator.setCallDepth(depth);
+            try {
+                // 已经有更靠前的错误时停止
+                for (int i = from; i < to && i < firstError.get(); i++) {
+                    results[i] = call(function, name, elements[i]);
+                    if (ObjectUtils.isError(results[i])) {
+                        int current;
+                        do {
+                            current = firstError.get();
+                        } while (i < current && !firstError.compareAndSet(current, i));
+                        break;
+                    }
+                }
+            } finally {
+                Evaluator.setCallDepth(previousDepth);
+                ExecutionContext.exit(previous);
+            }
+        }
+    }
+
+    private static class ReduceTask extends RecursiveTask<Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final ExecutionContext context;
+
+        /**
+         * 调用方的函数调用深度
+         */
+        private final int depth;
+
+        private final Object[] elements;
+
+        private final Object function;
+
+        private final String name;
+
+        private final Object identity;
+
+        private final int from;
+
+        private final int to;
+
+        private final int chunk;
+
+        private ReduceTask(ExecutionContext context, int depth, Object[] elements, Object function, String name,
+                           Object identity, int from, int to, int chunk) {
+            this.context = context;
+            this.depth = depth;
+            this.elements = elements;
+            this.function = function;
+            this.name = name;
+            this.identity = identity;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected Object compute() {
+            if (to - from > chunk) {
+                int middle = (from + to) >>> 1;
+                ReduceTask left = new ReduceTask(context, depth, elements, function, name, identity, from, middle, chunk);
+                ReduceTask right = new ReduceTask(context, depth, elements, function, name, identity, middle, to, chunk);
+                right.fork();
+                Object leftResult = left.compute();
+                Object rightResult = right.join();
+                if (ObjectUtils.isError(leftResult)) {
+                    return leftResult;
+                }
+                if (ObjectUtils.isError(rightResult)) {
+                    return rightResult;
+                }
+                return combine(leftResult, rightResult);
+            }
+            ExecutionContext previous = ExecutionContext.enter(context);
+            int previousDepth = Evaluator.setCallDepth(depth);
+            try {
+                Object accumulator = copy(identity);
+                for (int i = from; i < to; i++) {
+                    accumulator = call(function, name, accumulator, elements[i]);
+                    if (ObjectUtils.isError(accumulator)) {
+                        return accumulator;
+                    }
+                }
+                return accumulator;
+            } finally {
+                Evaluator.setCallDepth(previousDepth);
+                ExecutionContext.exit(previous);
+            }
+        }
+
+        private Object combine(Object left, Object right) {
+            ExecutionContext previous = ExecutionContext.enter(context);
+            int previousDepth = Evaluator.setCallDepth(depth);
+            try {
+                return call(function, name, left, right);
+            } finally {
+                Evaluator.setCallDepth(previousDepth);
+                ExecutionContext.exit(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.zh.interpreter.utils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 操作系统信号的注册工具<br/>
+ * sun.misc.Signal不是标准api,通过反射调用以避免编译警告,不支持该api或该信号的jvm上注册失败
+ */
+public abstract class SignalUtils {
+    private SignalUtils() {
+    }
+
+    /**
+     * 注册信号处理函数,替换该信号原有的处理方式
+     *
+     * @param name    信号名,如INT、USR1
+     * @param handler 收到信号时在信号分发线程中执行
+     * @return 是否注册成功
+     */
+    public static boolean handle(String name, Runnable handler) {
+        try {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Object signal = signalClass.getConstructor(String.class).newInstance(name);
+            Object proxy = Proxy.newProxyInstance(SignalUtils.class.getClassLoader(), new Class<?>[]{handlerClass},
+                    (instance, method, arguments) -> invoke(instance, method, arguments, handler));
+            signalClass.getMethod("handle", signalClass, handlerClass).invoke(null, signal, proxy);
+            return true;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * SignalHandler代理的方法分发,handle转给处理函数,其余为Object的方法
+     */
+    private static Object invoke(Object instance, Method method, Object[] arguments, Runnable handler) {
+        switch (method.getName()) {
+            case "handle":
+                handler.run();
+                return null;
+            case "equals":
+                return instance == arguments[0];
+            case "hashCode":
+                return System.identityHashCode(instance);
+            default:
+                return "SignalHandler(" + handler + ")";
+        }
+    }
+}
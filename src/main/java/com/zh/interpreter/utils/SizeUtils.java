@@ -0,0 +1,99 @@
+package com.zh.interpreter.utils;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.ObjectType;
+import com.zh.interpreter.object.struct.ArrayObject;
+import com.zh.interpreter.object.struct.HashObject;
+import com.zh.interpreter.object.struct.StringObject;
+
+/**
+ * 解释器对象内存占用的估算工具,按64位jvm开启压缩指针的布局估算
+ */
+public abstract class SizeUtils {
+    /**
+     * 对象头大小
+     */
+    private static final int HEADER = 12;
+
+    /**
+     * 引用大小
+     */
+    private static final int REFERENCE = 4;
+
+    /**
+     * 数组每个元素槽位的大小(含ArrayList扩容的平均浪费)
+     */
+    public static final int ARRAY_SLOT = 6;
+
+    /**
+     * 哈希每个键值对的大小(HashMap.Node及桶槽位)
+     */
+    public static final int HASH_ENTRY = 40;
+
+    private SizeUtils() {
+    }
+
+    /**
+     * 对齐到8字节
+     *
+     * @param size 字节数
+     * @return 对齐后的字节数
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * 估算对象刚创建时的大小,不包含之后写入的字符串内容及数组、哈希中的元素
+     *
+     * @param type 对象类型
+     * @return 字节数
+     */
+    public static long shallowSize(ObjectType type) {
+        switch (type) {
+            case INTEGER_OBJECT:
+            case DOUBLE_OBJECT:
+                // 对象本身加装箱的Long/Double
+                return align(HEADER + REFERENCE) + align(HEADER + 8);
+            case ARRAY_OBJECT:
+                // 对象本身加ArrayList
+                return align(HEADER + REFERENCE) + align(HEADER + 4 + 4 + REFERENCE);
+            case HASH_OBJECT:
+                // 对象本身加HashMap
+                return align(HEADER + REFERENCE) + align(HEADER + 4 * REFERENCE + 4 * 4);
+            case FUNCTION_OBJECT:
+                return align(HEADER + 4 * REFERENCE);
+            case MACRO_FUNCTION_OBJECT:
+                return align(HEADER + 3 * REFERENCE);
+            default:
+                return align(HEADER + REFERENCE);
+        }
+    }
+
+    /**
+     * 估算对象自身占用的大小,包含字符串内容以及数组、哈希的槽位,但不包含元素对象本身
+     *
+     * @param object 对象
+     * @return 字节数
+     */
+    public static long selfSize(Object object) {
+        long size = shallowSize(object.getType());
+        switch (object.getType()) {
+            case STRING_OBJECT: {
+                String value = ((StringObject) object).value;
+                if (value != null) {
+                    // String对象加字节数组
+                    size += align(HEADER + REFERENCE + 4 + 1 + 1) + align(16 + value.length());
+                }
+                break;
+            }
+            case ARRAY_OBJECT:
+                size += (long) ARRAY_SLOT * ((ArrayObject) object).elements.size();
+                break;
+            case HASH_OBJECT:
+                size += (long) HASH_ENTRY * ((HashObject) object).hashMap.size();
+                break;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,173 @@
+package com.zh.interpreter.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.jar.Manifest;
+
+/**
+ * 执行线程的创建工具<br/>
+ * 源码保持jdk8兼容,jdk21的虚拟线程通过反射获取;运行在jdk21及以上且开启虚拟线程时,
+ * 每次脚本执行都在独立的虚拟线程中进行,阻塞在io上的脚本不会占住平台线程
+ */
+public abstract class ThreadUtils {
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor方法,jdk21以下为null
+     */
+    private static final Method virtualThreadExecutor;
+
+    /**
+     * Thread.isVirtual方法,jdk21以下为null
+     */
+    private static final Method isVirtualMethod;
+
+    /**
+     * 是否使用虚拟线程
+     */
+    private static volatile boolean virtualThreads;
+
+    /**
+     * 执行spawn任务的线程池,首次使用时创建
+     */
+    private static volatile ExecutorService taskExecutor;
+
+    private static final ReentrantLock taskLock = new ReentrantLock();
+
+    private static final AtomicInteger taskThreadCount = new AtomicInteger();
+
+    static {
+        Method method;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        virtualThreadExecutor = method;
+        try {
+            method = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        isVirtualMethod = method;
+        // 系统属性优先,其次为java21构建写入清单的默认值
+        String property = System.getProperty("monkey.virtualThreads");
+        virtualThreads = method != null && (property != null ? Boolean.parseBoolean(property) : manifestDefault());
+    }
+
+    private ThreadUtils() {
+    }
+
+    /**
+     * 当前jvm是否支持虚拟线程
+     *
+     * @return 是否支持
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * 判断线程是否为虚拟线程
+     *
+     * @param thread 线程
+     * @return 是否为虚拟线程,jdk21以下始终为false
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (isVirtualMethod == null) {
+            return false;
+        }
+        try {
+            return (Boolean) isVirtualMethod.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 是否使用虚拟线程执行脚本
+     *
+     * @return 是否使用
+     */
+    public static boolean isVirtualThreadEnabled() {
+        return virtualThreads;
+    }
+
+    /**
+     * 设置是否使用虚拟线程执行脚本
+     *
+     * @param enabled 是否使用
+     * @return 设置后是否使用,jvm不支持时始终为false
+     */
+    public static boolean setVirtualThreadEnabled(boolean enabled) {
+        virtualThreads = enabled && isVirtualThreadSupported();
+        return virtualThreads;
+    }
+
+    /**
+     * 创建执行脚本的线程池,开启虚拟线程时每个任务一个虚拟线程,否则为固定大小的平台线程池
+     *
+     * @param threads 平台线程数
+     * @return 线程池
+     */
+    public static ExecutorService newExecutor(int threads) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) virtualThreadExecutor.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace();
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * 获取执行spawn任务的线程池,开启虚拟线程时每个任务一个虚拟线程,否则为按需创建的守护线程池;
+     * 任务之间可以互相等待,因此不使用固定大小的线程池
+     *
+     * @return 线程池
+     */
+    public static ExecutorService taskExecutor() {
+        ExecutorService executor = taskExecutor;
+        if (executor == null) {
+            taskLock.lock();
+            try {
+                executor = taskExecutor;
+                if (executor == null) {
+                    executor = virtualThreads ? newExecutor(1) : Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "monkey-task-" + taskThreadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    taskExecutor = executor;
+                }
+            } finally {
+                taskLock.unlock();
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 读取jar清单中由java21构建写入的默认值
+     *
+     * @return 是否默认使用虚拟线程
+     */
+    private static boolean manifestDefault() {
+        // 只读取解释器所在jar的清单
+        URL resource = ThreadUtils.class.getResource("ThreadUtils.class");
+        if (resource == null || !"jar".equals(resource.getProtocol())) {
+            return false;
+        }
+        String path = resource.toString();
+        try (InputStream inputStream = new URL(path.substring(0, path.indexOf("!/") + 2) + "META-INF/MANIFEST.MF").openStream()) {
+            return Boolean.parseBoolean(new Manifest(inputStream).getMainAttributes().getValue("Monkey-Virtual-Threads"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.zh.interpreter.daemon;
+
+import com.zh.interpreter.evaluator.CancellationToken;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 守护进程请求及响应帧的编码,以及对超长数据的拒绝
+ */
+public class DaemonProtocolTest {
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static void assertRejected(byte[] bytes, String message) {
+        try {
+            DaemonProtocol.readRequest(input(bytes));
+            fail("expected the request to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void requestRoundTrips() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DaemonProtocol.writeRequest(new DataOutputStream(bytes), DaemonProtocol.REQUEST_SOURCE, "main.mk",
+                "puts(\"你好\");", Arrays.asList("a", "b c"));
+        DaemonProtocol.Request request = DaemonProtocol.readRequest(input(bytes.toByteArray()));
+        assertEquals(DaemonProtocol.REQUEST_SOURCE, request.type);
+        assertEquals("main.mk", request.name);
+        assertEquals("puts(\"你好\");", request.source);
+        assertEquals(Arrays.asList("a", "b c"), request.arguments);
+    }
+
+    @Test
+    public void unknownRequestTypeIsRejected() {
+        assertRejected(new byte[]{'Z'}, "unknown request type");
+    }
+
+    @Test
+    public void oversizedSourceLengthIsRejectedBeforeAllocating() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(DaemonProtocol.REQUEST_SOURCE);
+        output.writeUTF("main.mk");
+        output.writeInt(DaemonProtocol.MAX_FRAME_LENGTH + 1);
+        assertRejected(bytes.toByteArray(), "invalid length");
+    }
+
+    @Test
+    public void negativeLengthIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-1);
+        try {
+            DaemonProtocol.readBytes(input(bytes.toByteArray()));
+            fail("expected the length to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("invalid length"));
+        }
+    }
+
+    @Test
+    public void tooManyArgumentsAreRejected() throws IOException {
+        List<String> arguments = new ArrayList<>(Collections.nCopies(DaemonProtocol.MAX_ARGUMENTS + 1, "x"));
+        try {
+            DaemonProtocol.writeRequest(new DataOutputStream(new ByteArrayOutputStream()), DaemonProtocol.REQUEST_PATH,
+                    "main.mk", "", arguments);
+            fail("expected the arguments to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too many arguments"));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(DaemonProtocol.REQUEST_PATH);
+        output.writeUTF("main.mk");
+        output.writeInt(0);
+        output.writeInt(DaemonProtocol.MAX_ARGUMENTS + 1);
+        assertRejected(bytes.toByteArray(), "invalid argument count");
+    }
+
+    @Test
+    public void oversizedSourceIsNotSent() {
+        char[] source = new char[DaemonProtocol.MAX_FRAME_LENGTH + 1];
+        Arrays.fill(source, 'x');
+        try {
+            DaemonProtocol.writeRequest(new DataOutputStream(new ByteArrayOutputStream()), DaemonProtocol.REQUEST_SOURCE,
+                    "main.mk", new String(source), Collections.<String>emptyList());
+            fail("expected the source to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceed the limit"));
+        }
+    }
+
+    @Test
+    public void longOutputIsSplitIntoFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameOutputStream frames = new FrameOutputStream(new DataOutputStream(bytes), new CancellationToken());
+        byte[] content = new byte[DaemonProtocol.MAX_FRAME_LENGTH + 10];
+        content[content.length - 1] = 'z';
+        frames.write(content, 0, content.length);
+        frames.exit(3);
+        DataInputStream input = input(bytes.toByteArray());
+        assertEquals(DaemonProtocol.FRAME_OUTPUT, input.readByte());
+        assertEquals(DaemonProtocol.MAX_FRAME_LENGTH, DaemonProtocol.readBytes(input).length);
+        assertEquals(DaemonProtocol.FRAME_OUTPUT, input.readByte());
+        byte[] tail = DaemonProtocol.readBytes(input);
+        assertEquals(10, tail.length);
+        assertEquals('z', tail[9]);
+        assertEquals(DaemonProtocol.FRAME_EXIT, input.readByte());
+        assertArrayEquals("3".getBytes(StandardCharsets.UTF_8), DaemonProtocol.readBytes(input));
+        assertEquals(-1, input.read());
+    }
+
+    @Test
+    public void brokenConnectionCancelsExecution() {
+        int[] writes = new int[1];
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writes[0]++;
+                throw new IOException("broken pipe");
+            }
+        };
+        CancellationToken token = new CancellationToken();
+        FrameOutputStream frames = new FrameOutputStream(new DataOutputStream(broken), token);
+        assertFalse(token.isCancelled());
+        frames.write('a');
+        assertTrue(token.isCancelled());
+        // 之后的输出被丢弃
+        frames.write('b');
+        assertEquals(1, writes[0]);
+    }
+}
@@ -0,0 +1,65 @@
+package com.zh.interpreter.engine;
+
+import org.junit.Test;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * JSR-223引擎在多次执行之间保留脚本状态,结果只在返回给java时转换
+ */
+public class MonkeyScriptEngineTest {
+    private final ScriptEngine engine = new MonkeyScriptEngineFactory().getScriptEngine();
+
+    @Test
+    public void stateIsSharedBetweenEvalAndInvokeFunction() throws Exception {
+        engine.eval("let arr = []; let add = function(x) { push(arr, x); };");
+        assertEquals(2L, engine.eval("add(1); add(2); size(arr)"));
+        ((Invocable) engine).invokeFunction("add", 3);
+        assertEquals(Arrays.asList(1L, 2L, 3L), engine.eval("arr"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void mutableResultIsCopied() throws Exception {
+        engine.eval("let arr = [1, 2];");
+        List<?> result = (List<?>) engine.eval("arr");
+        ((List<Object>) result).add(3L);
+        assertEquals(2L, engine.eval("size(arr)"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void frozenResultIsReadOnlyView() throws Exception {
+        engine.eval("let h = freeze({\"a\": [1, 2]});");
+        Map<?, ?> result = (Map<?, ?>) engine.eval("h");
+        assertEquals(Collections.singletonMap("a", Arrays.asList(1L, 2L)), result);
+        assertEquals(Arrays.asList(1L, 2L), result.get("a"));
+        try {
+            ((Map<Object, Object>) result).put("b", 1L);
+            fail("expected the view to be read-only");
+        } catch (UnsupportedOperationException expected) {
+            // 只读视图
+        }
+        // 视图传回脚本时还原为同一个冻结的哈希
+        engine.put("view", result);
+        assertEquals(true, engine.eval("isFrozen(view)"));
+    }
+
+    @Test
+    public void outputGoesToContextWriter() throws Exception {
+        StringWriter writer = new StringWriter();
+        engine.getContext().setWriter(writer);
+        engine.eval("puts(\"hello\");");
+        assertTrue(writer.toString(), writer.toString().startsWith("hello"));
+    }
+}
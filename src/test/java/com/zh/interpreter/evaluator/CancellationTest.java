@@ -0,0 +1,55 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.engine.EvaluationException;
+import com.zh.interpreter.engine.MonkeyEngine;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 取消后执行立即停止,之后的语句及内置函数调用不会执行
+ */
+public class CancellationTest {
+    private static final String CANCEL = "callJava(\"com.zh.interpreter.evaluator.CancellationToken\", \"cancel\", token)";
+
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private String run(String source) throws Exception {
+        CancellationToken token = new CancellationToken();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        try {
+            engine.compile(source).run(Collections.singletonMap("token", token), out, ExecutionLimits.UNLIMITED, token);
+            fail("expected the execution to be cancelled");
+        } catch (EvaluationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("cancelled"));
+        }
+        assertTrue(token.isCancelled());
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void cancelStopsRemainingTopLevelStatements() throws Exception {
+        assertEquals("before\n", run("puts(\"before\");\n" + CANCEL + ";\nputs(\"after\");"));
+    }
+
+    @Test
+    public void cancelStopsRemainingBlockStatements() throws Exception {
+        String source = "let f = function() { puts(\"before\"); " + CANCEL + "; puts(\"in block after\"); };\n" +
+                "f();\n" +
+                "puts(\"top-level after\");";
+        assertEquals("before\n", run(source));
+    }
+
+    @Test
+    public void cancelStopsRemainingBuiltInCallsInExpression() throws Exception {
+        assertEquals("", run("let a = [" + CANCEL + ", puts(\"same expression\")];"));
+    }
+}
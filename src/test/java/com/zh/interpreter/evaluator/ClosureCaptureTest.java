@@ -0,0 +1,76 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.ast.FunctionScope;
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.object.tools.FunctionObject;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 闭包只捕获引用到的变量,绑定可能被替换时退回捕获整个环境
+ */
+public class ClosureCaptureTest {
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private Object eval(String source) {
+        return engine.eval(source, Collections.emptyMap());
+    }
+
+    @Test
+    public void closureCapturesOnlyReferencedVariables() {
+        FunctionObject function = (FunctionObject) eval("let make = function() { let big = [1, 2, 3]; let x = 5; function() { x } };\n" +
+                "make()");
+        assertSame(FunctionScope.CLOSURE, function.environment.scope);
+        assertEquals(Collections.singleton("x"), function.environment.getStores().keySet());
+        // 外层直接是全局环境,调用产生的局部环境不再被引用
+        assertNull(function.environment.outerEnvironment.scope);
+        assertEquals(5L, eval("let make = function() { let big = [1, 2, 3]; let x = 5; function() { x } }; make()()"));
+    }
+
+    @Test
+    public void reassignedVariableFallsBackToFullCapture() {
+        FunctionObject function = (FunctionObject) eval("let make = function() { let x = 1; let f = function() { x }; x = 2; f };\n" +
+                "make()");
+        assertNotSame(FunctionScope.CLOSURE, function.environment.scope);
+        assertEquals(2L, eval("let make = function() { let x = 1; let f = function() { x }; x = 2; f }; make()()"));
+    }
+
+    @Test
+    public void variableDeclaredAfterClosureFallsBackToFullCapture() {
+        assertEquals(3L, eval("let make = function() { let f = function() { y }; let y = 3; f }; make()()"));
+    }
+
+    @Test
+    public void quoteFallsBackToFullCapture() {
+        FunctionObject function = (FunctionObject) eval("let make = function() { let y = 1; function() { quote(y) } };\n" +
+                "make()");
+        assertNotSame(FunctionScope.CLOSURE, function.environment.scope);
+    }
+
+    @Test
+    public void recursiveLocalFunctionSeesItself() {
+        assertEquals(120L, eval("let outer = function() {\n" +
+                "  let fact = function(n) { if (n < 2) { 1 } else { n * fact(n - 1) } };\n" +
+                "  fact\n" +
+                "};\n" +
+                "outer()(5)"));
+    }
+
+    @Test
+    public void capturedContainerIsShared() {
+        assertEquals(2L, eval("let make = function() { let h = {\"n\": 0}; function() { h[\"n\"] += 1; h[\"n\"] } };\n" +
+                "let c = make(); c(); c()"));
+    }
+
+    @Test
+    public void topLevelClosureUsesGlobalEnvironment() {
+        FunctionObject function = (FunctionObject) eval("let f = function() { 1 }; f");
+        assertNull(function.environment.scope);
+    }
+}
@@ -0,0 +1,71 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.engine.EvaluationException;
+import com.zh.interpreter.engine.MonkeyEngine;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 超出配额后执行立即停止,之后的语句不会执行
+ */
+public class ExecutionLimitsTest {
+    private static final String SCRIPT = "let f = function() { let i = 0; while (true) { i += 1; } puts(\"after loop\"); };\n" +
+            "f();\n" +
+            "puts(\"top-level after\");";
+
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private String run(String source, ExecutionLimits limits, String expected) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        try {
+            engine.compile(source).run(Collections.emptyMap(), out, limits);
+            fail("expected the execution to be aborted");
+        } catch (EvaluationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expected));
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void stepLimitStopsRemainingStatements() throws Exception {
+        assertEquals("", run(SCRIPT, new ExecutionLimits(1000, 0, 0, 0), "step limit"));
+    }
+
+    @Test
+    public void timeoutStopsRemainingStatements() throws Exception {
+        assertEquals("", run(SCRIPT, new ExecutionLimits(0, 100, 0, 0), "timeout"));
+    }
+
+    @Test
+    public void allocationLimitStopsRemainingStatements() throws Exception {
+        String source = "let f = function() { let a = []; while (true) { push(a, [1, 2]); } puts(\"after loop\"); };\n" +
+                "f();\n" +
+                "puts(\"top-level after\");";
+        assertEquals("", run(source, new ExecutionLimits(0, 0, 1 << 20, 0), "allocation limit"));
+    }
+
+    @Test
+    public void depthLimitStopsRemainingStatements() throws Exception {
+        String source = "let f = function(n) { f(n + 1); puts(\"after call\"); };\n" +
+                "f(0);\n" +
+                "puts(\"top-level after\");";
+        assertEquals("", run(source, new ExecutionLimits(0, 0, 0, 50), "call depth"));
+    }
+
+    @Test
+    public void depthLimitAppliesAcrossSpawnedTasks() throws Exception {
+        String source = "let f = function(n) { await(spawn(f, n + 1)); puts(\"after call\"); };\n" +
+                "f(0);\n" +
+                "puts(\"top-level after\");";
+        assertEquals("", run(source, new ExecutionLimits(0, 0, 0, 50), "call depth"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.zh.interpreter.evaluator;
+
+import com.zh.interpreter.engine.EvaluationException;
+import com.zh.interpreter.engine.MonkeyEngine;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 冻结值不能被原地修改
+ */
+public class FreezeTest {
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private Object eval(String source) {
+        return engine.eval(source, Collections.emptyMap());
+    }
+
+    @Test
+    public void prefixMinusDoesNotModifyFrozenOperand() {
+        assertEquals(Arrays.asList(5L, -5L),
+                eval("let t = freeze({\"a\": 5}); let y = -t[\"a\"]; [t[\"a\"], y]"));
+    }
+
+    @Test
+    public void prefixMinusDoesNotModifyOperand() {
+        assertEquals(Arrays.asList(3L, -3L), eval("let x = 3; let y = -x; [x, y]"));
+    }
+
+    @Test
+    public void compoundAssignmentCopiesFrozenNumber() {
+        assertEquals(Arrays.asList(5L, 6L), eval("let t = freeze({\"a\": 5}); let x = t[\"a\"]; x += 1; [t[\"a\"], x]"));
+    }
+
+    @Test
+    public void compoundAssignmentOnFrozenElementFails() {
+        try {
+            eval("let t = freeze({\"a\": 5}); t[\"a\"] += 1;");
+            fail("expected the frozen element to be rejected");
+        } catch (EvaluationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("frozen"));
+        }
+    }
+
+    @Test
+    public void callJavaCannotModifyFrozenValue() {
+        assertEquals(Arrays.asList(1L, 2L), eval("let h = freeze({\"a\": 1}); let a = freeze([2]);\n" +
+                "let f = function() { callJava(\"java.util.Map\", \"clear\", h); callJava(\"java.util.List\", \"clear\", a); 0 };\n" +
+                "f(); [h[\"a\"], a[0]]"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.zh.interpreter.object.struct;
+
+import com.zh.interpreter.engine.EvaluationException;
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.evaluator.CancellationToken;
+import com.zh.interpreter.evaluator.ExecutionLimits;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 通道的发送、接收、关闭及select语义
+ */
+public class ChannelTest {
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private Object eval(String source) {
+        return engine.eval(source, Collections.emptyMap());
+    }
+
+    @Test
+    public void closeDrainsRemainingValues() {
+        assertEquals(Arrays.asList(1L, 2L, null),
+                eval("let c = channel(2); send(c, 1); send(c, 2); close(c); [recv(c), recv(c), recv(c)]"));
+    }
+
+    @Test
+    public void sendToClosedChannelFails() {
+        try {
+            eval("let c = channel(1); close(c); send(c, 1)");
+            fail("expected the send to fail");
+        } catch (EvaluationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("closed channel"));
+        }
+    }
+
+    @Test
+    public void recvWakesOnClose() {
+        assertNull(eval("let c = channel(1); let t = spawn(function() { sleep(50); close(c); }); let v = recv(c); await(t); v"));
+    }
+
+    @Test
+    public void forEachStopsAfterClose() {
+        assertEquals(6L, eval("let c = channel(1); let sum = concurrentHash({\"n\": 0});\n" +
+                "let t = spawn(function() { send(c, 1); send(c, 2); send(c, 3); close(c); });\n" +
+                "forEach(c, function(v) { merge(sum, \"n\", v, function(a, b) { a + b }); });\n" +
+                "await(t); sum[\"n\"]"));
+    }
+
+    @Test
+    public void selectReturnsIndexAndValue() {
+        assertEquals(Arrays.asList(1L, 5L), eval("let a = channel(1); let b = channel(1); send(b, 5); select([a, b])"));
+    }
+
+    @Test
+    public void selectWakesOnSendFromTask() {
+        assertEquals(Arrays.asList(0L, 7L), eval("let a = channel(1); let b = channel(1);\n" +
+                "let t = spawn(function() { sleep(50); send(a, 7); });\n" +
+                "let r = select([a, b]); await(t); r"));
+    }
+
+    @Test
+    public void selectDrainsClosedChannelsBeforeReturningNull() {
+        assertEquals(Arrays.asList(Arrays.asList(0L, 1L), null), eval("let a = channel(1); let b = channel(1);\n" +
+                "send(a, 1); close(a); close(b);\n" +
+                "[select([a, b]), select([a, b])]"));
+    }
+
+    @Test
+    public void selectWakesWhenAllChannelsClose() {
+        assertNull(eval("let a = channel(1); let b = channel(1);\n" +
+                "let t = spawn(function() { sleep(50); close(a); close(b); });\n" +
+                "let r = select([a, b]); await(t); r"));
+    }
+
+    @Test
+    public void selectTimesOut() {
+        long start = System.nanoTime();
+        assertNull(eval("select([channel(1)], 50)"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void cancelWakesBlockedSelect() throws Exception {
+        CancellationToken token = new CancellationToken();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            executor.schedule(token::cancel, 100, TimeUnit.MILLISECONDS);
+            long start = System.nanoTime();
+            try {
+                engine.compile("select([channel(1)])").run(Collections.emptyMap(), null, ExecutionLimits.UNLIMITED, token);
+                fail("expected the execution to be cancelled");
+            } catch (EvaluationException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("cancelled"));
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.zh.interpreter.object.struct;
+
+import com.zh.interpreter.engine.MonkeyEngine;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 并发哈希上的merge及computeIfAbsent不会丢失其它任务的更新
+ */
+public class ConcurrentHashTest {
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private Object eval(String source) {
+        return engine.eval(source, Collections.emptyMap());
+    }
+
+    @Test
+    public void mergeWithInPlaceCallbackKeepsEveryUpdate() {
+        assertEquals(40000L, eval("let h = concurrentHash();\n" +
+                "let add = function(old, v) { old += v; old };\n" +
+                "let worker = function() { let i = 0; while (i < 5000) { merge(h, \"n\", 1, add); i += 1; } };\n" +
+                "awaitAll([spawn(worker), spawn(worker), spawn(worker), spawn(worker),\n" +
+                "          spawn(worker), spawn(worker), spawn(worker), spawn(worker)]);\n" +
+                "h[\"n\"]"));
+    }
+
+    @Test
+    public void computeIfAbsentCallbackCannotModifyKey() {
+        assertEquals(Arrays.asList(1L, null), eval("let h = concurrentHash();\n" +
+                "let key = \"k\";\n" +
+                "computeIfAbsent(h, key, function(k) { k += \"x\"; 1 });\n" +
+                "[h[\"k\"], h[\"kx\"]]"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.zh.interpreter.snapshot;
+
+import com.zh.interpreter.engine.EvaluationException;
+import com.zh.interpreter.engine.MonkeyEngine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * serialize、deserialize及其文件版本的内置函数
+ */
+public class SerializeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MonkeyEngine engine = new MonkeyEngine();
+
+    private Object eval(String source) {
+        return engine.eval(source, Collections.emptyMap());
+    }
+
+    @Test
+    public void valuesRoundTripThroughString() {
+        assertEquals(Arrays.asList(true, 2L, 1.5, "s", 7L, 2L, true),
+                eval("let shared = [7]; let v = [true, 2, 1.5, \"s\", shared, shared, freeze({\"k\": 1})];\n" +
+                        "let r = deserialize(serialize(v));\n" +
+                        "push(r[4], 8);\n" +
+                        "[r[0], r[1], r[2], r[3], r[5][0], size(r[5]), isFrozen(r[6])]"));
+    }
+
+    @Test
+    public void cyclicValueRoundTrips() {
+        assertEquals(2L, eval("let a = []; push(a, a); let r = deserialize(serialize(a)); push(r[0], 1); size(r)"));
+    }
+
+    @Test
+    public void valuesRoundTripThroughFile() {
+        String path = folder.getRoot().toPath().resolve("value.bin").toString().replace("\\", "/");
+        assertEquals(Collections.singletonMap("k", Arrays.asList(1L, 2L)),
+                eval("serializeFile(\"" + path + "\", {\"k\": [1, 2]}); deserializeFile(\"" + path + "\")"));
+    }
+
+    @Test
+    public void nonValuesAreRejected() {
+        try {
+            eval("serialize(channel(1))");
+            fail("expected channels to be rejected");
+        } catch (EvaluationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("can't serialize"));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.zh.interpreter.snapshot;
+
+import com.zh.interpreter.engine.MonkeyEngine;
+import com.zh.interpreter.evaluator.Evaluator;
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.environment.Environment;
+import com.zh.interpreter.object.struct.ArrayObject;
+import com.zh.interpreter.object.struct.HashObject;
+import com.zh.interpreter.object.struct.IntegerObject;
+import com.zh.interpreter.object.struct.StringObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 快照及serialize使用的二进制格式:共享引用、循环引用、字符串去重、冻结状态及文件校验
+ */
+public class SnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] write(Object object) {
+        SnapshotWriter writer = new SnapshotWriter(true);
+        writer.writeObject(object);
+        ByteBuffer buffer = writer.toByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Object read(byte[] bytes) throws IOException {
+        return new SnapshotReader(ByteBuffer.wrap(bytes), true).readObject();
+    }
+
+    private static StringObject string(String value) {
+        StringObject stringObject = new StringObject();
+        stringObject.value = value;
+        return stringObject;
+    }
+
+    @Test
+    public void equalStringsAreWrittenOnce() throws IOException {
+        ArrayObject array = new ArrayObject();
+        array.elements.add(new IntegerObject(-1L));
+        array.elements.add(string("ab"));
+        array.elements.add(string("ab"));
+        byte[] bytes = write(array);
+        assertArrayEquals(new byte[]{
+                SnapshotFormat.ARRAY, 0, 3,
+                SnapshotFormat.INTEGER, 0, 1,
+                SnapshotFormat.STRING, 0, 1, 2, 'a', 'b',
+                SnapshotFormat.STRING, 0, 2}, bytes);
+        ArrayObject result = (ArrayObject) read(bytes);
+        assertEquals(array.elements, result.elements);
+        // 去重的只是字符串内容,两个字符串对象仍然各自独立
+        assertTrue(result.elements.get(1) != result.elements.get(2));
+    }
+
+    @Test
+    public void sharedReferenceIsWrittenOnce() throws IOException {
+        HashObject shared = new HashObject();
+        ArrayObject array = new ArrayObject();
+        array.elements.add(shared);
+        array.elements.add(shared);
+        byte[] bytes = write(array);
+        assertArrayEquals(new byte[]{
+                SnapshotFormat.ARRAY, 0, 2,
+                SnapshotFormat.HASH, 0, 0,
+                SnapshotFormat.REFERENCE, 1}, bytes);
+        ArrayObject result = (ArrayObject) read(bytes);
+        assertSame(result.elements.get(0), result.elements.get(1));
+    }
+
+    @Test
+    public void cycleIsRestored() throws IOException {
+        ArrayObject array = new ArrayObject();
+        array.elements.add(array);
+        byte[] bytes = write(array);
+        assertArrayEquals(new byte[]{SnapshotFormat.ARRAY, 0, 1, SnapshotFormat.REFERENCE, 0}, bytes);
+        ArrayObject result = (ArrayObject) read(bytes);
+        assertSame(result, result.elements.get(0));
+    }
+
+    @Test
+    public void frozenAndConcurrentFlagsAreRestored() throws IOException {
+        HashObject hash = new HashObject();
+        hash.hashMap.put(string("a"), new IntegerObject(1L));
+        hash.freeze();
+        ArrayObject result = (ArrayObject) read(write(new ArrayObject(new java.util.concurrent.CopyOnWriteArrayList<>(
+                Collections.singletonList(hash)))));
+        assertTrue(result.isConcurrent());
+        assertTrue(((HashObject) result.elements.get(0)).isFrozen());
+        assertEquals(new IntegerObject(1L), ((HashObject) result.elements.get(0)).hashMap.get(string("a")));
+    }
+
+    @Test
+    public void deepNestingDoesNotOverflowTheStack() throws IOException {
+        ArrayObject root = new ArrayObject();
+        ArrayObject current = root;
+        for (int i = 0; i < 200000; i++) {
+            ArrayObject next = new ArrayObject();
+            current.elements.add(next);
+            current = next;
+        }
+        Object result = read(write(root));
+        int depth = 0;
+        while (!((ArrayObject) result).elements.isEmpty()) {
+            result = ((ArrayObject) result).elements.get(0);
+            depth++;
+        }
+        assertEquals(200000, depth);
+    }
+
+    @Test
+    public void valuesOnlyRejectsFunctions() {
+        Object function = (Object) new MonkeyEngine().eval("function(x) { x }", Collections.emptyMap());
+        try {
+            write(function);
+            fail("expected functions to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Function"));
+        }
+    }
+
+    @Test
+    public void environmentWithClosuresRoundTrips() throws IOException {
+        Environment environment = new MonkeyEngine().compile("").createEnvironment();
+        new MonkeyEngine().compile("let base = 10; let add = function(x) { x + base }; let shared = [1]; let pair = [shared, shared];")
+                .evaluate(environment);
+        Path path = folder.getRoot().toPath().resolve("heap.snapshot");
+        HeapSnapshot.save(environment, path);
+        Environment loaded = HeapSnapshot.load(path);
+        assertEquals(new IntegerObject(15L), Evaluator.applyFunction(loaded.getObject("add"), "add",
+                Arrays.asList(new IntegerObject(5L))));
+        ArrayObject pair = (ArrayObject) loaded.getObject("pair");
+        assertSame(loaded.getObject("shared"), pair.elements.get(0));
+        assertSame(pair.elements.get(0), pair.elements.get(1));
+    }
+
+    @Test
+    public void corruptedFileIsRejected() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("value.snapshot");
+        ArrayObject array = new ArrayObject();
+        array.elements.add(string("payload"));
+        SnapshotWriter writer = new SnapshotWriter(true);
+        writer.writeObject(array);
+        HeapSnapshot.write(path, HeapSnapshot.KIND_VALUE, writer.toByteBuffer());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), channel.size() - 1);
+        }
+        try {
+            HeapSnapshot.read(path, HeapSnapshot.KIND_VALUE);
+            fail("expected the checksum to be rejected");
+        } catch (IOException expected) {
+            // 校验和不一致
+        }
+    }
+}
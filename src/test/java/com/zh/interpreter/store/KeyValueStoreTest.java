@@ -0,0 +1,140 @@
+package com.zh.interpreter.store;
+
+import com.zh.interpreter.object.Object;
+import com.zh.interpreter.object.struct.IntegerObject;
+import com.zh.interpreter.object.struct.StringObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 键值存储的崩溃恢复、键的顺序及关闭后的文件长度
+ */
+public class KeyValueStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static StringObject key(String value) {
+        StringObject stringObject = new StringObject();
+        stringObject.value = value;
+        return stringObject;
+    }
+
+    private static List<String> keys(KeyValueStore store) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (Object key : store.scan(null).keySet()) {
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    /**
+     * 写入a、b、c后关闭,返回关闭时日志的长度
+     */
+    private static int writeThree(Path path) throws IOException {
+        KeyValueStore store = KeyValueStore.open(path);
+        store.put(key("a"), new IntegerObject(1L));
+        store.put(key("b"), new IntegerObject(2L));
+        store.put(key("c"), new IntegerObject(3L));
+        int size = store.getLogSize();
+        store.close();
+        return size;
+    }
+
+    @Test
+    public void closeTruncatesToLogSize() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("empty.kv");
+        KeyValueStore.open(path).close();
+        assertEquals(8, Files.size(path));
+        Path other = folder.getRoot().toPath().resolve("three.kv");
+        assertEquals(writeThree(other), Files.size(other));
+    }
+
+    @Test
+    public void truncatedTailIsDropped() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("truncated.kv");
+        int size = writeThree(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        KeyValueStore store = KeyValueStore.open(path);
+        try {
+            assertEquals(Arrays.asList("a", "b"), keys(store));
+            assertNull(store.get(key("c")));
+            // 之后的写入从最后一条完整的记录之后开始
+            store.put(key("d"), new IntegerObject(4L));
+        } finally {
+            store.close();
+        }
+        store = KeyValueStore.open(path);
+        try {
+            assertEquals(Arrays.asList("a", "b", "d"), keys(store));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void corruptRecordIsDropped() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("corrupt.kv");
+        int size = writeThree(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            last.rewind();
+            channel.write(last, size - 1);
+        }
+        KeyValueStore store = KeyValueStore.open(path);
+        try {
+            assertEquals(Arrays.asList("a", "b"), keys(store));
+            assertEquals(new IntegerObject(2L), store.get(key("b")));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void compactionKeepsFirstWriteOrder() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("order.kv");
+        KeyValueStore store = KeyValueStore.open(path);
+        int size;
+        try {
+            store.put(key("a"), new IntegerObject(1L));
+            store.put(key("b"), new IntegerObject(2L));
+            store.put(key("c"), new IntegerObject(3L));
+            // 更新保留原来的位置,删除后再次写入排在最后
+            store.put(key("a"), new IntegerObject(10L));
+            store.delete(key("b"));
+            store.put(key("b"), new IntegerObject(20L));
+            assertEquals(Arrays.asList("a", "c", "b"), keys(store));
+            store.compact();
+            assertEquals(Arrays.asList("a", "c", "b"), keys(store));
+            assertEquals(new IntegerObject(10L), store.get(key("a")));
+            size = store.getLogSize();
+        } finally {
+            store.close();
+        }
+        assertEquals(size, Files.size(path));
+        store = KeyValueStore.open(path);
+        try {
+            assertEquals(Arrays.asList("a", "c", "b"), keys(store));
+            assertEquals(new IntegerObject(20L), store.get(key("b")));
+        } finally {
+            store.close();
+        }
+    }
+}